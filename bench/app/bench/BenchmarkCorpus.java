@@ -0,0 +1,94 @@
+package app.bench;
+
+import app.Document;
+import app.LibraryMethods;
+import app.Settings;
+import app.TrainingSet;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Stream;
+
+/**
+ * Corpora the benchmarks run on
+ * "uir" is data/uir/Train, "synthetic-V" is a synthetic corpus with vocabulary of V terms
+ */
+class BenchmarkCorpus
+{
+    /** Directory of the uir corpus */
+    private static final String UIR_DOCUMENTS = "data/uir/Train";
+
+    /** Classes of the uir corpus */
+    private static final String UIR_CLASSES = "data/uir/classes.txt";
+
+    /** Number of documents of synthetic corpora */
+    private static final int SYNTHETIC_DOCUMENTS = 2000;
+
+    /**
+     * Loads training set of a corpus
+     * Settings are pointed to the corpus for code that reads them
+     * @param corpus corpus name
+     * @return training set, not parametrized
+     */
+    static TrainingSet trainingSet(String corpus)
+    {
+        if (corpus.equals("uir"))
+        {
+            Settings.classesPath = UIR_CLASSES;
+            Settings.trainingSetPath = UIR_DOCUMENTS;
+            return new TrainingSet(LibraryMethods.loadClassesSorted(), LibraryMethods.loadDocuments(UIR_DOCUMENTS));
+        }
+
+        return new TrainingSet(SyntheticCorpus.classes(), synthetic(corpus).documents(SYNTHETIC_DOCUMENTS));
+    }
+
+    /**
+     * Loads raw document texts of a corpus
+     * @param corpus corpus name
+     * @return texts
+     */
+    static String[] texts(String corpus)
+    {
+        if (!corpus.equals("uir"))
+            return synthetic(corpus).texts(SYNTHETIC_DOCUMENTS);
+
+        try (Stream<Path> files = Files.list(Paths.get(UIR_DOCUMENTS)))
+        {
+            return files.sorted().map(BenchmarkCorpus::text).toArray(String[]::new);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads the text line of a document file
+     * @param path path to file
+     * @return text
+     */
+    private static String text(Path path)
+    {
+        try (BufferedReader br = Files.newBufferedReader(path, StandardCharsets.UTF_8))
+        {
+            br.readLine();
+            br.readLine();
+            String text = br.readLine();
+            return text == null ? "" : text;
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static SyntheticCorpus synthetic(String corpus)
+    {
+        return new SyntheticCorpus(Integer.parseInt(corpus.substring("synthetic-".length())), 1);
+    }
+}
@@ -0,0 +1,30 @@
+package app.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks with allocation profiling
+ * Arguments are regular expressions selecting benchmarks, e.g. "NGramsBenchmark.parametrize", all benchmarks run without them
+ * Has to be run from the project root, where data/uir is
+ */
+public class BenchmarkRunner
+{
+    public static void main(String[] args) throws RunnerException
+    {
+        OptionsBuilder builder = new OptionsBuilder();
+        if (args.length == 0)
+            builder.include("app\\.bench\\..*Benchmark\\..*");
+        for (String arg : args)
+            builder.include(arg);
+
+        Options options = builder
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,91 @@
+package app.bench;
+
+import app.Model;
+import app.Settings;
+import app.SparseVector;
+import app.TrainingSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of classifying one parametrized document
+ * Classifiers are trained on tf-idf vectors of the corpus and queried with the training vectors
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClassifierBenchmark
+{
+    @Param({"uir", "synthetic-10000", "synthetic-100000"})
+    public String corpus;
+
+    @Param({"nbayes", "knn", "knn-hnsw"})
+    public String classifier;
+
+    /** Trained model */
+    private Model model;
+
+    /** Query vectors */
+    private SparseVector[] vectors;
+
+    /** Vector to classify next */
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        model = trainedModel(corpus, "tfidf", classifier);
+        TrainingSet set = BenchmarkCorpus.trainingSet(corpus);
+        set.parametrize(model.parametrizer);
+        vectors = set.vectors;
+    }
+
+    /**
+     * Classifies one vector, vectors are taken in turn
+     * @return class
+     */
+    @Benchmark
+    public String classify()
+    {
+        SparseVector vector = vectors[next];
+        next = next + 1 == vectors.length ? 0 : next + 1;
+
+        return model.classifier.classify(vector);
+    }
+
+    /**
+     * Creates a model the way Main does and trains it on a corpus
+     * @param corpus corpus name
+     * @param parametrizer parametrizer argument
+     * @param classifier classifier argument
+     * @return trained model
+     */
+    static Model trainedModel(String corpus, String parametrizer, String classifier)
+    {
+        Settings.parametrizerArgument = parametrizer;
+        Settings.classifierArgument = classifier;
+        Model model = Model.getModelForSettings();
+
+        TrainingSet set = BenchmarkCorpus.trainingSet(corpus);
+        model.parametrizer.initialize(set.documents);
+        set.parametrize(model.parametrizer);
+        model.classifier.train(set);
+
+        return model;
+    }
+}
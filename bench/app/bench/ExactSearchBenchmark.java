@@ -0,0 +1,115 @@
+package app.bench;
+
+import app.SparseVector;
+import app.classify.ExactIndex;
+import app.classify.Metric;
+import app.classify.TopK;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of one exact K-NN query scanning all training vectors
+ * doubleScan is the scan over double precision SparseVectors that ExactIndex did before single precision storage,
+ * search is ExactIndex with each metric
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExactSearchBenchmark
+{
+    private static final int K = 5;
+
+    @Param({"20000"})
+    public int documents;
+
+    @Param({"50000"})
+    public int vocabulary;
+
+    @Param({"cosine", "euclidean", "manhattan"})
+    public String metric;
+
+    /** Training vectors */
+    private SparseVector[] vectors;
+
+    /** Norms of the training vectors */
+    private double[] norms;
+
+    /** Queries, taken in turn */
+    private SparseVector[] queries;
+
+    private ExactIndex index;
+
+    /** Dense query buffer of doubleScan */
+    private double[] dense;
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        SyntheticCorpus corpus = new SyntheticCorpus(vocabulary, 1);
+        vectors = corpus.vectors(documents);
+        queries = new SyntheticCorpus(vocabulary, 2).vectors(100);
+
+        norms = new double[vectors.length];
+        for (int i = 0; i < vectors.length; i++)
+            norms[i] = vectors[i].norm();
+
+        index = new ExactIndex(Metric.forIdentifier(metric));
+        index.build(vectors, vocabulary);
+        dense = new double[vocabulary];
+    }
+
+    @Benchmark
+    public TopK doubleScan()
+    {
+        SparseVector query = nextQuery();
+        TopK nearest = new TopK(K);
+        double queryNorm = query.norm();
+
+        for (int i = 0; i < query.indexes.length; i++)
+            dense[query.indexes[i]] = query.values[i];
+
+        for (int i = 0; i < vectors.length; i++)
+        {
+            if (norms[i] == 0)
+                continue;
+
+            nearest.offer(i, vectors[i].dot(dense) / (queryNorm * norms[i]));
+        }
+
+        for (int i = 0; i < query.indexes.length; i++)
+            dense[query.indexes[i]] = 0;
+
+        return nearest;
+    }
+
+    @Benchmark
+    public TopK search()
+    {
+        return index.search(nextQuery(), K);
+    }
+
+    private SparseVector nextQuery()
+    {
+        SparseVector query = queries[next];
+        next = next + 1 == queries.length ? 0 : next + 1;
+
+        return query;
+    }
+}
@@ -0,0 +1,111 @@
+package app.bench;
+
+import app.SparseVector;
+import app.classify.ExactIndex;
+import app.classify.InvertedIndex;
+import app.classify.TopK;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of one exact cosine K-NN query over TF-IDF weighted vectors
+ * scan compares the query with every training vector, exhaustive visits all postings of the query's dimensions,
+ * maxScore stops accumulating new vectors once they cannot reach the top K
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InvertedSearchBenchmark
+{
+    private static final int K = 5;
+
+    @Param({"20000"})
+    public int documents;
+
+    @Param({"50000"})
+    public int vocabulary;
+
+    /** Queries, taken in turn */
+    private SparseVector[] queries;
+
+    private ExactIndex exact;
+
+    private InvertedIndex exhaustive;
+
+    private InvertedIndex maxScore;
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        SparseVector[] vectors = new SyntheticCorpus(vocabulary, 1).vectors(documents);
+        queries = new SyntheticCorpus(vocabulary, 2).vectors(100);
+
+        // Inverse document frequencies, frequent terms weigh little as with the TF-IDF parametrizer
+        int[] frequencies = new int[vocabulary];
+        for (SparseVector vector : vectors)
+            for (int index : vector.indexes)
+                frequencies[index]++;
+        double[] weights = new double[vocabulary];
+        for (int i = 0; i < vocabulary; i++)
+            weights[i] = Math.log((double) documents / (1 + frequencies[i]));
+        weigh(vectors, weights);
+        weigh(queries, weights);
+
+        exact = new ExactIndex();
+        exact.build(vectors, vocabulary);
+        exhaustive = new InvertedIndex(false);
+        exhaustive.build(vectors, vocabulary);
+        maxScore = new InvertedIndex(true);
+        maxScore.build(vectors, vocabulary);
+    }
+
+    @Benchmark
+    public TopK scan()
+    {
+        return exact.search(nextQuery(), K);
+    }
+
+    @Benchmark
+    public TopK exhaustive()
+    {
+        return exhaustive.search(nextQuery(), K);
+    }
+
+    @Benchmark
+    public TopK maxScore()
+    {
+        return maxScore.search(nextQuery(), K);
+    }
+
+    private static void weigh(SparseVector[] vectors, double[] weights)
+    {
+        for (SparseVector vector : vectors)
+            for (int i = 0; i < vector.indexes.length; i++)
+                vector.values[i] *= weights[vector.indexes[i]];
+    }
+
+    private SparseVector nextQuery()
+    {
+        SparseVector query = queries[next];
+        next = next + 1 == queries.length ? 0 : next + 1;
+
+        return query;
+    }
+}
@@ -0,0 +1,158 @@
+package app.bench;
+
+import app.LibraryMethods;
+import app.Settings;
+import app.SparseVector;
+import app.TrainingSet;
+import app.classify.ExactIndex;
+import app.classify.HnswIndex;
+import app.classify.INeighbourIndex;
+import app.classify.IvfPqIndex;
+import app.classify.TopK;
+import app.parametrize.NGrams;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Reports recall@K and query latency of HnswIndex and IvfPqIndex against exact search
+ * Usage: KnnRecallBenchmark [documents vocabulary] - synthetic corpus, 20000 x 50000 by default
+ *        KnnRecallBenchmark corpus classesPath trainingSetPath - TF-IDF vectors of a corpus
+ * Every tenth vector is used as a query and left out of the index
+ */
+public class KnnRecallBenchmark
+{
+    private static final int K = 10;
+
+    private static final int[] EF_SEARCH = { 10, 20, 40, 80, 160, 320 };
+
+    private static final int[] NPROBE = { 1, 2, 4, 8, 16, 32, 64 };
+
+    /** IVF-PQ re-ranking factors */
+    private static final int[] RERANK = { 0, 10 };
+
+    public static void main(String[] args)
+    {
+        SparseVector[] all;
+        int dimension;
+
+        if (args.length == 3 && args[0].equals("corpus"))
+        {
+            Settings.classesPath = args[1];
+            Settings.trainingSetPath = args[2];
+            TrainingSet trainingSet = new TrainingSet(LibraryMethods.loadClassesSorted(), LibraryMethods.loadDocuments(args[2]));
+            NGrams parametrizer = new NGrams(true, 1);
+            parametrizer.initialize(trainingSet.documents);
+            trainingSet.parametrize(parametrizer);
+            all = trainingSet.vectors;
+            dimension = trainingSet.vectorLength;
+        }
+        else
+        {
+            int documents = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+            dimension = args.length > 1 ? Integer.parseInt(args[1]) : 50000;
+            all = new SyntheticCorpus(dimension, 1).vectors(documents);
+        }
+
+        SparseVector[] queries = new SparseVector[all.length / 10];
+        SparseVector[] vectors = new SparseVector[all.length - queries.length];
+        for (int i = 0, q = 0, v = 0; i < all.length; i++)
+        {
+            if (i % 10 == 9 && q < queries.length)
+                queries[q++] = all[i];
+            else
+                vectors[v++] = all[i];
+        }
+
+        System.out.println("vectors: " + vectors.length + ", queries: " + queries.length + ", dimension: " + dimension + ", K: " + K);
+
+        ExactIndex exact = new ExactIndex();
+        exact.build(vectors, dimension);
+
+        long start = System.nanoTime();
+        int[][] truth = new int[queries.length][];
+        for (int i = 0; i < queries.length; i++)
+            truth[i] = ids(exact.search(queries[i], K));
+        double exactMicros = (System.nanoTime() - start) / 1e3 / queries.length;
+        System.out.printf("exact: %.1f us/query%n", exactMicros);
+
+        HnswIndex hnsw = new HnswIndex();
+        start = System.nanoTime();
+        hnsw.build(vectors, dimension);
+        System.out.printf("hnsw build: %.1f ms%n", (System.nanoTime() - start) / 1e6);
+
+        System.out.println("efSearch  recall@" + K + "  us/query  speedup");
+        for (int ef : EF_SEARCH)
+        {
+            hnsw.setEfSearch(ef);
+            double[] result = measure(hnsw, queries, truth);
+            System.out.printf("%8d  %9.4f  %8.1f  %6.1fx%n", ef, result[0], result[1], exactMicros / result[1]);
+        }
+
+        // Indexes, values and the object headers of SparseVector and its two arrays
+        long vectorBytes = 0;
+        for (SparseVector vector : vectors)
+            vectorBytes += vector.indexes.length * (long) (Integer.BYTES + Double.BYTES) + 3 * 16;
+
+        for (int rerank : RERANK)
+        {
+            IvfPqIndex ivfPq = new IvfPqIndex(256, 32, 0, 1, rerank);
+            start = System.nanoTime();
+            ivfPq.build(vectors, dimension);
+            // Re-ranking keeps the SparseVectors as well
+            long bytes = ivfPq.bytes() + (ivfPq.needsVectors() ? vectorBytes : 0);
+            System.out.printf("ivfpq rerank %d build: %.1f ms, %.1f MB, SparseVectors %.1f MB%n", rerank,
+                    (System.nanoTime() - start) / 1e6, bytes / 1e6, vectorBytes / 1e6);
+
+            System.out.println("  nprobe  recall@" + K + "  us/query  speedup");
+            for (int nprobe : NPROBE)
+            {
+                ivfPq.setNprobe(nprobe);
+                double[] result = measure(ivfPq, queries, truth);
+                System.out.printf("%8d  %9.4f  %8.1f  %6.1fx%n", nprobe, result[0], result[1], exactMicros / result[1]);
+            }
+        }
+    }
+
+    /**
+     * Searches all queries
+     * @return recall@K and microseconds a query
+     */
+    private static double[] measure(INeighbourIndex index, SparseVector[] queries, int[][] truth)
+    {
+        long start = System.nanoTime();
+        int[][] found = new int[queries.length][];
+        for (int i = 0; i < queries.length; i++)
+            found[i] = ids(index.search(queries[i], K));
+        double micros = (System.nanoTime() - start) / 1e3 / queries.length;
+
+        double recall = 0;
+        for (int i = 0; i < queries.length; i++)
+            recall += recall(truth[i], found[i]);
+
+        return new double[] {recall / queries.length, micros};
+    }
+
+    private static int[] ids(TopK nearest)
+    {
+        int count = nearest.sortDescending();
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++)
+            ids[i] = nearest.id(i);
+
+        return ids;
+    }
+
+    private static double recall(int[] truth, int[] found)
+    {
+        if (truth.length == 0)
+            return 1;
+
+        Set<Integer> expected = new HashSet<>();
+        for (int id : truth)
+            expected.add(id);
+
+        return (double) Arrays.stream(found).filter(expected::contains).count() / truth.length;
+    }
+}
@@ -0,0 +1,77 @@
+package app.bench;
+
+import app.Model;
+import app.Settings;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of Model.saveModel and Model.loadModel in binary and text format
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelIoBenchmark
+{
+    @Param({"uir", "synthetic-10000"})
+    public String corpus;
+
+    @Param({"nbayes", "knn", "knn-hnsw"})
+    public String classifier;
+
+    @Param({"binary", "text"})
+    public String format;
+
+    /** Trained model */
+    private Model model;
+
+    /** File the model is saved to and loaded from */
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        model = ClassifierBenchmark.trainedModel(corpus, "tfidf", classifier);
+        file = Files.createTempFile("model", ".bin");
+        Settings.modelPath = file.toString();
+        Settings.textModel = format.equals("text");
+        model.saveModel();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException
+    {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void save()
+    {
+        model.saveModel();
+    }
+
+    @Benchmark
+    public Model load()
+    {
+        return Model.loadModel();
+    }
+}
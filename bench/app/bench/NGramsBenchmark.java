@@ -0,0 +1,90 @@
+package app.bench;
+
+import app.Document;
+import app.SparseVector;
+import app.TrainingSet;
+import app.parametrize.NGrams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of NGrams.parametrize and NGrams.initialize
+ * The vocabulary grows with n and with the synthetic corpus size
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NGramsBenchmark
+{
+    @Param({"uir", "synthetic-10000", "synthetic-100000"})
+    public String corpus;
+
+    @Param({"1", "2", "3"})
+    public int n;
+
+    @Param({"false", "true"})
+    public boolean tfidf;
+
+    /** Documents of the corpus */
+    private Document[] documents;
+
+    /** Parametrizer initialized on the corpus */
+    private NGrams ngrams;
+
+    /** Document to parametrize next */
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        TrainingSet set = BenchmarkCorpus.trainingSet(corpus);
+        documents = set.documents;
+        ngrams = new NGrams(tfidf, n);
+        ngrams.initialize(documents);
+    }
+
+    /**
+     * Parametrizes one document, documents are taken in turn
+     * @return vector
+     */
+    @Benchmark
+    public SparseVector parametrize()
+    {
+        Document d = documents[next];
+        next = next + 1 == documents.length ? 0 : next + 1;
+
+        return ngrams.parametrize(d);
+    }
+
+    /**
+     * Builds the vocabulary of the whole corpus
+     * @return vocabulary size
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, batchSize = 1)
+    @Measurement(iterations = 5, batchSize = 1)
+    public int initialize()
+    {
+        NGrams fresh = new NGrams(tfidf, n);
+        fresh.initialize(documents);
+
+        return fresh.getVectorLength();
+    }
+}
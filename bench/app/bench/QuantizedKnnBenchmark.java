@@ -0,0 +1,152 @@
+package app.bench;
+
+import app.Model;
+import app.Settings;
+import app.SparseVector;
+import app.TrainingSet;
+import app.classify.ExactIndex;
+import app.classify.INeighbourIndex;
+import app.classify.KNearestNeighbours;
+import app.classify.QuantizedIndex;
+import app.classify.TopK;
+import app.parametrize.NGrams;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Reports memory, recall@K, query latency and classification accuracy of QuantizedIndex against exact search
+ * Usage: QuantizedKnnBenchmark [documents vocabulary] - synthetic corpus, 20000 x 50000 by default
+ * Recall and latency are measured on the synthetic corpus with every tenth vector as a query,
+ * accuracy and model size on the UIR corpus with the TF-IDF models of Main
+ */
+public class QuantizedKnnBenchmark
+{
+    private static final int K = 10;
+
+    /** Quantized configurations - bits and re-ranking factor */
+    private static final int[][] CONFIGURATIONS = { {8, 0}, {8, 4}, {16, 0}, {16, 4} };
+
+    public static void main(String[] args) throws IOException
+    {
+        int documents = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int dimension = args.length > 1 ? Integer.parseInt(args[1]) : 50000;
+        SparseVector[] all = new SyntheticCorpus(dimension, 1).vectors(documents);
+
+        SparseVector[] queries = new SparseVector[all.length / 10];
+        SparseVector[] vectors = new SparseVector[all.length - queries.length];
+        for (int i = 0, q = 0, v = 0; i < all.length; i++)
+        {
+            if (i % 10 == 9 && q < queries.length)
+                queries[q++] = all[i];
+            else
+                vectors[v++] = all[i];
+        }
+
+        // Indexes, values and the object headers of SparseVector and its two arrays
+        long vectorBytes = 0;
+        for (SparseVector vector : vectors)
+            vectorBytes += vector.indexes.length * (long) (Integer.BYTES + Double.BYTES) + 3 * 16;
+
+        System.out.println("vectors: " + vectors.length + ", queries: " + queries.length + ", dimension: " + dimension + ", K: " + K);
+
+        ExactIndex exact = new ExactIndex();
+        exact.build(vectors, dimension);
+        int[][] truth = new int[queries.length][];
+        double exactMicros = searchAll(exact, queries, truth);
+        System.out.printf("exact: %.1f us/query, SparseVectors %.1f MB%n", exactMicros, vectorBytes / 1e6);
+
+        System.out.println("bits  rerank  recall@" + K + "  us/query  MB     memory");
+        for (int[] configuration : CONFIGURATIONS)
+        {
+            QuantizedIndex index = new QuantizedIndex(configuration[0], configuration[1]);
+            index.build(vectors, dimension);
+
+            int[][] found = new int[queries.length][];
+            double micros = searchAll(index, queries, found);
+
+            double recall = 0;
+            for (int i = 0; i < queries.length; i++)
+                recall += recall(truth[i], found[i]);
+
+            // Re-ranking keeps the SparseVectors as well
+            long bytes = index.bytes() + (index.needsVectors() ? vectorBytes : 0);
+            System.out.printf("%4d  %6d  %9.4f  %8.1f  %5.1f  %5.1fx less%n", configuration[0], configuration[1],
+                    recall / queries.length, micros, bytes / 1e6, (double) vectorBytes / bytes);
+        }
+
+        System.out.println();
+        System.out.println("UIR, TF-IDF unigrams, tested on the training set");
+        System.out.println("classifier        error   model bytes");
+        for (String classifier : new String[] {"knn", "knn-int8", "knn-int8:4", "knn-float16", "knn-float16:4"})
+            reportAccuracy(classifier);
+    }
+
+    private static double searchAll(INeighbourIndex index, SparseVector[] queries, int[][] found)
+    {
+        // Warm up
+        for (SparseVector query : queries)
+            index.search(query, K);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < queries.length; i++)
+            found[i] = ids(index.search(queries[i], K));
+
+        return (System.nanoTime() - start) / 1e3 / queries.length;
+    }
+
+    private static void reportAccuracy(String classifier) throws IOException
+    {
+        Settings.parametrizerArgument = "tfidf";
+        Settings.classifierArgument = classifier;
+        Model model = Model.getModelForSettings();
+
+        TrainingSet set = BenchmarkCorpus.trainingSet("uir");
+        model.parametrizer.initialize(set.documents);
+        set.parametrize(model.parametrizer);
+        model.classifier.train(set);
+
+        int errors = 0;
+        for (int i = 0; i < set.documents.length; i++)
+        {
+            String predicted = model.classifier.classify(set.vectors[i]);
+            if (!set.documents[i].classes.contains(predicted))
+                errors++;
+        }
+
+        Path file = Files.createTempFile("model", ".mod");
+        Settings.modelPath = file.toString();
+        Settings.textModel = false;
+        model.saveModel();
+        long size = Files.size(file);
+        Files.delete(file);
+
+        System.out.printf("%-16s  %.4f  %d%n", classifier, (double) errors / set.documents.length, size);
+    }
+
+    private static int[] ids(TopK nearest)
+    {
+        int count = nearest.sortDescending();
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++)
+            ids[i] = nearest.id(i);
+
+        return ids;
+    }
+
+    private static double recall(int[] truth, int[] found)
+    {
+        if (truth.length == 0)
+            return 1;
+
+        Set<Integer> expected = new HashSet<>();
+        for (int id : truth)
+            expected.add(id);
+
+        return (double) Arrays.stream(found).filter(expected::contains).count() / truth.length;
+    }
+}
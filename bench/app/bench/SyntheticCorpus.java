@@ -0,0 +1,197 @@
+package app.bench;
+
+import app.Document;
+import app.SparseVector;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * Generates documents resembling a newspaper corpus - as term-count vectors, word lists or texts
+ * Terms follow a Zipf distribution, each document also draws half of its tokens from the terms of one topic
+ * Topics double as class labels
+ */
+public class SyntheticCorpus
+{
+    /** Number of topics */
+    private static final int TOPICS = 20;
+
+    /** Terms preferred by each topic */
+    private static final int TOPIC_TERMS = 200;
+
+    /** Letters the words are made of */
+    private static final String LETTERS = "abcčdeéěfhijklmnoprřsštuúvyzž";
+
+    /** Cumulative Zipf probabilities of the terms */
+    private final double[] cumulative;
+
+    /** Terms of each topic */
+    private final int[][] topicTerms;
+
+    private final Random random;
+
+    public SyntheticCorpus(int vocabularySize, long seed)
+    {
+        random = new Random(seed);
+
+        cumulative = new double[vocabularySize];
+        double sum = 0;
+        for (int i = 0; i < vocabularySize; i++)
+        {
+            sum += 1.0 / (i + 1);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < vocabularySize; i++)
+            cumulative[i] /= sum;
+
+        topicTerms = new int[TOPICS][TOPIC_TERMS];
+        for (int[] terms : topicTerms)
+            for (int i = 0; i < terms.length; i++)
+                terms[i] = random.nextInt(vocabularySize);
+    }
+
+    /**
+     * Generates vectors
+     * @param count number of vectors
+     * @return vectors
+     */
+    public SparseVector[] vectors(int count)
+    {
+        SparseVector[] vectors = new SparseVector[count];
+        for (int i = 0; i < count; i++)
+            vectors[i] = vector(random.nextInt(TOPICS));
+
+        return vectors;
+    }
+
+    /**
+     * Generates documents, each labelled with its topic
+     * @param count number of documents
+     * @return documents
+     */
+    public Document[] documents(int count)
+    {
+        Document[] documents = new Document[count];
+        for (int i = 0; i < count; i++)
+        {
+            int topic = random.nextInt(TOPICS);
+            int[] terms = terms(topic);
+
+            Document d = new Document();
+            d.documentWords = new String[terms.length];
+            for (int j = 0; j < terms.length; j++)
+                d.documentWords[j] = word(terms[j]);
+            d.classes = Collections.singletonList(topicClass(topic));
+            documents[i] = d;
+        }
+
+        return documents;
+    }
+
+    /**
+     * Generates document texts - capitalized words separated by spaces and punctuation
+     * @param count number of texts
+     * @return texts
+     */
+    public String[] texts(int count)
+    {
+        String[] texts = new String[count];
+        for (int i = 0; i < count; i++)
+        {
+            StringBuilder sb = new StringBuilder();
+            for (int term : terms(random.nextInt(TOPICS)))
+            {
+                String word = word(term);
+                if (random.nextInt(10) == 0)
+                    sb.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length()).append(". ");
+                else
+                    sb.append(word).append(random.nextInt(20) == 0 ? ", " : " ");
+            }
+            texts[i] = sb.toString();
+        }
+
+        return texts;
+    }
+
+    /**
+     * Returns class labels of the documents, sorted
+     * @return classes
+     */
+    public static String[] classes()
+    {
+        String[] classes = new String[TOPICS];
+        for (int i = 0; i < TOPICS; i++)
+            classes[i] = topicClass(i);
+
+        return classes;
+    }
+
+    private static String topicClass(int topic)
+    {
+        return String.format("t%02d", topic);
+    }
+
+    /**
+     * Spells a term as a word
+     * @param term term
+     * @return word
+     */
+    private static String word(int term)
+    {
+        StringBuilder sb = new StringBuilder();
+        do
+        {
+            sb.append(LETTERS.charAt(term % LETTERS.length()));
+            term /= LETTERS.length();
+        }
+        while (term > 0);
+
+        return sb.toString();
+    }
+
+    private SparseVector vector(int topic)
+    {
+        int[] terms = terms(topic);
+        int[] counts = new int[cumulative.length];
+        int[] touched = new int[terms.length];
+        int touchedCount = 0;
+
+        for (int term : terms)
+        {
+            if (counts[term]++ == 0)
+                touched[touchedCount++] = term;
+        }
+
+        Arrays.sort(touched, 0, touchedCount);
+        int[] indexes = Arrays.copyOf(touched, touchedCount);
+        double[] values = new double[touchedCount];
+        for (int i = 0; i < touchedCount; i++)
+            values[i] = counts[indexes[i]];
+
+        return new SparseVector(indexes, values, cumulative.length);
+    }
+
+    /**
+     * Draws terms of a document
+     * @param topic topic of the document
+     * @return terms in document order
+     */
+    private int[] terms(int topic)
+    {
+        int[] terms = new int[100 + random.nextInt(200)];
+
+        for (int i = 0; i < terms.length; i++)
+        {
+            if (random.nextBoolean())
+                terms[i] = topicTerms[topic][random.nextInt(TOPIC_TERMS)];
+            else
+            {
+                int found = Arrays.binarySearch(cumulative, random.nextDouble());
+                terms[i] = Math.min(found >= 0 ? found : -found - 1, cumulative.length - 1);
+            }
+        }
+
+        return terms;
+    }
+}
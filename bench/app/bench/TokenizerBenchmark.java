@@ -0,0 +1,101 @@
+package app.bench;
+
+import app.LibraryMethods;
+import app.Tokenizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokenization rate of LibraryMethods.splitText, of Tokenizer without creating Strings and of the regex split it replaced
+ * One operation tokenizes every text of the corpus, the characters per operation are printed on setup
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenizerBenchmark
+{
+    @Param({"uir", "synthetic-10000"})
+    public String corpus;
+
+    /** Texts of the corpus */
+    private String[] texts;
+
+    /** Tokenizer passing words to a consumer */
+    private final Tokenizer tokenizer = new Tokenizer();
+
+    /** Number of words seen by the consumer */
+    private int tokens;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        texts = BenchmarkCorpus.texts(corpus);
+
+        long characters = 0;
+        for (String text : texts)
+            characters += text.length();
+        System.out.println(corpus + ": " + texts.length + " texts, " + characters + " characters per operation");
+    }
+
+    /**
+     * Tokenizes the corpus
+     * @return number of tokens
+     */
+    @Benchmark
+    public int splitText()
+    {
+        int tokens = 0;
+        for (String text : texts)
+            tokens += LibraryMethods.splitText(text).length;
+
+        return tokens;
+    }
+
+    /**
+     * Tokenizes the corpus without creating Strings
+     * @return number of tokens
+     */
+    @Benchmark
+    public int tokenize()
+    {
+        tokens = 0;
+        for (String text : texts)
+            tokenizer.tokenize(text, (buffer, length) -> tokens++);
+
+        return tokens;
+    }
+
+    /**
+     * Tokenizes the corpus by the regex split splitText used to do
+     * @return number of tokens
+     */
+    @Benchmark
+    public int regexSplit()
+    {
+        int tokens = 0;
+        for (String text : texts)
+        {
+            String[] words = text.split("[^\\p{L}0-9]+");
+            for (int i = 0; i < words.length; i++)
+                words[i] = words[i].toLowerCase();
+            tokens += words.length;
+        }
+
+        return tokens;
+    }
+}
@@ -1,5 +1,8 @@
 package app;
 
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
 public class Application
 {
     private Model model;
@@ -17,6 +20,25 @@ public class Application
         {
             model = new Model();
             model = Model.loadModel();
+            if (Settings.efSearch > 0)
+                model.setEfSearch(Settings.efSearch);
+            if (Settings.nprobe > 0)
+                model.setNprobe(Settings.nprobe);
+        }
+        else if (Settings.mode == Mode.UPDATE)
+        {
+            model = Model.loadModel();
+            model.update();
+            model.saveModel();
+        }
+        else if (Settings.mode == Mode.CROSS_VALIDATE)
+        {
+            TrainingSet corpus = TrainingSet.load();
+            CrossValidation crossValidation = new CrossValidation(corpus.classes, corpus.documents, Settings.folds);
+            ForkJoinPool pool = Settings.threads > 0 ? new ForkJoinPool(Settings.threads) : ForkJoinPool.commonPool();
+            List<CrossValidation.Result> results = crossValidation.run(Settings.parametrizerArgument.split(","), Settings.minOccurrenceCounts,
+                    Settings.classifierArgument.split(","), Settings.neighbourCounts, pool);
+            System.out.print(crossValidation.table(results));
         }
     }
 }
@@ -0,0 +1,118 @@
+package app;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Stream;
+
+/**
+ * Streams documents from a directory tree
+ * Files are read in parallel and decoded as UTF-8
+ * Files that cannot be read are skipped and remembered instead of stopping the program
+ * Documents without class labels are ignored
+ */
+public class CorpusReader
+{
+    /** Files skipped so far */
+    private final Queue<SkippedFile> skipped = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Returns a lazy parallel stream of the documents in a directory and its subdirectories
+     * The stream holds open directories and should be closed
+     * @param dirPath path to directory
+     * @return documents
+     * @throws IOException if the directory cannot be opened
+     */
+    public Stream<Document> stream(String dirPath) throws IOException
+    {
+        return Files.walk(Paths.get(dirPath))
+                .filter(Files::isRegularFile)
+                .parallel()
+                .map(this::readOrSkip)
+                .filter(Objects::nonNull);
+    }
+
+    /**
+     * Returns files skipped so far
+     * @return skipped files
+     */
+    public List<SkippedFile> getSkipped()
+    {
+        return new ArrayList<>(skipped);
+    }
+
+    /**
+     * Reads a document, remembers the file if it cannot be read
+     * @param path path to file
+     * @return document or null if the document is skipped or has no class labels
+     */
+    private Document readOrSkip(Path path)
+    {
+        try
+        {
+            Document d = read(path);
+
+            if (d.classes.size() == 1 && d.classes.get(0).equals(""))
+                return null;
+
+            return d;
+        }
+        catch (IOException e)
+        {
+            skipped.add(new SkippedFile(path, e.toString()));
+            return null;
+        }
+    }
+
+    /**
+     * Reads a document
+     * First line holds the classes, third line the text
+     * @param path path to file
+     * @return document
+     * @throws IOException if the file cannot be read or is not a document
+     */
+    public static Document read(Path path) throws IOException
+    {
+        try (BufferedReader br = Files.newBufferedReader(path, StandardCharsets.UTF_8))
+        {
+            String classes = br.readLine();
+            br.readLine();
+            String text = br.readLine();
+
+            if (classes == null || text == null)
+                throw new IOException("Missing classes or text line");
+
+            Document d = new Document();
+            d.documentWords = LibraryMethods.splitText(text);
+            d.classes = Arrays.asList(LibraryMethods.splitText(classes));
+            return d;
+        }
+    }
+
+    /**
+     * File that was not loaded
+     */
+    public static class SkippedFile
+    {
+        /** Path to the file */
+        public final Path path;
+
+        /** Why the file was skipped */
+        public final String reason;
+
+        public SkippedFile(Path path, String reason)
+        {
+            this.path = path;
+            this.reason = reason;
+        }
+    }
+}
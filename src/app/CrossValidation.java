@@ -0,0 +1,394 @@
+package app;
+
+import app.classify.IClassifier;
+import app.classify.KNearestNeighbours;
+import app.parametrize.GramCounter;
+import app.parametrize.IParametrizer;
+import app.parametrize.NGrams;
+import app.parametrize.dimensions.Projection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * K-fold cross-validation over a grid of parametrizer and classifier settings
+ * The corpus is read and tokenized once by the caller. In each fold a parametrizer is initialized once for each
+ * parametrizer setting, from the fold's training documents only, and its vectors are shared by all classifier
+ * settings - Naive Bayes gets its own feature hashing, which has to be unsigned for it
+ * Grams of a fold are counted once for all minimum counts of a parametrizer, each minimum count filters the shared
+ * counts, so the counting time is part of the training time of each of them
+ * Values of K of one K-NN setting share the trained classifier and one search for the largest K per document,
+ * each K votes with its prefix of the neighbours, so their times are those of the shared work
+ * Folds and parametrizer settings run concurrently, and so do the classifiers sharing their vectors
+ * Times are wall-clock times of tasks sharing the cores, with one thread they are exact
+ */
+public class CrossValidation
+{
+    /** Seed of the shuffle splitting the documents into folds */
+    private static final long SEED = 42;
+
+    /** Classification classes, sorted */
+    private final String[] classes;
+
+    /** All labelled documents */
+    private final Document[] documents;
+
+    /** Number of folds */
+    private final int folds;
+
+    /** Fold of each document */
+    private final int[] documentFolds;
+
+    /**
+     * @param classes classification classes, sorted
+     * @param documents labelled documents
+     * @param folds number of folds, at least 2
+     */
+    public CrossValidation(String[] classes, Document[] documents, int folds)
+    {
+        if (folds < 2 || folds > documents.length)
+            throw new IllegalArgumentException("Invalid number of folds");
+
+        this.classes = classes;
+        this.documents = documents;
+        this.folds = folds;
+
+        // Shuffled documents are dealt out to the folds in turn, folds differ in size by at most one
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < documents.length; i++)
+            order.add(i);
+        Collections.shuffle(order, new Random(SEED));
+
+        documentFolds = new int[documents.length];
+        for (int i = 0; i < order.size(); i++)
+            documentFolds[order.get(i)] = i % folds;
+    }
+
+    /**
+     * One combination of settings and its results summed over the folds
+     */
+    public static class Result
+    {
+        /** Parametrizer argument */
+        public final String parametrizer;
+
+        /** Minimum count of a gram, 0 for the default, -1 if the parametrizer has no vocabulary */
+        public final int minOccurrences;
+
+        /** Classifier argument */
+        public final String classifier;
+
+        /** K, 0 if the classifier is not K-NN */
+        public final int neighbours;
+
+        /** Test documents whose classes contain the estimated class */
+        public int hits;
+
+        /** Test documents */
+        public int tested;
+
+        /** Per class - documents estimated as the class and labelled with it */
+        public final int[] truePositives;
+
+        /** Per class - documents estimated as the class and not labelled with it */
+        public final int[] falsePositives;
+
+        /** Per class - documents labelled with the class and estimated as another one */
+        public final int[] falseNegatives;
+
+        /** Time initializing the parametrizer, parametrizing the training documents and training the classifier */
+        public long trainNanos;
+
+        /** Time parametrizing and classifying the test documents */
+        public long testNanos;
+
+        private Result(String parametrizer, int minOccurrences, String classifier, int neighbours, int classCount)
+        {
+            this.parametrizer = parametrizer;
+            this.minOccurrences = minOccurrences;
+            this.classifier = classifier;
+            this.neighbours = neighbours;
+            truePositives = new int[classCount];
+            falsePositives = new int[classCount];
+            falseNegatives = new int[classCount];
+        }
+
+        /**
+         * Returns share of test documents whose classes contain the estimated class
+         * @return accuracy
+         */
+        public double accuracy()
+        {
+            return tested == 0 ? 0 : (double) hits / tested;
+        }
+
+        /**
+         * Returns F1 score of a class, 0 if the class was neither estimated nor labelled
+         * @param c class index
+         * @return F1
+         */
+        public double f1(int c)
+        {
+            int denominator = 2 * truePositives[c] + falsePositives[c] + falseNegatives[c];
+            return denominator == 0 ? 0 : 2.0 * truePositives[c] / denominator;
+        }
+
+        /**
+         * Returns mean F1 of the classes which were estimated or labelled at least once
+         * @return macro-averaged F1
+         */
+        public double macroF1()
+        {
+            double sum = 0;
+            int count = 0;
+            for (int c = 0; c < truePositives.length; c++)
+            {
+                if (truePositives[c] + falsePositives[c] + falseNegatives[c] == 0)
+                    continue;
+
+                sum += f1(c);
+                count++;
+            }
+
+            return count == 0 ? 0 : sum / count;
+        }
+
+        /**
+         * Adds outcome of one test document
+         * @param estimated estimated class index
+         * @param labels class indexes of the document
+         */
+        private void add(int estimated, int[] labels)
+        {
+            tested++;
+            boolean hit = false;
+            for (int c : labels)
+            {
+                if (c == estimated)
+                    hit = true;
+                else
+                    falseNegatives[c]++;
+            }
+
+            if (hit)
+            {
+                hits++;
+                truePositives[estimated]++;
+            }
+            else
+                falsePositives[estimated]++;
+        }
+    }
+
+    /**
+     * Evaluates every combination of the settings in every fold
+     * Invalid settings exit the program before any evaluation starts
+     * @param parametrizers parametrizer arguments
+     * @param minOccurrences minimum counts of a gram, each tried with parametrizers that have a vocabulary
+     * @param classifiers classifier arguments
+     * @param neighbours values of K, each tried with K-NN classifiers
+     * @param pool pool to evaluate on
+     * @return results in the order of the settings
+     */
+    public List<Result> run(String[] parametrizers, int[] minOccurrences, String[] classifiers, int[] neighbours, ForkJoinPool pool)
+    {
+        // Parametrizer settings with their classifier settings, grouped by the parametrizer whose grams they can share
+        Map<String, List<Result>> groups = new LinkedHashMap<>();
+        List<Result> results = new ArrayList<>();
+        for (String parametrizer : parametrizers)
+        {
+            boolean hashing = parametrizer.startsWith("hashing");
+            for (int min : hashing ? new int[] {-1} : minOccurrences)
+            {
+                for (String classifier : classifiers)
+                {
+                    boolean knn = classifier.startsWith("knn");
+                    for (int k : knn ? neighbours : new int[] {0})
+                    {
+                        Model.createModel(parametrizer, classifier, Math.max(k, 1), Math.max(min, 0));
+
+                        Result result = new Result(parametrizer, min, classifier, k, classes.length);
+                        String group = parametrizer + ";" + (hashing && classifier.equals("nbayes"));
+                        groups.computeIfAbsent(group, key -> new ArrayList<>()).add(result);
+                        results.add(result);
+                    }
+                }
+            }
+        }
+
+        List<List<Result>> groupList = new ArrayList<>(groups.values());
+        Logger.info("Cross-validating " + results.size() + " settings in " + folds + " folds");
+
+        // A parallel stream started from a pool task runs on that pool, and so do the streams nested in it
+        pool.submit(() -> IntStream.range(0, groupList.size() * folds).parallel()
+                .forEach(task -> evaluate(groupList.get(task / folds), task % folds)))
+                .join();
+
+        return results;
+    }
+
+    /**
+     * Trains and tests the settings of one parametrizer group in one fold
+     * The grams of the fold are counted once and shared by the minimum counts of the group
+     * @param group results sharing one parametrizer
+     * @param fold fold tested
+     */
+    private void evaluate(List<Result> group, int fold)
+    {
+        List<Document> training = new ArrayList<>(), testing = new ArrayList<>();
+        for (int i = 0; i < documents.length; i++)
+            (documentFolds[i] == fold ? testing : training).add(documents[i]);
+        Document[] trainingDocuments = training.toArray(new Document[0]);
+
+        Map<Integer, List<Result>> minimums = new LinkedHashMap<>();
+        for (Result result : group)
+            minimums.computeIfAbsent(result.minOccurrences, key -> new ArrayList<>()).add(result);
+
+        List<List<Result>> settings = new ArrayList<>(minimums.values());
+
+        long start = System.nanoTime();
+        IParametrizer[] parametrizers = new IParametrizer[settings.size()];
+        int lowestMinimum = Integer.MAX_VALUE;
+        for (int i = 0; i < parametrizers.length; i++)
+        {
+            Result first = settings.get(i).get(0);
+            parametrizers[i] = Model.createParametrizer(first.parametrizer, first.classifier, Math.max(first.minOccurrences, 0));
+            if (vocabulary(parametrizers[i]) != null)
+                lowestMinimum = Math.min(lowestMinimum, vocabulary(parametrizers[i]).getMinOccurrences());
+        }
+
+        // The counts serve every minimum count at least the lowest one
+        NGrams firstVocabulary = vocabulary(parametrizers[0]);
+        GramCounter counter = firstVocabulary == null ? null : firstVocabulary.count(trainingDocuments, lowestMinimum);
+        long countNanos = System.nanoTime() - start;
+
+        IntStream.range(0, parametrizers.length).parallel().forEach(i ->
+                evaluate(settings.get(i), parametrizers[i], counter, countNanos, trainingDocuments, testing));
+    }
+
+    /**
+     * Returns the NGrams building the vocabulary of a parametrizer
+     * @param parametrizer parametrizer, possibly a projection
+     * @return NGrams or null if the parametrizer has no vocabulary
+     */
+    private static NGrams vocabulary(IParametrizer parametrizer)
+    {
+        if (parametrizer instanceof Projection)
+            parametrizer = ((Projection) parametrizer).getInner();
+
+        return parametrizer instanceof NGrams ? (NGrams) parametrizer : null;
+    }
+
+    /**
+     * Trains and tests the settings sharing one parametrizer in one fold
+     * @param group results sharing the parametrizer
+     * @param parametrizer untrained parametrizer
+     * @param counter grams of the training documents, null if the parametrizer has no vocabulary
+     * @param countNanos time counting the grams
+     * @param trainingDocuments training documents of the fold
+     * @param testing test documents of the fold
+     */
+    private void evaluate(List<Result> group, IParametrizer parametrizer, GramCounter counter, long countNanos,
+                          Document[] trainingDocuments, List<Document> testing)
+    {
+        long start = System.nanoTime();
+        TrainingSet trainingSet = new TrainingSet(classes, trainingDocuments);
+        if (counter == null)
+            parametrizer.initialize(trainingSet.documents);
+        else
+        {
+            vocabulary(parametrizer).initialize(trainingSet.documents, counter);
+            if (parametrizer instanceof Projection)
+                ((Projection) parametrizer).fitInitialized(trainingSet.documents);
+        }
+        trainingSet.parametrize(parametrizer);
+        long parametrizerNanos = countNanos + System.nanoTime() - start;
+
+        start = System.nanoTime();
+        SparseVector[] testVectors = testing.stream().map(parametrizer::parametrize).toArray(SparseVector[]::new);
+        long testParametrizeNanos = System.nanoTime() - start;
+        TrainingSet testSet = new TrainingSet(classes, testing.toArray(new Document[0]));
+
+        // Values of K of one K-NN setting share a classifier trained once and one search for the largest K
+        Map<String, List<Result>> settings = new LinkedHashMap<>();
+        for (Result result : group)
+            settings.computeIfAbsent(result.classifier, key -> new ArrayList<>()).add(result);
+
+        settings.values().parallelStream().forEach(setting ->
+        {
+            int[] neighbours = setting.stream().mapToInt(result -> Math.max(result.neighbours, 1)).toArray();
+            IClassifier classifier = Model.createClassifier(setting.get(0).classifier, Arrays.stream(neighbours).max().getAsInt());
+            long trainStart = System.nanoTime();
+            classifier.train(trainingSet);
+            long trainNanos = parametrizerNanos + System.nanoTime() - trainStart;
+
+            // Sequential, so that the time is the latency of single documents
+            long testStart = System.nanoTime();
+            int[][] estimated = new int[setting.size()][testVectors.length];
+            for (int i = 0; i < testVectors.length; i++)
+            {
+                String[] estimatedClasses = classifier instanceof KNearestNeighbours
+                        ? ((KNearestNeighbours) classifier).classify(testVectors[i], neighbours)
+                        : new String[] {classifier.classify(testVectors[i])};
+                for (int r = 0; r < estimatedClasses.length; r++)
+                    estimated[r][i] = Arrays.binarySearch(classes, estimatedClasses[r]);
+            }
+            long testNanos = testParametrizeNanos + System.nanoTime() - testStart;
+
+            for (int r = 0; r < setting.size(); r++)
+            {
+                Result result = setting.get(r);
+                synchronized (result)
+                {
+                    for (int i = 0; i < testVectors.length; i++)
+                        result.add(estimated[r][i], testSet.documentClasses[i]);
+                    result.trainNanos += trainNanos;
+                    result.testNanos += testNanos;
+                }
+            }
+        });
+    }
+
+    /**
+     * Formats results as a table of settings with accuracy, macro-averaged F1, training time per fold and time
+     * per test document, followed by a table of F1 of each class under each setting
+     * @param results results of run
+     * @return table
+     */
+    public String table(List<Result> results)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-4s %-24s %-8s %-24s %-4s %9s %9s %12s %10s%n",
+                "#", "parametrizer", "min", "classifier", "K", "accuracy", "macro F1", "train ms", "us/doc"));
+        for (int r = 0; r < results.size(); r++)
+        {
+            Result result = results.get(r);
+            sb.append(String.format("%-4d %-24s %-8s %-24s %-4s %9.3f %9.3f %12.1f %10.1f%n", r + 1, result.parametrizer,
+                    result.minOccurrences < 0 ? "-" : result.minOccurrences == 0 ? "default" : Integer.toString(result.minOccurrences),
+                    result.classifier, result.neighbours == 0 ? "-" : Integer.toString(result.neighbours),
+                    result.accuracy(), result.macroF1(), result.trainNanos / 1e6 / folds,
+                    result.tested == 0 ? 0 : result.testNanos / 1e3 / result.tested));
+        }
+
+        sb.append(String.format("%nF1 per class%n%-24s", "class"));
+        for (int r = 0; r < results.size(); r++)
+            sb.append(String.format(" %6s", "#" + (r + 1)));
+        sb.append(String.format("%n"));
+        for (int c = 0; c < classes.length; c++)
+        {
+            sb.append(String.format("%-24s", classes[c]));
+            for (Result result : results)
+                sb.append(String.format(" %6.3f", result.f1(c)));
+            sb.append(String.format("%n"));
+        }
+
+        return sb.toString();
+    }
+}
@@ -2,16 +2,15 @@ package app;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Arrays;
+import java.util.stream.Stream;
 
 public class LibraryMethods
 {
-    /** Regex used to split documents into words */
-    private static final String REGEX_SPLIT = "[^\\p{L}0-9]+";
-
     /**
      * Loads and returns classes from classes file
      * expects classes to be in one line separated with single spaces
@@ -24,7 +23,7 @@ public class LibraryMethods
 
         try
         {
-            BufferedReader br = new BufferedReader(new FileReader(classesFile));
+            BufferedReader br = Files.newBufferedReader(classesFile.toPath(), StandardCharsets.UTF_8);
             String[] classes = br.readLine().split("\\s+");
             Arrays.sort(classes);
             return classes;
@@ -50,15 +49,7 @@ public class LibraryMethods
 
         try
         {
-            BufferedReader br = new BufferedReader(new FileReader(docFile));
-
-            String classes = br.readLine();
-            br.readLine();
-            String text = br.readLine();
-
-            d = new Document();
-            d.documentWords = splitText(text);
-            d.classes = Arrays.asList(splitText(classes));
+            d = CorpusReader.read(docFile.toPath());
         }
         catch (IOException e)
         {
@@ -84,44 +75,42 @@ public class LibraryMethods
 
     /**
      * Splits document text into words and converts them into lowercase
+     * Words are runs of letters and digits, see Tokenizer
      * @param text
      * @return lowercase words
      */
     public static String[] splitText(String text)
     {
-        String[] words = text.split(REGEX_SPLIT);
-
-        for (int i = 0; i < words.length; i++)
-        {
-            words[i] = words[i].toLowerCase();
-        }
-
-        return words;
+        return Tokenizer.split(text);
     }
 
     /**
-     * Loads and parses all documents in a directory
+     * Loads and parses all documents in a directory and its subdirectories
      * Documents without class labels are ignored
+     * Files that cannot be parsed are reported and ignored
      * @param dirPath path to directory
      * @return Documents
      */
     public static Document[] loadDocuments(String dirPath)
     {
-        File dir = new File(dirPath);
-        File[] files = dir.listFiles();
-        ArrayList<Document> docs = new ArrayList<>();
+        CorpusReader reader = new CorpusReader();
+        Document[] docs = null;
 
-        for (int i = 0; i < files.length; i++)
+        try (Stream<Document> stream = reader.stream(dirPath))
         {
-            Document d = parseDocument(files[i]);
-
-            if (d.classes.size() == 1 && d.classes.get(0).equals(""))
-                continue;
+            docs = stream.toArray(Document[]::new);
+        }
+        catch (IOException | UncheckedIOException e)
+        {
+            Logger.error("Error reading directory " + dirPath + ", program will exit.");
+            System.exit(1);
+        }
 
-            docs.add(d);
+        for (CorpusReader.SkippedFile f : reader.getSkipped())
+        {
+            Logger.error("Skipped file " + f.path + ": " + f.reason);
         }
 
-        Document[] arr = new Document[docs.size()];
-        return docs.toArray(arr);
+        return docs;
     }
 }
@@ -1,28 +1,134 @@
 package app;
 
+import java.util.Arrays;
+
 public class Main
 {
     public static void main(String[] args)
     {
-        if (args.length == 1)
+        if (args.length >= 3 && args[0].equals("--update"))
+        {
+            // --update <model> <documents> [--text-model]
+            Settings.modelPath = args[1];
+            Settings.updateSetPath = args[2];
+            Settings.mode = Mode.UPDATE;
+            for (int i = 3; i < args.length; i++)
+            {
+                if (args[i].equals("--text-model"))
+                    Settings.textModel = true;
+                else
+                {
+                    System.out.println("Invalid option " + args[i] + ", program will now exit.");
+                    System.exit(1);
+                }
+            }
+
+            Application app = new Application();
+            app.run();
+        }
+        else if (args.length >= 6 && args[0].equals("--cross-validate"))
         {
+            // --cross-validate <classes> <documents> <folds> <parametrizers> <classifiers> [options]
+            // Parametrizers, classifiers and the option values are comma-separated lists, all combinations are tried
+            Settings.classesPath = args[1];
+            Settings.trainingSetPath = args[2];
+            Settings.parametrizerArgument = args[4].toLowerCase();
+            Settings.classifierArgument = args[5].toLowerCase();
+            Settings.mode = Mode.CROSS_VALIDATE;
+            if (!args[3].matches("\\d+") || Integer.parseInt(args[3]) < 2)
+            {
+                System.out.println("Invalid number of folds, program will now exit.");
+                System.exit(1);
+            }
+            Settings.folds = Integer.parseInt(args[3]);
+
+            for (int i = 6; i < args.length; i++)
+            {
+                if (args[i].equals("--neighbours") && i + 1 < args.length && args[i + 1].matches("[1-9]\\d*(,[1-9]\\d*)*"))
+                    Settings.neighbourCounts = parseCounts(args[++i]);
+                else if (args[i].equals("--min-occurrences") && i + 1 < args.length && args[i + 1].matches("\\d+(,\\d+)*"))
+                    Settings.minOccurrenceCounts = parseCounts(args[++i]);
+                else if (args[i].equals("--threads") && i + 1 < args.length && args[i + 1].matches("\\d+"))
+                    Settings.threads = Integer.parseInt(args[++i]);
+                else if (args[i].equals("--vocabulary-memory") && i + 1 < args.length && args[i + 1].matches("\\d+"))
+                    Settings.vocabularyMemoryCap = Long.parseLong(args[++i]) << 20;
+                else
+                {
+                    System.out.println("Invalid option " + args[i] + ", program will now exit.");
+                    System.exit(1);
+                }
+            }
+
             Application app = new Application();
+            app.run();
+        }
+        else if (args.length < 6 && args.length % 2 == 1 && (args.length == 1 || args[1].startsWith("--")))
+        {
+            // <model> [--ef-search <efSearch>] [--nprobe <nprobe>]
             Settings.modelPath = args[0];
             Settings.mode = Mode.LOAD;
+            for (int i = 1; i < args.length; i += 2)
+            {
+                if (!args[i].equals("--ef-search") && !args[i].equals("--nprobe"))
+                {
+                    System.out.println("Invalid option " + args[i] + ", program will now exit.");
+                    System.exit(1);
+                }
+                if (!args[i + 1].matches("[1-9]\\d*"))
+                {
+                    System.out.println("Invalid " + args[i].substring(2) + " argument, program will now exit.");
+                    System.exit(1);
+                }
+
+                if (args[i].equals("--ef-search"))
+                    Settings.efSearch = Integer.parseInt(args[i + 1]);
+                else
+                    Settings.nprobe = Integer.parseInt(args[i + 1]);
+            }
+
+            Application app = new Application();
             app.run();
         }
-        else if (args.length == 6)
+        else if (args.length >= 6)
         {
             Settings.classesPath = args[0];
             Settings.trainingSetPath = args[1];
             Settings.testingSetPath = args[2];
             Settings.parametrizerArgument = args[3].toLowerCase();
-            Settings.parametrizerArgument = args[4].toLowerCase();
+            Settings.classifierArgument = args[4].toLowerCase();
             Settings.modelPath = args[5];
             Settings.mode = Mode.CREATE;
 
+            // Options follow the positional arguments, --vocabulary-memory takes megabytes
+            for (int i = 6; i < args.length; i++)
+            {
+                if (args[i].equals("--text-model"))
+                    Settings.textModel = true;
+                else if (args[i].equals("--vocabulary-memory") && i + 1 < args.length && args[i + 1].matches("\\d+"))
+                    Settings.vocabularyMemoryCap = Long.parseLong(args[++i]) << 20;
+                else if (args[i].equals("--neighbours") && i + 1 < args.length && args[i + 1].matches("[1-9]\\d*"))
+                    Settings.neighbourCounts = parseCounts(args[++i]);
+                else if (args[i].equals("--min-occurrences") && i + 1 < args.length && args[i + 1].matches("\\d+"))
+                    Settings.minOccurrenceCounts = parseCounts(args[++i]);
+                else
+                {
+                    System.out.println("Invalid option " + args[i] + ", program will now exit.");
+                    System.exit(1);
+                }
+            }
+
             Application app = new Application();
             app.run();
         }
     }
+
+    /**
+     * Parses a comma-separated list of counts
+     * @param argument list
+     * @return counts
+     */
+    private static int[] parseCounts(String argument)
+    {
+        return Arrays.stream(argument.split(",")).mapToInt(Integer::parseInt).toArray();
+    }
 }
@@ -1,10 +1,13 @@
 package app;
 
 /**
- * Specifies whether model is to be created or to be loaded
+ * Specifies whether model is to be created, loaded or loaded and updated with new documents,
+ * or whether settings are to be compared by cross-validation
  */
 public enum Mode
 {
     LOAD,
-    CREATE
+    CREATE,
+    UPDATE,
+    CROSS_VALIDATE
 }
@@ -1,18 +1,43 @@
 package app;
 
+import app.classify.ExactIndex;
+import app.classify.HnswIndex;
 import app.classify.IClassifier;
+import app.classify.IUpdatableClassifier;
+import app.classify.InvertedIndex;
+import app.classify.IvfPqIndex;
+import app.classify.KMeans;
 import app.classify.KNearestNeighbours;
+import app.classify.Metric;
 import app.classify.NaiveBayes;
+import app.classify.QuantizedIndex;
+import app.parametrize.FeatureHashing;
 import app.parametrize.IParametrizer;
 import app.parametrize.NGrams;
+import app.parametrize.dimensions.LDA;
+import app.parametrize.dimensions.LSA;
+import app.parametrize.dimensions.Projection;
 
 import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class Model
 {
+    /** Marks binary model files - "UIRM" read as a little-endian int */
+    private static final int MAGIC = 0x4D524955;
+
+    /** Version of the binary model format */
+    private static final int VERSION = 5;
+
     /** Model's parametrizer */
     public IParametrizer parametrizer;
     /** Model's classifier */
@@ -34,56 +59,473 @@ public class Model
      */
     public String classifyText(String text)
     {
-        return classifier.classify(parametrizer.parametrize(LibraryMethods.parseString(text)));
+        return classifyDocument(LibraryMethods.parseString(text));
+    }
+
+    /**
+     * Parametrizes and classifies the document
+     * @param document document
+     * @return class
+     */
+    public String classifyDocument(Document document)
+    {
+        return classifier.classify(parametrizer.parametrize(document));
+    }
+
+    /**
+     * Parametrizes the document and writes a score of every class into a caller-provided array
+     * Scores are in the order of getClasses(), non-negative and summing to 1
+     * @param document document
+     * @param scores array of getClasses().length scores, overwritten
+     */
+    public void scoreDocument(Document document, double[] scores)
+    {
+        classifier.score(parametrizer.parametrize(document), scores);
+    }
+
+    /**
+     * Parametrizes the document and returns all classes whose score reaches a threshold
+     * @param document document
+     * @param threshold minimum score
+     * @return classes from the highest score, at least the best one
+     */
+    public List<String> classifyDocumentMultiLabel(Document document, double threshold)
+    {
+        return classifier.classifyMultiLabel(parametrizer.parametrize(document), threshold);
+    }
+
+    /**
+     * Returns classes the model was trained for, in the order of scores
+     * @return sorted classes
+     */
+    public String[] getClasses()
+    {
+        return classifier.getClasses();
+    }
+
+    /**
+     * Classifies texts in parallel on the common ForkJoinPool
+     * @param texts texts
+     * @return classes in the order of the texts
+     */
+    public List<String> classifyBatch(List<String> texts)
+    {
+        return classifyAll(texts.stream().map(LibraryMethods::parseString));
+    }
+
+    /**
+     * Classifies documents in parallel on the common ForkJoinPool
+     * @param documents documents
+     * @return classes in the encounter order of the documents
+     */
+    public List<String> classifyAll(Stream<Document> documents)
+    {
+        return classifyAll(documents, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Classifies documents in parallel on the given pool
+     * The parametrizer and the classifier keep their buffers per thread, so each pool thread reuses its own
+     * @param documents documents
+     * @param pool pool to classify on
+     * @return classes in the encounter order of the documents
+     */
+    public List<String> classifyAll(Stream<Document> documents, ForkJoinPool pool)
+    {
+        // A parallel stream started from a pool task runs on that pool
+        return pool.submit(() -> documents.parallel()
+                .map(this::classifyDocument)
+                .collect(Collectors.toList()))
+                .join();
     }
 
     /**
      * Returns a Model with parametrizer and classifier according to Settings arguments
+     * Parametrizer argument may end with a dimensionality reduction stage, e.g. tfidf+lda
      * If arguments are invalid, exits the program
      * @return model
      */
     public static Model getModelForSettings()
+    {
+        return createModel(Settings.parametrizerArgument, Settings.classifierArgument, Settings.neighbourCounts[0], Settings.minOccurrenceCounts[0]);
+    }
+
+    /**
+     * Returns an untrained Model with parametrizer and classifier according to arguments
+     * If arguments are invalid, exits the program
+     * @param parametrizerArgument parametrizer argument, e.g. tfidf or tfidf+lda
+     * @param classifierArgument classifier argument, e.g. knn or kmeans:40
+     * @param neighbours K of the K-NN classifiers
+     * @param minOccurrences minimum count of a gram in the training set, 0 for the default of NGrams
+     * @return model
+     */
+    public static Model createModel(String parametrizerArgument, String classifierArgument, int neighbours, int minOccurrences)
+    {
+        IParametrizer parametrizer = createParametrizer(parametrizerArgument, classifierArgument, minOccurrences);
+        IClassifier classifier = createClassifier(classifierArgument, neighbours);
+
+        // Projected vectors are not counts
+        if (parametrizer instanceof Projection && classifier instanceof NaiveBayes)
+        {
+            System.out.println("Naive Bayes cannot follow a dimensionality reduction stage, program will now exit.");
+            System.exit(1);
+        }
+
+        return new Model(parametrizer, classifier);
+    }
+
+    /**
+     * Creates an untrained parametrizer from its argument
+     * If the argument is invalid, exits the program
+     * @param argument parametrizer argument, e.g. tfidf or tfidf+lda
+     * @param classifierArgument argument of the classifier the parametrizer feeds
+     * @param minOccurrences minimum count of a gram in the training set, 0 for the default of NGrams
+     * @return parametrizer
+     */
+    public static IParametrizer createParametrizer(String argument, String classifierArgument, int minOccurrences)
     {
         IParametrizer parametrizer = null;
-        IClassifier classifier = null;
+        String[] stages = argument.split("\\+");
+        String base = stages[0];
 
-        if (Settings.parametrizerArgument.equals("bagofwords"))
+        if (stages.length > 2)
+        {
+            System.out.println("Invalid parametrizer argument, program will now exit.");
+            System.exit(1);
+        }
+
+        if (base.equals("bagofwords"))
         {
             parametrizer = new NGrams(false, 1);
         }
-        else if (Settings.parametrizerArgument.equals("tfidf"))
+        else if (base.equals("tfidf"))
         {
             parametrizer = new NGrams(true, 1);
         }
-        else if (Settings.parametrizerArgument.equals("ngrams"))
+        else if (base.equals("ngrams"))
         {
             parametrizer = new NGrams(false, 2);
         }
+        else if (base.split(":")[0].equals("hashing"))
+        {
+            parametrizer = createFeatureHashing(base, !classifierArgument.equals("nbayes"));
+        }
         else
             {
                 System.out.println("Invalid parametrizer argument, program will now exit.");
                 System.exit(1);
             }
 
-        if (Settings.classifierArgument.equals("nbayes"))
+        if (parametrizer instanceof NGrams)
+        {
+            ((NGrams) parametrizer).setMemoryCap(Settings.vocabularyMemoryCap);
+            ((NGrams) parametrizer).setMinOccurrences(minOccurrences);
+        }
+
+        if (stages.length == 2)
+            parametrizer = createProjection(parametrizer, stages[1]);
+
+        return parametrizer;
+    }
+
+    /**
+     * Creates an untrained classifier from its argument
+     * If the argument is invalid, exits the program
+     * @param argument classifier argument, e.g. knn or kmeans:40
+     * @param neighbours K of the K-NN classifiers
+     * @return classifier
+     */
+    public static IClassifier createClassifier(String argument, int neighbours)
+    {
+        IClassifier classifier = null;
+
+        if (argument.equals("nbayes"))
         {
             classifier = new NaiveBayes();
         }
-        else if (Settings.classifierArgument.equals("knn"))
+        else if (argument.split(":")[0].equals("knn"))
+        {
+            classifier = createKNearestNeighbours(argument, neighbours);
+        }
+        else if (argument.split(":")[0].equals("knn-hnsw"))
+        {
+            classifier = createHnswKNearestNeighbours(argument, neighbours);
+        }
+        else if (argument.split(":")[0].matches("knn-(int8|float16)"))
         {
-            classifier = new KNearestNeighbours(5);
+            classifier = createQuantizedKNearestNeighbours(argument, neighbours);
         }
+        else if (argument.equals("knn-inverted"))
+        {
+            classifier = new KNearestNeighbours(neighbours, new InvertedIndex(true));
+        }
+        else if (argument.equals("knn-inverted:exhaustive"))
+        {
+            classifier = new KNearestNeighbours(neighbours, new InvertedIndex(false));
+        }
+        else if (argument.split(":")[0].equals("knn-ivfpq"))
+        {
+            classifier = createIvfPqKNearestNeighbours(argument, neighbours);
+        }
+        else if (argument.split(":")[0].equals("kmeans"))
+        {
+            classifier = createKMeans(argument);
+        }
+        else
             {
                 System.out.println("Invalid classifier argument, program will now exit.");
+                System.exit(1);
             }
 
-        return new Model(parametrizer, classifier);
+        return classifier;
+    }
+
+    /**
+     * Creates dimensionality reduction stage from argument lda[:dimensions[:features]] or lsa[:dimensions]
+     * Defaults are classes - 1 dimensions and LDA.DEFAULT_FEATURES input dimensions for LDA,
+     * LSA.DEFAULT_DIMENSIONS dimensions for LSA
+     * If the argument is invalid, exits the program
+     * @param inner parametrizer whose vectors are projected
+     * @param argument stage argument
+     * @return parametrizer
+     */
+    private static IParametrizer createProjection(IParametrizer inner, String argument)
+    {
+        String[] parts = argument.split(":");
+
+        try
+        {
+            if (parts[0].equals("lda") && parts.length <= 3)
+            {
+                int dimensions = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+                int features = parts.length > 2 ? Integer.parseInt(parts[2]) : LDA.DEFAULT_FEATURES;
+                return new LDA(inner, dimensions, features);
+            }
+            if (parts[0].equals("lsa") && parts.length <= 2)
+                return new LSA(inner, parts.length > 1 ? Integer.parseInt(parts[1]) : LSA.DEFAULT_DIMENSIONS);
+
+            throw new IllegalArgumentException();
+        }
+        catch (IllegalArgumentException e)
+        {
+            System.out.println("Invalid parametrizer argument, program will now exit.");
+            System.exit(1);
+            return null;
+        }
+    }
+
+    /**
+     * Creates feature hashing parametrizer from argument hashing[:bits[:words[:chars]]]
+     * Defaults are 16 bits, word unigrams and bigrams, no character grams
+     * Naive Bayes needs non-negative counts, so the hashing is signed for the other classifiers only
+     * If the argument is invalid, exits the program
+     * @param argument parametrizer argument
+     * @param signed whether the hashing is signed
+     * @return parametrizer
+     */
+    private static IParametrizer createFeatureHashing(String argument, boolean signed)
+    {
+        String[] parts = argument.split(":");
+        int[] parameters = {16, 2, 0};
+
+        try
+        {
+            if (parts.length > parameters.length + 1)
+                throw new IllegalArgumentException();
+
+            for (int i = 1; i < parts.length; i++)
+                parameters[i - 1] = Integer.parseInt(parts[i]);
+
+            return new FeatureHashing(parameters[0], parameters[1], parameters[2], signed);
+        }
+        catch (IllegalArgumentException e)
+        {
+            System.out.println("Invalid parametrizer argument, program will now exit.");
+            System.exit(1);
+            return null;
+        }
+    }
+
+    /**
+     * Creates K-NN classifier with exact search from argument knn[:metric]
+     * Metric is cosine, euclidean or manhattan, cosine by default
+     * If the argument is invalid, exits the program
+     * @param argument classifier argument
+     * @param neighbours K
+     * @return classifier
+     */
+    private static IClassifier createKNearestNeighbours(String argument, int neighbours)
+    {
+        String[] parts = argument.split(":");
+
+        try
+        {
+            if (parts.length > 2)
+                throw new IllegalArgumentException();
+
+            Metric metric = parts.length == 2 ? Metric.forIdentifier(parts[1]) : Metric.COSINE;
+            return new KNearestNeighbours(neighbours, new ExactIndex(metric));
+        }
+        catch (IllegalArgumentException e)
+        {
+            System.out.println("Invalid classifier argument, program will now exit.");
+            System.exit(1);
+            return null;
+        }
+    }
+
+    /**
+     * Creates k-means classifier from argument kmeans[:clusters[:metric[:batch]]]
+     * Defaults are as many clusters as classes, cosine metric and Lloyd iterations over all vectors,
+     * metric is cosine or euclidean, a batch size switches to mini-batch iterations
+     * If the argument is invalid, exits the program
+     * @param argument classifier argument
+     * @return classifier
+     */
+    private static IClassifier createKMeans(String argument)
+    {
+        String[] parts = argument.split(":");
+
+        try
+        {
+            if (parts.length > 4)
+                throw new IllegalArgumentException();
+
+            int clusters = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+            Metric metric = parts.length > 2 ? Metric.forIdentifier(parts[2]) : Metric.COSINE;
+            int batch = parts.length > 3 ? Integer.parseInt(parts[3]) : 0;
+            return new KMeans(clusters, metric, batch);
+        }
+        catch (IllegalArgumentException e)
+        {
+            System.out.println("Invalid classifier argument, program will now exit.");
+            System.exit(1);
+            return null;
+        }
+    }
+
+    /**
+     * Creates K-NN classifier over quantized vectors from argument knn-int8[:rerank] or knn-float16[:rerank]
+     * With rerank, rerank * K candidates are scored again exactly, by default there is no re-ranking
+     * If the argument is invalid, exits the program
+     * @param argument classifier argument
+     * @param neighbours K
+     * @return classifier
+     */
+    private static IClassifier createQuantizedKNearestNeighbours(String argument, int neighbours)
+    {
+        String[] parts = argument.split(":");
+
+        try
+        {
+            if (parts.length > 2)
+                throw new IllegalArgumentException();
+
+            int bits = parts[0].equals("knn-int8") ? 8 : 16;
+            int rerank = parts.length == 2 ? Integer.parseInt(parts[1]) : 0;
+            return new KNearestNeighbours(neighbours, new QuantizedIndex(bits, rerank));
+        }
+        catch (IllegalArgumentException e)
+        {
+            System.out.println("Invalid classifier argument, program will now exit.");
+            System.exit(1);
+            return null;
+        }
+    }
+
+    /**
+     * Creates K-NN classifier over an HNSW graph from argument knn-hnsw[:efSearch[:m[:efConstruction]]]
+     * Defaults are HnswIndex.DEFAULT_EF_SEARCH, HnswIndex.DEFAULT_M and HnswIndex.DEFAULT_EF_CONSTRUCTION
+     * If the argument is invalid, exits the program
+     * @param argument classifier argument
+     * @param neighbours K
+     * @return classifier
+     */
+    private static IClassifier createHnswKNearestNeighbours(String argument, int neighbours)
+    {
+        String[] parts = argument.split(":");
+
+        try
+        {
+            if (parts.length > 4)
+                throw new IllegalArgumentException();
+
+            int efSearch = parts.length > 1 ? Integer.parseInt(parts[1]) : HnswIndex.DEFAULT_EF_SEARCH;
+            int m = parts.length > 2 ? Integer.parseInt(parts[2]) : HnswIndex.DEFAULT_M;
+            int efConstruction = parts.length > 3 ? Integer.parseInt(parts[3]) : HnswIndex.DEFAULT_EF_CONSTRUCTION;
+            return new KNearestNeighbours(neighbours, new HnswIndex(m, efConstruction, efSearch));
+        }
+        catch (IllegalArgumentException e)
+        {
+            System.out.println("Invalid classifier argument, program will now exit.");
+            System.exit(1);
+            return null;
+        }
+    }
+
+    /**
+     * Creates K-NN classifier over an inverted file of product-quantized vectors from argument knn-ivfpq[:nprobe[:rerank]]
+     * Defaults are 8 probed lists and no re-ranking
+     * If the argument is invalid, exits the program
+     * @param argument classifier argument
+     * @param neighbours K
+     * @return classifier
+     */
+    private static IClassifier createIvfPqKNearestNeighbours(String argument, int neighbours)
+    {
+        String[] parts = argument.split(":");
+
+        try
+        {
+            if (parts.length > 3)
+                throw new IllegalArgumentException();
+
+            int nprobe = parts.length > 1 ? Integer.parseInt(parts[1]) : 8;
+            int rerank = parts.length > 2 ? Integer.parseInt(parts[2]) : 0;
+            return new KNearestNeighbours(neighbours, new IvfPqIndex(256, 32, 0, nprobe, rerank));
+        }
+        catch (IllegalArgumentException e)
+        {
+            System.out.println("Invalid classifier argument, program will now exit.");
+            System.exit(1);
+            return null;
+        }
     }
 
     /**
      *  Exports the model
+     *  Binary format is used unless Settings.textModel is set
      */
     public void saveModel()
+    {
+        if (Settings.textModel)
+        {
+            saveTextModel();
+            return;
+        }
+
+        Logger.info("Exporting model");
+        try (ModelWriter writer = new ModelWriter(Paths.get(Settings.modelPath)))
+        {
+            writer.writeInt(MAGIC);
+            writer.writeInt(VERSION);
+            Logger.info("Exporting parametrizer");
+            parametrizer.write(writer);
+            Logger.info("Exporting classifier");
+            classifier.write(writer);
+        }
+        catch (IOException e)
+        {
+            Logger.error("Error writing into file, program will exit.");
+            System.exit(1);
+        }
+        Logger.info("Successfully exported the model into file " + Settings.modelPath);
+    }
+
+    /**
+     *  Exports the model in text format
+     */
+    public void saveTextModel()
     {
         Logger.info("Exporting model");
         Logger.info("Exporting parametrizer");
@@ -97,7 +539,7 @@ public class Model
             if (!f.exists())
                 f.createNewFile();
 
-            BufferedWriter bw = new BufferedWriter(new FileWriter(f));
+            BufferedWriter bw = Files.newBufferedWriter(f.toPath(), StandardCharsets.UTF_8);
 
             for (String s : paramExport)
             {
@@ -121,7 +563,79 @@ public class Model
         Logger.info("Successfully exported the model into file " + Settings.modelPath);
     }
 
+    /**
+     * Loads the model from Settings.modelPath
+     * Binary and text format are told apart by the binary header
+     * @return model
+     */
     public static Model loadModel()
+    {
+        ModelReader reader = null;
+
+        try
+        {
+            reader = ModelReader.map(Paths.get(Settings.modelPath));
+        }
+        catch (IOException e)
+        {
+            Logger.error("Error while loading the model, program will exit.");
+            System.exit(0);
+        }
+
+        if (reader.remaining() >= Integer.BYTES && reader.readInt() == MAGIC)
+            return loadBinaryModel(reader);
+        else
+            return loadTextModel();
+    }
+
+    /**
+     * Loads the model from binary format
+     * @param reader reader positioned after the magic number
+     * @return model
+     */
+    private static Model loadBinaryModel(ModelReader reader)
+    {
+        Model m = new Model();
+        Logger.info("Loading model");
+
+        try
+        {
+            int version = reader.readInt();
+            if (version != VERSION)
+            {
+                Logger.error("Unsupported model version " + version + ", program will exit.");
+                System.exit(0);
+            }
+
+            Logger.info("Loading parametrizer");
+            m.parametrizer = readParametrizer(reader);
+
+            Logger.info("Loading classifier");
+            String identifier = reader.readString();
+            m.classifier = classifierForIdentifier(identifier);
+            if (m.classifier == null)
+            {
+                Logger.error("Unknown classifier " + identifier + " in the model, program will exit.");
+                System.exit(0);
+            }
+            m.classifier.read(reader);
+        }
+        catch (BufferUnderflowException e)
+        {
+            Logger.error("Error while loading the model, program will exit.");
+            System.exit(0);
+        }
+
+        Logger.info("Model loaded");
+
+        return m;
+    }
+
+    /**
+     * Loads the model from text format
+     * @return model
+     */
+    private static Model loadTextModel()
     {
         Model m = new Model();
         Logger.info("Loading model");
@@ -129,7 +643,7 @@ public class Model
         List<String> parametrizerLines = new ArrayList<>();
         try
         {
-            BufferedReader br = new BufferedReader(new FileReader(new File(Settings.modelPath)));
+            BufferedReader br = Files.newBufferedReader(Paths.get(Settings.modelPath), StandardCharsets.UTF_8);
             String s = br.readLine();
             while (!s.contains("**_classifier:"))
             {
@@ -148,29 +662,17 @@ public class Model
             System.exit(0);
         }
 
-        IClassifier classifier = null;
-        IParametrizer parametrizer = null;
-
         Logger.info("Loading classifier");
         String cLine = classifierLines.get(0);
-        if (cLine.equals("**_classifier:" + NaiveBayes.identifier))
-        {
-            classifier = new NaiveBayes();
+        IClassifier classifier = classifierForIdentifier(cLine.substring("**_classifier:".length()));
+        if (classifier != null)
             classifier.load(classifierLines);
-        }
-        else if (cLine.equals("**_classifier:" + KNearestNeighbours.identifier))
-        {
-            classifier = new KNearestNeighbours();
-            classifier.load(classifierLines);
-        }
 
         Logger.info("Loading parametrizer");
         String pLine = parametrizerLines.get(0);
-        if (pLine.equals("**_parametrizer:" + NGrams.identifier))
-        {
-            parametrizer = new NGrams();
+        IParametrizer parametrizer = parametrizerForIdentifier(pLine.substring("**_parametrizer:".length()));
+        if (parametrizer != null)
             parametrizer.load(parametrizerLines);
-        }
 
         m.parametrizer = parametrizer;
         m.classifier = classifier;
@@ -181,19 +683,91 @@ public class Model
     }
 
     /**
-     * Tests the model and reports accuracy
+     * Creates an empty classifier for an identifier
+     * @param identifier classifier identifier
+     * @return classifier or null if the identifier is unknown
      */
-    public void test()
+    private static IClassifier classifierForIdentifier(String identifier)
     {
-        Document[] testDocuments = LibraryMethods.loadDocuments(Settings.testingSetPath);
-        String[] results = new String[testDocuments.length];
-        double[][] vectors = new double[testDocuments.length][];
+        if (identifier.equals(NaiveBayes.identifier))
+            return new NaiveBayes();
+        else if (identifier.equals(KNearestNeighbours.identifier))
+            return new KNearestNeighbours();
+        else if (identifier.equals(KMeans.identifier))
+            return new KMeans();
 
-        for (int i = 0; i < testDocuments.length; i++)
+        return null;
+    }
+
+    /**
+     * Sets size of the HNSW candidate list of a loaded model, models without an HNSW index are left as they are
+     * @param efSearch size of the candidate list
+     */
+    public void setEfSearch(int efSearch)
+    {
+        if (classifier instanceof KNearestNeighbours && ((KNearestNeighbours) classifier).getIndex() instanceof HnswIndex)
+            ((HnswIndex) ((KNearestNeighbours) classifier).getIndex()).setEfSearch(efSearch);
+        else
+            Logger.info("The model has no HNSW index, efSearch is ignored");
+    }
+
+    /**
+     * Sets number of IVF-PQ lists visited by a query of a loaded model, models without an IVF-PQ index are left as they are
+     * @param nprobe number of lists
+     */
+    public void setNprobe(int nprobe)
+    {
+        if (classifier instanceof KNearestNeighbours && ((KNearestNeighbours) classifier).getIndex() instanceof IvfPqIndex)
+            ((IvfPqIndex) ((KNearestNeighbours) classifier).getIndex()).setNprobe(nprobe);
+        else
+            Logger.info("The model has no IVF-PQ index, nprobe is ignored");
+    }
+
+    /**
+     * Reads a parametrizer written by IParametrizer.write, an unknown identifier exits the program
+     * @param reader reader positioned at the parametrizer identifier
+     * @return parametrizer
+     */
+    public static IParametrizer readParametrizer(ModelReader reader)
+    {
+        String identifier = reader.readString();
+        IParametrizer parametrizer = parametrizerForIdentifier(identifier);
+        if (parametrizer == null)
         {
-            vectors[i] = parametrizer.parametrize(testDocuments[i]);
-            results[i] = classifier.classify(parametrizer.parametrize(testDocuments[i]));
+            Logger.error("Unknown parametrizer " + identifier + " in the model, program will exit.");
+            System.exit(0);
         }
+        parametrizer.read(reader);
+
+        return parametrizer;
+    }
+
+    /**
+     * Creates an empty parametrizer for an identifier
+     * @param identifier parametrizer identifier
+     * @return parametrizer or null if the identifier is unknown
+     */
+    public static IParametrizer parametrizerForIdentifier(String identifier)
+    {
+        if (identifier.equals(NGrams.identifier))
+            return new NGrams();
+        else if (identifier.equals(FeatureHashing.identifier))
+            return new FeatureHashing();
+        else if (identifier.equals(LDA.identifier))
+            return new LDA();
+        else if (identifier.equals(LSA.identifier))
+            return new LSA();
+
+        return null;
+    }
+
+    /**
+     * Tests the model and reports accuracy
+     */
+    public void test()
+    {
+        Document[] testDocuments = LibraryMethods.loadDocuments(Settings.testingSetPath);
+        String[] results = classifyAll(Arrays.stream(testDocuments)).toArray(new String[0]);
 
         int rightCount = 0;
 
@@ -220,8 +794,45 @@ public class Model
      */
     public void train()
     {
+        // The corpus is loaded once and shared by the parametrizer and the classifier
+        TrainingSet trainingSet = TrainingSet.load();
+
         // Makes parametrizer ready to parametrize
-        parametrizer.initialize();
-        classifier.train(parametrizer);
+        Logger.info("Initializing parametrizer");
+        parametrizer.initialize(trainingSet.documents);
+        Logger.info("Parametrizing documents");
+        trainingSet.parametrize(parametrizer);
+        Logger.info("Training classifier");
+        classifier.train(trainingSet);
+    }
+
+    /**
+     * Folds documents from Settings.updateSetPath into the trained model
+     */
+    public void update()
+    {
+        Logger.info("Loading documents");
+        update(Arrays.stream(LibraryMethods.loadDocuments(Settings.updateSetPath)));
+    }
+
+    /**
+     * Folds new labelled documents into the trained model without training from scratch
+     * The parametrizer keeps its vocabulary, words missing from it are ignored, and so are classes missing from the model
+     * @param documents new documents
+     */
+    public void update(Stream<Document> documents)
+    {
+        if (!(classifier instanceof IUpdatableClassifier))
+        {
+            Logger.error("Classifier does not support updates, program will exit.");
+            System.exit(1);
+        }
+        IUpdatableClassifier updatable = (IUpdatableClassifier) classifier;
+
+        TrainingSet trainingSet = new TrainingSet(updatable.getClasses(), documents.toArray(Document[]::new));
+        Logger.info("Parametrizing documents");
+        trainingSet.parametrize(parametrizer);
+        Logger.info("Updating classifier with " + trainingSet.documents.length + " documents");
+        updatable.update(trainingSet);
     }
 }
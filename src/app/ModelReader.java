@@ -0,0 +1,210 @@
+package app;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads binary model files written by ModelWriter
+ * The file is memory-mapped, arrays are copied out of the mapping in bulk, each straight into its final array
+ * Lengths are checked against the bytes left, a corrupt length throws BufferUnderflowException
+ */
+public class ModelReader
+{
+    /** Mapped file */
+    private final ByteBuffer buffer;
+
+    public ModelReader(ByteBuffer buffer)
+    {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Maps a model file into memory
+     * @param path path to the file
+     * @return reader positioned at the start of the file
+     * @throws IOException if the file cannot be mapped
+     */
+    public static ModelReader map(Path path) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Model file is larger than 2 GB");
+
+            // The mapping stays valid after the channel is closed
+            return new ModelReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Returns number of bytes left to read
+     * @return bytes left
+     */
+    public int remaining()
+    {
+        return buffer.remaining();
+    }
+
+    public int readInt()
+    {
+        return buffer.getInt();
+    }
+
+    public long readLong()
+    {
+        return buffer.getLong();
+    }
+
+    public double readDouble()
+    {
+        return buffer.getDouble();
+    }
+
+    public boolean readBoolean()
+    {
+        return buffer.get() != 0;
+    }
+
+    public String readString()
+    {
+        byte[] bytes = new byte[readLength(Byte.BYTES)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public String[] readStrings()
+    {
+        // Each string takes at least its length prefix
+        String[] values = new String[readLength(Integer.BYTES)];
+        for (int i = 0; i < values.length; i++)
+            values[i] = readString();
+
+        return values;
+    }
+
+    public byte[] readBytes()
+    {
+        byte[] values = new byte[readLength(Byte.BYTES)];
+        buffer.get(values);
+
+        return values;
+    }
+
+    public char[] readChars()
+    {
+        char[] values = new char[readLength(Character.BYTES)];
+        buffer.asCharBuffer().get(values);
+        buffer.position(buffer.position() + values.length * Character.BYTES);
+
+        return values;
+    }
+
+    public int[] readInts()
+    {
+        int[] values = new int[readLength(Integer.BYTES)];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + values.length * Integer.BYTES);
+
+        return values;
+    }
+
+    public float[] readFloats()
+    {
+        float[] values = new float[readLength(Float.BYTES)];
+        buffer.asFloatBuffer().get(values);
+        buffer.position(buffer.position() + values.length * Float.BYTES);
+
+        return values;
+    }
+
+    public double[] readDoubles()
+    {
+        double[] values = new double[readLength(Double.BYTES)];
+        buffer.asDoubleBuffer().get(values);
+        buffer.position(buffer.position() + values.length * Double.BYTES);
+
+        return values;
+    }
+
+    /**
+     * Reads an int array written by ModelWriter.writeInts split into consecutive slices
+     * Each slice is copied into its own array without copying the whole array first
+     * @param offsets slice i occupies [offsets[i], offsets[i + 1]), the last offset is the array length
+     * @return slices
+     */
+    public int[][] readIntSlices(int[] offsets)
+    {
+        int length = readLength(Integer.BYTES);
+        checkOffsets(offsets, length);
+
+        IntBuffer view = buffer.asIntBuffer();
+        int[][] slices = new int[offsets.length - 1][];
+        for (int i = 0; i < slices.length; i++)
+        {
+            slices[i] = new int[offsets[i + 1] - offsets[i]];
+            view.get(slices[i]);
+        }
+        buffer.position(buffer.position() + length * Integer.BYTES);
+
+        return slices;
+    }
+
+    /**
+     * Reads a double array written by ModelWriter.writeDoubles split into consecutive slices
+     * Each slice is copied into its own array without copying the whole array first
+     * @param offsets slice i occupies [offsets[i], offsets[i + 1]), the last offset is the array length
+     * @return slices
+     */
+    public double[][] readDoubleSlices(int[] offsets)
+    {
+        int length = readLength(Double.BYTES);
+        checkOffsets(offsets, length);
+
+        DoubleBuffer view = buffer.asDoubleBuffer();
+        double[][] slices = new double[offsets.length - 1][];
+        for (int i = 0; i < slices.length; i++)
+        {
+            slices[i] = new double[offsets[i + 1] - offsets[i]];
+            view.get(slices[i]);
+        }
+        buffer.position(buffer.position() + length * Double.BYTES);
+
+        return slices;
+    }
+
+    /**
+     * Reads a length prefix and checks that its elements fit in the bytes left
+     * @param elementBytes bytes taken by one element at least
+     * @return length
+     */
+    private int readLength(int elementBytes)
+    {
+        int length = buffer.getInt();
+        if (length < 0 || (long) length * elementBytes > buffer.remaining())
+            throw new BufferUnderflowException();
+
+        return length;
+    }
+
+    /**
+     * Checks that offsets start at 0, do not decrease and end at the array length
+     * @param offsets offsets of slices
+     * @param length array length
+     */
+    private static void checkOffsets(int[] offsets, int length)
+    {
+        if (offsets.length == 0 || offsets[0] != 0 || offsets[offsets.length - 1] != length)
+            throw new BufferUnderflowException();
+        for (int i = 1; i < offsets.length; i++)
+            if (offsets[i] < offsets[i - 1])
+                throw new BufferUnderflowException();
+    }
+}
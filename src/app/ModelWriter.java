@@ -0,0 +1,183 @@
+package app;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes binary model files
+ * Values are little-endian, arrays and Strings are prefixed with their length
+ * Counterpart of ModelReader
+ */
+public class ModelWriter implements Closeable
+{
+    /** Size of the write buffer */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** File being written */
+    private final FileChannel channel;
+
+    /** Write buffer */
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    public ModelWriter(Path path) throws IOException
+    {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    public void writeInt(int value) throws IOException
+    {
+        ensure(Integer.BYTES);
+        buffer.putInt(value);
+    }
+
+    public void writeLong(long value) throws IOException
+    {
+        ensure(Long.BYTES);
+        buffer.putLong(value);
+    }
+
+    public void writeDouble(double value) throws IOException
+    {
+        ensure(Double.BYTES);
+        buffer.putDouble(value);
+    }
+
+    public void writeBoolean(boolean value) throws IOException
+    {
+        ensure(1);
+        buffer.put((byte) (value ? 1 : 0));
+    }
+
+    /**
+     * Writes String as UTF-8 bytes
+     * @param value String
+     * @throws IOException on write error
+     */
+    public void writeString(String value) throws IOException
+    {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeInt(bytes.length);
+
+        int offset = 0;
+        while (offset < bytes.length)
+        {
+            ensure(1);
+            int count = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, count);
+            offset += count;
+        }
+    }
+
+    public void writeStrings(String[] values) throws IOException
+    {
+        writeInt(values.length);
+        for (String value : values)
+            writeString(value);
+    }
+
+    public void writeBytes(byte[] values) throws IOException
+    {
+        writeInt(values.length);
+
+        int offset = 0;
+        while (offset < values.length)
+        {
+            ensure(1);
+            int count = Math.min(buffer.remaining(), values.length - offset);
+            buffer.put(values, offset, count);
+            offset += count;
+        }
+    }
+
+    public void writeChars(char[] values) throws IOException
+    {
+        writeInt(values.length);
+
+        int offset = 0;
+        while (offset < values.length)
+        {
+            ensure(Character.BYTES);
+            int count = Math.min(buffer.remaining() / Character.BYTES, values.length - offset);
+            buffer.asCharBuffer().put(values, offset, count);
+            buffer.position(buffer.position() + count * Character.BYTES);
+            offset += count;
+        }
+    }
+
+    public void writeInts(int[] values) throws IOException
+    {
+        writeInt(values.length);
+
+        int offset = 0;
+        while (offset < values.length)
+        {
+            ensure(Integer.BYTES);
+            int count = Math.min(buffer.remaining() / Integer.BYTES, values.length - offset);
+            buffer.asIntBuffer().put(values, offset, count);
+            buffer.position(buffer.position() + count * Integer.BYTES);
+            offset += count;
+        }
+    }
+
+    public void writeFloats(float[] values) throws IOException
+    {
+        writeInt(values.length);
+
+        int offset = 0;
+        while (offset < values.length)
+        {
+            ensure(Float.BYTES);
+            int count = Math.min(buffer.remaining() / Float.BYTES, values.length - offset);
+            buffer.asFloatBuffer().put(values, offset, count);
+            buffer.position(buffer.position() + count * Float.BYTES);
+            offset += count;
+        }
+    }
+
+    public void writeDoubles(double[] values) throws IOException
+    {
+        writeInt(values.length);
+
+        int offset = 0;
+        while (offset < values.length)
+        {
+            ensure(Double.BYTES);
+            int count = Math.min(buffer.remaining() / Double.BYTES, values.length - offset);
+            buffer.asDoubleBuffer().put(values, offset, count);
+            buffer.position(buffer.position() + count * Double.BYTES);
+            offset += count;
+        }
+    }
+
+    /**
+     * Flushes the buffer if it has less than given space left
+     * @param bytes space needed
+     * @throws IOException on write error
+     */
+    private void ensure(int bytes) throws IOException
+    {
+        if (buffer.remaining() < bytes)
+            flush();
+    }
+
+    private void flush() throws IOException
+    {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        flush();
+        channel.close();
+    }
+}
@@ -17,12 +17,39 @@ public class Settings
     /** Points to testing set file or directory */
     public static String testingSetPath;
 
-    /** CL argument defining the parametrizer */
+    /** Points to directory of documents folded into a loaded model */
+    public static String updateSetPath;
+
+    /** CL argument defining the parametrizer, comma-separated arguments for cross-validation */
     public static String parametrizerArgument;
 
-    /** CL argument defining the classifier */
+    /** CL argument defining the classifier, comma-separated arguments for cross-validation */
     public static String classifierArgument;
 
-    /** Application mode - CREATE or RUN */
+    /** Memory for estimating gram counts when building the vocabulary in bytes, 0 counts all grams exactly */
+    public static long vocabularyMemoryCap;
+
+    /** K of the K-NN classifiers, cross-validation tries each, a created model takes the first */
+    public static int[] neighbourCounts = {5};
+
+    /** Minimum counts of a gram in the training set, 0 for 5 for unigrams and 2 for longer grams, used like neighbourCounts */
+    public static int[] minOccurrenceCounts = {0};
+
+    /** Number of cross-validation folds */
+    public static int folds;
+
+    /** Threads running cross-validation, 0 for the common pool */
+    public static int threads;
+
+    /** Size of the HNSW candidate list of a loaded model, 0 keeps the size saved with the model */
+    public static int efSearch;
+
+    /** Number of IVF-PQ lists visited by a query of a loaded model, 0 keeps the number saved with the model */
+    public static int nprobe;
+
+    /** Save the model in text format instead of binary */
+    public static boolean textModel;
+
+    /** Application mode - CREATE, LOAD, UPDATE or CROSS_VALIDATE */
     public static Mode mode;
 }
@@ -0,0 +1,173 @@
+package app;
+
+import java.util.Arrays;
+
+/**
+ * Sparse vector
+ * Only non-zero components are stored - their indexes (sorted ascending) and values
+ */
+public class SparseVector
+{
+    /** Indexes of non-zero components, sorted ascending */
+    public int[] indexes;
+
+    /** Values of non-zero components */
+    public double[] values;
+
+    /** Dimension of the vector */
+    public int dimension;
+
+    public SparseVector(int[] indexes, double[] values, int dimension)
+    {
+        this.indexes = indexes;
+        this.values = values;
+        this.dimension = dimension;
+    }
+
+    /**
+     * Creates vector from unsorted components
+     * @param indexes indexes of components, must not repeat
+     * @param values values of components
+     * @param count number of components to take from the arrays
+     * @param dimension dimension of the vector
+     * @return vector
+     */
+    public static SparseVector fromUnsorted(int[] indexes, double[] values, int count, int dimension)
+    {
+        // Pack index and position into one long, so that sorting keeps the pairs together
+        long[] packed = new long[count];
+        for (int i = 0; i < count; i++)
+            packed[i] = ((long) indexes[i] << 32) | i;
+
+        Arrays.sort(packed);
+
+        int[] sortedIndexes = new int[count];
+        double[] sortedValues = new double[count];
+        for (int i = 0; i < count; i++)
+        {
+            sortedIndexes[i] = (int) (packed[i] >>> 32);
+            sortedValues[i] = values[(int) packed[i]];
+        }
+
+        return new SparseVector(sortedIndexes, sortedValues, dimension);
+    }
+
+    /**
+     * Creates sparse vector from a dense one
+     * @param dense dense vector
+     * @return sparse vector
+     */
+    public static SparseVector fromDense(double[] dense)
+    {
+        int count = 0;
+        for (double v : dense)
+            if (v != 0)
+                count++;
+
+        int[] indexes = new int[count];
+        double[] values = new double[count];
+        int j = 0;
+        for (int i = 0; i < dense.length; i++)
+        {
+            if (dense[i] != 0)
+            {
+                indexes[j] = i;
+                values[j] = dense[i];
+                j++;
+            }
+        }
+
+        return new SparseVector(indexes, values, dense.length);
+    }
+
+    /**
+     * Returns number of non-zero components
+     * @return number of non-zero components
+     */
+    public int nonZeroCount()
+    {
+        return indexes.length;
+    }
+
+    /**
+     * Returns value of a component
+     * @param index index of the component
+     * @return value
+     */
+    public double get(int index)
+    {
+        int i = Arrays.binarySearch(indexes, index);
+        return i >= 0 ? values[i] : 0;
+    }
+
+    /**
+     * Dot product with another sparse vector
+     * @param other other vector
+     * @return dot product
+     */
+    public double dot(SparseVector other)
+    {
+        double sum = 0;
+        int i = 0, j = 0;
+        while (i < indexes.length && j < other.indexes.length)
+        {
+            if (indexes[i] == other.indexes[j])
+                sum += values[i++] * other.values[j++];
+            else if (indexes[i] < other.indexes[j])
+                i++;
+            else
+                j++;
+        }
+
+        return sum;
+    }
+
+    /**
+     * Dot product with a dense vector
+     * @param dense dense vector
+     * @return dot product
+     */
+    public double dot(double[] dense)
+    {
+        double sum = 0;
+        for (int i = 0; i < indexes.length; i++)
+            sum += values[i] * dense[indexes[i]];
+
+        return sum;
+    }
+
+    /**
+     * Returns squared euclidean norm
+     * @return squared norm
+     */
+    public double squaredNorm()
+    {
+        double sum = 0;
+        for (double v : values)
+            sum += v * v;
+
+        return sum;
+    }
+
+    /**
+     * Returns euclidean norm
+     * @return norm
+     */
+    public double norm()
+    {
+        return Math.sqrt(squaredNorm());
+    }
+
+    /**
+     * Converts the vector into a dense array
+     * @return dense vector
+     */
+    public double[] toDense()
+    {
+        double[] dense = new double[dimension];
+        for (int i = 0; i < indexes.length; i++)
+            dense[indexes[i]] = values[i];
+
+        return dense;
+    }
+}
@@ -0,0 +1,176 @@
+package app;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Splits text into lowercase words without the regex engine
+ * Words are maximal runs of letters (\p{L}) and ASCII digits, exactly as split by "[^\\p{L}0-9]+" and lowercased by String.toLowerCase
+ * Words are lowercased into a reused buffer and passed to a TokenConsumer, no Strings are created unless the caller asks for them
+ * A Tokenizer is not thread-safe, split keeps one per thread
+ */
+public class Tokenizer
+{
+    /** Receives words of a text */
+    public interface TokenConsumer
+    {
+        /**
+         * Accepts a lowercase word
+         * The buffer is reused for the next word, so its content is valid only during the call
+         * @param buffer word characters, starting at index 0
+         * @param length number of characters
+         */
+        void accept(char[] buffer, int length);
+    }
+
+    /** Tokenizers used by split, one per thread */
+    private static final ThreadLocal<Tokenizer> TOKENIZERS = ThreadLocal.withInitial(Tokenizer::new);
+
+    /** Lowercase characters of the current word */
+    private char[] buffer = new char[64];
+
+    /** Words collected by split */
+    private String[] words = new String[16];
+
+    /** Number of words collected by split */
+    private int wordCount;
+
+    /** Collects words for split */
+    private final TokenConsumer collector = (buffer, length) ->
+    {
+        if (wordCount == words.length)
+            words = Arrays.copyOf(words, wordCount * 2);
+        words[wordCount++] = new String(buffer, 0, length);
+    };
+
+    /**
+     * Splits text into lowercase words the same way as text.split("[^\\p{L}0-9]+") followed by toLowerCase of each word
+     * Hence the leading empty word if the text starts with a separator, and a single empty word for empty text
+     * @param text text
+     * @return lowercase words
+     */
+    public static String[] split(CharSequence text)
+    {
+        if (text.length() == 0)
+            return new String[] {""};
+
+        Tokenizer tokenizer = TOKENIZERS.get();
+        tokenizer.wordCount = 0;
+
+        // String.split keeps the empty word before a leading separator, unless no word follows
+        boolean leadingSeparator = !isWordCodePoint(Character.codePointAt(text, 0));
+        if (leadingSeparator)
+            tokenizer.words[tokenizer.wordCount++] = "";
+
+        tokenizer.tokenize(text, tokenizer.collector);
+
+        String[] result;
+        if (leadingSeparator && tokenizer.wordCount == 1)
+            result = new String[0];
+        else
+            result = Arrays.copyOf(tokenizer.words, tokenizer.wordCount);
+
+        // Do not keep the words alive
+        Arrays.fill(tokenizer.words, 0, tokenizer.wordCount, null);
+
+        return result;
+    }
+
+    /**
+     * Passes lowercase words of a text to a consumer, empty words are not passed
+     * @param text text
+     * @param consumer receives the words in order
+     */
+    public void tokenize(CharSequence text, TokenConsumer consumer)
+    {
+        // Turkic and Lithuanian lowercasing depends on context, such words are lowercased by String.toLowerCase
+        String language = Locale.getDefault().getLanguage();
+        boolean localeSpecific = language.equals("tr") || language.equals("az") || language.equals("lt");
+
+        int length = text.length();
+        int i = 0;
+        while (i < length)
+        {
+            int start = i;
+            int wordLength = 0;
+            boolean contextSpecific = localeSpecific;
+
+            while (i < length)
+            {
+                char c = text.charAt(i);
+
+                // ASCII shortcut
+                if (c < 0x80)
+                {
+                    if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9'))
+                        append(wordLength++, c);
+                    else if (c >= 'A' && c <= 'Z')
+                        append(wordLength++, (char) (c + ('a' - 'A')));
+                    else
+                        break;
+
+                    i++;
+                    continue;
+                }
+
+                int codePoint = Character.codePointAt(text, i);
+                if (!Character.isLetter(codePoint))
+                    break;
+
+                // Capital sigma lowercases by its position in the word, dotted capital I into two characters
+                if (codePoint == '\u03A3' || codePoint == '\u0130')
+                    contextSpecific = true;
+
+                int lower = Character.toLowerCase(codePoint);
+                if (Character.isBmpCodePoint(lower))
+                    append(wordLength++, (char) lower);
+                else
+                {
+                    append(wordLength++, Character.highSurrogate(lower));
+                    append(wordLength++, Character.lowSurrogate(lower));
+                }
+                i += Character.charCount(codePoint);
+            }
+
+            if (wordLength > 0)
+            {
+                if (contextSpecific)
+                {
+                    String lower = text.subSequence(start, i).toString().toLowerCase();
+                    wordLength = lower.length();
+                    ensure(wordLength);
+                    lower.getChars(0, wordLength, buffer, 0);
+                }
+
+                consumer.accept(buffer, wordLength);
+            }
+            else
+            {
+                // Skip the separator
+                i += Character.charCount(Character.codePointAt(text, i));
+            }
+        }
+    }
+
+    /**
+     * Tells whether a code point belongs to words
+     * @param codePoint code point
+     * @return true for letters and ASCII digits
+     */
+    public static boolean isWordCodePoint(int codePoint)
+    {
+        return (codePoint >= '0' && codePoint <= '9') || Character.isLetter(codePoint);
+    }
+
+    private void append(int index, char c)
+    {
+        ensure(index + 1);
+        buffer[index] = c;
+    }
+
+    private void ensure(int length)
+    {
+        if (buffer.length < length)
+            buffer = Arrays.copyOf(buffer, Math.max(length, buffer.length * 2));
+    }
+}
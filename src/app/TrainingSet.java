@@ -0,0 +1,78 @@
+package app;
+
+import app.parametrize.IParametrizer;
+import app.parametrize.dimensions.Projection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Training documents shared by the parametrizer and the classifier
+ * The corpus is read and tokenized once and every document is parametrized once
+ */
+public class TrainingSet
+{
+    /** Classification classes, sorted */
+    public String[] classes;
+
+    /** Training documents */
+    public Document[] documents;
+
+    /** Class indexes of each document in the order they are listed, classes missing from classes are left out */
+    public int[][] documentClasses;
+
+    /** Parametrized documents, null until parametrize is called */
+    public SparseVector[] vectors;
+
+    /** Length of the vectors */
+    public int vectorLength;
+
+    public TrainingSet(String[] classes, Document[] documents)
+    {
+        this.classes = classes;
+        this.documents = documents;
+
+        documentClasses = new int[documents.length][];
+        for (int i = 0; i < documents.length; i++)
+        {
+            List<Integer> validDocumentClasses = new ArrayList<>();
+
+            for (String clss : documents[i].classes)
+            {
+                int index = Arrays.binarySearch(classes, clss);
+                if (index >= 0)
+                    validDocumentClasses.add(index);
+            }
+
+            documentClasses[i] = new int[validDocumentClasses.size()];
+            for (int j = 0; j < validDocumentClasses.size(); j++)
+                documentClasses[i][j] = validDocumentClasses.get(j);
+        }
+    }
+
+    /**
+     * Loads classes and training documents according to Settings
+     * @return training set
+     */
+    public static TrainingSet load()
+    {
+        Logger.info("Loading classes");
+        String[] classes = LibraryMethods.loadClassesSorted();
+        Logger.info("Loading documents");
+        Document[] documents = LibraryMethods.loadDocuments(Settings.trainingSetPath);
+
+        return new TrainingSet(classes, documents);
+    }
+
+    /**
+     * Parametrizes all documents with an initialized parametrizer
+     * Documents are parametrized in parallel, a projection initialized on them projects its kept inner vectors
+     * @param parametrizer parametrizer
+     */
+    public void parametrize(IParametrizer parametrizer)
+    {
+        vectorLength = parametrizer.getVectorLength();
+        vectors = Projection.parametrizeAll(parametrizer, documents);
+    }
+}
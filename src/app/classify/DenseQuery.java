@@ -0,0 +1,96 @@
+package app.classify;
+
+import app.SparseVector;
+
+/**
+ * Dense copies of query vectors, one buffer per thread
+ * A sparse training vector's dot product with the query then costs one pass over the training vector
+ */
+class DenseQuery
+{
+    /** Buffer of the current thread, zero outside scatter/clear */
+    private final ThreadLocal<double[]> buffer = ThreadLocal.withInitial(() -> new double[0]);
+
+    /** Single precision buffer of the current thread, zero outside scatterFloat/clear */
+    private final ThreadLocal<float[]> floatBuffer = ThreadLocal.withInitial(() -> new float[0]);
+
+    /**
+     * Copies the query into the thread's buffer
+     * Must be followed by clear with the same query
+     * @param query query
+     * @param dimension dimension of the vectors
+     * @return dense query
+     */
+    double[] scatter(SparseVector query, int dimension)
+    {
+        double[] dense = buffer.get();
+        if (dense.length < dimension)
+        {
+            dense = new double[dimension];
+            buffer.set(dense);
+        }
+
+        for (int i = 0; i < query.indexes.length; i++)
+            dense[query.indexes[i]] = query.values[i];
+
+        return dense;
+    }
+
+    /**
+     * Zeroes the query's components, leaving the buffer ready for the next query
+     * @param query query passed to scatter
+     * @param dense buffer returned by scatter
+     */
+    void clear(SparseVector query, double[] dense)
+    {
+        for (int i = 0; i < query.indexes.length; i++)
+            dense[query.indexes[i]] = 0;
+    }
+
+    /**
+     * Copies the query into the thread's single precision buffer
+     * Must be followed by clear with the same query
+     * @param query query
+     * @param dimension dimension of the vectors
+     * @return dense query
+     */
+    float[] scatterFloat(SparseVector query, int dimension)
+    {
+        float[] dense = floatBuffer.get();
+        if (dense.length < dimension)
+        {
+            dense = new float[dimension];
+            floatBuffer.set(dense);
+        }
+
+        for (int i = 0; i < query.indexes.length; i++)
+            dense[query.indexes[i]] = (float) query.values[i];
+
+        return dense;
+    }
+
+    /**
+     * Zeroes the query's components, leaving the buffer ready for the next query
+     * @param query query passed to scatterFloat
+     * @param dense buffer returned by scatterFloat
+     */
+    void clear(SparseVector query, float[] dense)
+    {
+        for (int i = 0; i < query.indexes.length; i++)
+            dense[query.indexes[i]] = 0;
+    }
+
+    /**
+     * Calculates norms of vectors
+     * @param vectors vectors
+     * @return norms
+     */
+    static double[] norms(SparseVector[] vectors)
+    {
+        double[] norms = new double[vectors.length];
+        for (int i = 0; i < vectors.length; i++)
+            norms[i] = vectors[i].norm();
+
+        return norms;
+    }
+}
@@ -0,0 +1,135 @@
+package app.classify;
+
+import app.ModelReader;
+import app.ModelWriter;
+import app.SparseVector;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Exact search - compares the query with every training vector
+ * Training vectors are copied into single precision flat arrays, the query is scattered into a dense array
+ */
+public class ExactIndex implements INeighbourIndex
+{
+    /** Training vectors in single precision */
+    private FloatVectors vectors;
+
+    /** Dimension of the vectors */
+    private int dimension;
+
+    /** Measure of closeness */
+    private Metric metric;
+
+    /** Dense query buffers */
+    private final DenseQuery denseQuery = new DenseQuery();
+
+    public static String identifier = "exact";
+
+    public ExactIndex()
+    {
+        this(Metric.COSINE);
+    }
+
+    public ExactIndex(Metric metric)
+    {
+        this.metric = metric;
+    }
+
+    public Metric getMetric()
+    {
+        return metric;
+    }
+
+    @Override
+    public void build(SparseVector[] vectors, int dimension)
+    {
+        this.vectors = new FloatVectors(vectors);
+        this.dimension = dimension;
+    }
+
+    @Override
+    public void search(SparseVector query, TopK nearest)
+    {
+        nearest.reset(nearest.capacity());
+        double queryNorm = query.norm();
+        if (queryNorm == 0 && metric == Metric.COSINE)
+            return;
+
+        float[] dense = denseQuery.scatterFloat(query, dimension);
+
+        // One loop per metric, the metric is not checked for every vector
+        switch (metric)
+        {
+            case COSINE:
+                for (int i = 0; i < vectors.size(); i++)
+                {
+                    if (vectors.norms[i] == 0)
+                        continue;
+
+                    nearest.offer(i, vectors.dot(i, dense) / (queryNorm * vectors.norms[i]));
+                }
+                break;
+
+            case EUCLIDEAN:
+                double squaredQueryNorm = queryNorm * queryNorm;
+                for (int i = 0; i < vectors.size(); i++)
+                {
+                    // |a - b|^2 = |a|^2 - 2ab + |b|^2
+                    double sum = squaredQueryNorm - 2 * vectors.dot(i, dense) + vectors.norms[i] * vectors.norms[i];
+                    nearest.offer(i, -Math.sqrt(Math.max(sum, 0)));
+                }
+                break;
+
+            case MANHATTAN:
+                double queryAbsoluteSum = 0;
+                for (double value : query.values)
+                    queryAbsoluteSum += Math.abs((float) value);
+                for (int i = 0; i < vectors.size(); i++)
+                    nearest.offer(i, -vectors.manhattan(i, dense, queryAbsoluteSum));
+                break;
+        }
+
+        denseQuery.clear(query, dense);
+    }
+
+    @Override
+    public List<String> export()
+    {
+        List<String> lines = new ArrayList<>();
+        lines.add("**_index:" + identifier);
+        lines.add("**_metric:" + metric.identifier);
+        return lines;
+    }
+
+    /**
+     * Loads the index exported by export
+     * Models without the metric line use cosine similarity
+     * @param lines lines of the index without the identifier line
+     * @param vectors training vectors the index was built over
+     * @param dimension dimension of the vectors
+     */
+    @Override
+    public void load(List<String> lines, SparseVector[] vectors, int dimension)
+    {
+        metric = !lines.isEmpty() && lines.get(0).startsWith("**_metric:")
+                ? Metric.forIdentifier(lines.get(0).split(":")[1]) : Metric.COSINE;
+        build(vectors, dimension);
+    }
+
+    @Override
+    public void write(ModelWriter writer) throws IOException
+    {
+        writer.writeString(identifier);
+        writer.writeString(metric.identifier);
+    }
+
+    @Override
+    public void read(ModelReader reader, SparseVector[] vectors, int dimension)
+    {
+        metric = Metric.forIdentifier(reader.readString());
+        build(vectors, dimension);
+    }
+}
@@ -0,0 +1,102 @@
+package app.classify;
+
+import app.SparseVector;
+
+/**
+ * Sparse vectors stored in single precision in three flat arrays
+ * Vector i occupies [offsets[i], offsets[i + 1]) of indexes and values, so scanning all vectors reads memory in order
+ * and moves two thirds of the bytes of SparseVectors - the scan is bound by memory, not by arithmetic
+ */
+class FloatVectors
+{
+    /** Start of each vector, offsets[size] is the total number of components */
+    private final int[] offsets;
+
+    /** Indexes of the components */
+    private final int[] indexes;
+
+    /** Values of the components */
+    private final float[] values;
+
+    /** Euclidean norm of each vector */
+    final double[] norms;
+
+    /** Sum of absolute values of each vector */
+    final double[] absoluteSums;
+
+    /**
+     * @param vectors vectors to copy
+     */
+    FloatVectors(SparseVector[] vectors)
+    {
+        offsets = new int[vectors.length + 1];
+        for (int i = 0; i < vectors.length; i++)
+            offsets[i + 1] = offsets[i] + vectors[i].indexes.length;
+
+        indexes = new int[offsets[vectors.length]];
+        values = new float[offsets[vectors.length]];
+        norms = new double[vectors.length];
+        absoluteSums = new double[vectors.length];
+
+        for (int i = 0; i < vectors.length; i++)
+        {
+            System.arraycopy(vectors[i].indexes, 0, indexes, offsets[i], vectors[i].indexes.length);
+
+            double squares = 0, absolutes = 0;
+            for (int j = 0; j < vectors[i].values.length; j++)
+            {
+                float value = (float) vectors[i].values[j];
+                values[offsets[i] + j] = value;
+                squares += (double) value * value;
+                absolutes += Math.abs(value);
+            }
+            norms[i] = Math.sqrt(squares);
+            absoluteSums[i] = absolutes;
+        }
+    }
+
+    /**
+     * Returns number of vectors
+     * @return number of vectors
+     */
+    int size()
+    {
+        return norms.length;
+    }
+
+    /**
+     * Dot product of a vector with a dense query
+     * @param vector vector
+     * @param dense dense query
+     * @return dot product
+     */
+    float dot(int vector, float[] dense)
+    {
+        float sum = 0;
+        for (int i = offsets[vector]; i < offsets[vector + 1]; i++)
+            sum += values[i] * dense[indexes[i]];
+
+        return sum;
+    }
+
+    /**
+     * Sum of absolute differences between a vector and a dense query
+     * Components missing in the vector contribute the query's absolute values, so the query's absolute sum
+     * is corrected only at the vector's components
+     * @param vector vector
+     * @param dense dense query
+     * @param queryAbsoluteSum sum of absolute values of the query
+     * @return sum of absolute differences
+     */
+    double manhattan(int vector, float[] dense, double queryAbsoluteSum)
+    {
+        float sum = 0;
+        for (int i = offsets[vector]; i < offsets[vector + 1]; i++)
+        {
+            float q = dense[indexes[i]];
+            sum += Math.abs(values[i] - q) - Math.abs(q);
+        }
+
+        return Math.max(queryAbsoluteSum + sum, 0);
+    }
+}
@@ -0,0 +1,616 @@
+package app.classify;
+
+import app.ModelReader;
+import app.ModelWriter;
+import app.SparseVector;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Approximate search over a hierarchical navigable small world graph (HNSW)
+ * Every vector is a node linked to similar nodes in different directions on each of its levels,
+ * a search descends greedily through the upper levels and explores the bottom level
+ * with a candidate list of efSearch nodes - larger efSearch means better recall and higher latency
+ */
+public class HnswIndex implements INeighbourIndex
+{
+    /** Default maximum neighbours of a node on upper levels */
+    public static final int DEFAULT_M = 16;
+
+    /** Default size of the candidate list while building */
+    public static final int DEFAULT_EF_CONSTRUCTION = 100;
+
+    /** Default size of the candidate list while searching */
+    public static final int DEFAULT_EF_SEARCH = 64;
+
+    /** Seed of the level generator, the graph is the same for the same training vectors */
+    private static final long SEED = 42;
+
+    /** Maximum neighbours of a node on upper levels, twice as many on level 0 */
+    private int m;
+
+    /** Size of the candidate list while building */
+    private int efConstruction;
+
+    /** Size of the candidate list while searching */
+    private int efSearch;
+
+    /** Training vectors */
+    private SparseVector[] vectors;
+
+    /** Euclidean norms of the training vectors */
+    private double[] norms;
+
+    /** Dimension of the vectors */
+    private int dimension;
+
+    /** Neighbours of each node on each of its levels */
+    private int[][][] neighbours;
+
+    /** Similarities of the neighbours, kept only while building */
+    private double[][][] linkSimilarities;
+
+    /** Node searches start from, -1 if the graph is empty */
+    private int entryPoint = -1;
+
+    /** Highest level of the graph */
+    private int maxLevel = -1;
+
+    /** Dense query buffers */
+    private final DenseQuery denseQuery = new DenseQuery();
+
+    /** Search buffers, one per thread */
+    private final ThreadLocal<SearchState> state = ThreadLocal.withInitial(SearchState::new);
+
+    public static String identifier = "hnsw";
+
+    public HnswIndex()
+    {
+        this(DEFAULT_M, DEFAULT_EF_CONSTRUCTION, DEFAULT_EF_SEARCH);
+    }
+
+    /**
+     * @param m maximum neighbours of a node on upper levels, at least 2
+     * @param efConstruction size of the candidate list while building, at least 1
+     * @param efSearch size of the candidate list while searching, at least 1
+     */
+    public HnswIndex(int m, int efConstruction, int efSearch)
+    {
+        if (m < 2 || efConstruction < 1 || efSearch < 1)
+            throw new IllegalArgumentException("Invalid HNSW parameters");
+
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+    }
+
+    /**
+     * Sets size of the candidate list while searching
+     * @param efSearch size of the candidate list
+     */
+    public void setEfSearch(int efSearch)
+    {
+        this.efSearch = efSearch;
+    }
+
+    public int getEfSearch()
+    {
+        return efSearch;
+    }
+
+    @Override
+    public void build(SparseVector[] vectors, int dimension)
+    {
+        this.vectors = vectors;
+        this.dimension = dimension;
+        norms = DenseQuery.norms(vectors);
+        neighbours = new int[vectors.length][][];
+        linkSimilarities = new double[vectors.length][][];
+        entryPoint = -1;
+        maxLevel = -1;
+
+        Random random = new Random(SEED);
+        double levelFactor = 1 / Math.log(m);
+
+        for (int i = 0; i < vectors.length; i++)
+        {
+            // Zero vectors have no similarity to anything, they stay unlinked
+            if (norms[i] == 0)
+            {
+                neighbours[i] = new int[][] { new int[0] };
+                continue;
+            }
+
+            int level = (int) (-Math.log(1 - random.nextDouble()) * levelFactor);
+            insert(i, level);
+        }
+
+        linkSimilarities = null;
+    }
+
+    @Override
+    public void search(SparseVector query, TopK nearest)
+    {
+        int k = nearest.capacity();
+        nearest.reset(k);
+        double queryNorm = query.norm();
+        if (entryPoint < 0 || queryNorm == 0)
+            return;
+
+        double[] dense = denseQuery.scatter(query, dimension);
+
+        int current = entryPoint;
+        for (int level = maxLevel; level > 0; level--)
+            current = searchGreedy(dense, queryNorm, current, level);
+
+        TopK found = searchLevel(dense, queryNorm, current, Math.max(efSearch, k), 0);
+        int count = found.sortDescending();
+        for (int i = 0; i < count; i++)
+            nearest.offer(found.id(i), found.score(i));
+
+        denseQuery.clear(query, dense);
+    }
+
+    /**
+     * Inserts a node into the graph
+     * @param node node
+     * @param level highest level of the node
+     */
+    private void insert(int node, int level)
+    {
+        neighbours[node] = new int[level + 1][];
+        linkSimilarities[node] = new double[level + 1][];
+        for (int l = 0; l <= level; l++)
+        {
+            neighbours[node][l] = new int[0];
+            linkSimilarities[node][l] = new double[0];
+        }
+
+        if (entryPoint < 0)
+        {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        double[] dense = denseQuery.scatter(vectors[node], dimension);
+        double norm = norms[node];
+
+        int current = entryPoint;
+        for (int l = maxLevel; l > level; l--)
+            current = searchGreedy(dense, norm, current, l);
+
+        for (int l = Math.min(level, maxLevel); l >= 0; l--)
+        {
+            TopK found = searchLevel(dense, norm, current, efConstruction, l);
+            int count = found.sortDescending();
+            current = found.id(0);
+
+            int[] candidates = new int[count];
+            double[] candidateSimilarities = new double[count];
+            for (int i = 0; i < count; i++)
+            {
+                candidates[i] = found.id(i);
+                candidateSimilarities[i] = found.score(i);
+            }
+
+            int[] selected = new int[Math.min(count, maxNeighbours(l))];
+            double[] similarities = new double[selected.length];
+            select(candidates, candidateSimilarities, selected, similarities);
+
+            neighbours[node][l] = selected;
+            linkSimilarities[node][l] = similarities;
+            for (int i = 0; i < selected.length; i++)
+                connect(selected[i], node, similarities[i], l);
+        }
+
+        denseQuery.clear(vectors[node], dense);
+
+        if (level > maxLevel)
+        {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    /**
+     * Adds a link from a node, a node with too many links selects them anew
+     * @param node node
+     * @param neighbour new neighbour
+     * @param similarity similarity of the node and the neighbour
+     * @param level level of the link
+     */
+    private void connect(int node, int neighbour, double similarity, int level)
+    {
+        int[] list = neighbours[node][level];
+        double[] similarities = linkSimilarities[node][level];
+
+        if (list.length < maxNeighbours(level))
+        {
+            list = Arrays.copyOf(list, list.length + 1);
+            similarities = Arrays.copyOf(similarities, similarities.length + 1);
+            list[list.length - 1] = neighbour;
+            similarities[similarities.length - 1] = similarity;
+            neighbours[node][level] = list;
+            linkSimilarities[node][level] = similarities;
+            return;
+        }
+
+        // The full list is selected anew from its links and the new neighbour
+        int[] candidates = Arrays.copyOf(list, list.length + 1);
+        double[] candidateSimilarities = Arrays.copyOf(similarities, similarities.length + 1);
+        candidates[list.length] = neighbour;
+        candidateSimilarities[list.length] = similarity;
+        sortDescending(candidates, candidateSimilarities);
+        select(candidates, candidateSimilarities, list, similarities);
+    }
+
+    /**
+     * Selects links of a node from candidates by the heuristic of Malkov and Yashunin
+     * A candidate is taken only if it is more similar to the node than to every candidate taken before, so that
+     * links lead in different directions and clusters stay connected. Slots left are filled with the most
+     * similar candidates skipped
+     * @param candidates candidates sorted from the most similar to the node
+     * @param candidateSimilarities similarities of the candidates to the node
+     * @param selected selected links, as many as fit, filled
+     * @param similarities similarities of the selected links, filled
+     */
+    private void select(int[] candidates, double[] candidateSimilarities, int[] selected, double[] similarities)
+    {
+        boolean[] taken = new boolean[candidates.length];
+        int count = 0;
+        for (int c = 0; c < candidates.length && count < selected.length; c++)
+        {
+            // The candidate is scattered into the single precision buffer, the node may occupy the double one
+            SparseVector candidate = vectors[candidates[c]];
+            float[] dense = denseQuery.scatterFloat(candidate, dimension);
+            double bound = candidateSimilarities[c] * norms[candidates[c]];
+            boolean diverse = true;
+            for (int i = 0; i < count && diverse; i++)
+                diverse = bound > dot(vectors[selected[i]], dense) / norms[selected[i]];
+            denseQuery.clear(candidate, dense);
+
+            if (diverse)
+            {
+                taken[c] = true;
+                selected[count] = candidates[c];
+                similarities[count++] = candidateSimilarities[c];
+            }
+        }
+
+        for (int c = 0; c < candidates.length && count < selected.length; c++)
+        {
+            if (taken[c])
+                continue;
+
+            selected[count] = candidates[c];
+            similarities[count++] = candidateSimilarities[c];
+        }
+    }
+
+    /**
+     * Sorts ids by their scores from the highest, insertion sort for short lists
+     * @param ids ids
+     * @param scores scores
+     */
+    private static void sortDescending(int[] ids, double[] scores)
+    {
+        for (int i = 1; i < ids.length; i++)
+        {
+            int id = ids[i];
+            double score = scores[i];
+            int j = i - 1;
+            while (j >= 0 && scores[j] < score)
+            {
+                ids[j + 1] = ids[j];
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            ids[j + 1] = id;
+            scores[j + 1] = score;
+        }
+    }
+
+    /**
+     * Moves to the most similar neighbour until no neighbour is more similar
+     * @param dense dense query
+     * @param queryNorm norm of the query
+     * @param start starting node
+     * @param level level to search
+     * @return most similar node found
+     */
+    private int searchGreedy(double[] dense, double queryNorm, int start, int level)
+    {
+        int current = start;
+        double best = similarity(dense, queryNorm, current);
+        boolean changed = true;
+
+        while (changed)
+        {
+            changed = false;
+            for (int neighbour : neighbours[current][level])
+            {
+                double s = similarity(dense, queryNorm, neighbour);
+                if (s > best)
+                {
+                    best = s;
+                    current = neighbour;
+                    changed = true;
+                }
+            }
+        }
+
+        return current;
+    }
+
+    /**
+     * Best-first search of one level
+     * @param dense dense query
+     * @param queryNorm norm of the query
+     * @param start starting node
+     * @param ef number of nodes to keep
+     * @param level level to search
+     * @return up to ef most similar nodes found, reused by the next search of the thread
+     */
+    private TopK searchLevel(double[] dense, double queryNorm, int start, int ef, int level)
+    {
+        SearchState s = state.get();
+        s.startVisit(vectors.length);
+
+        TopK results = s.results;
+        results.reset(ef);
+        double startSimilarity = similarity(dense, queryNorm, start);
+        s.visit(start);
+        s.push(start, startSimilarity);
+        results.offer(start, startSimilarity);
+
+        while (s.size > 0)
+        {
+            // Candidates are explored most similar first, stop once the best one cannot improve the results
+            if (s.peekScore() < results.threshold())
+                break;
+
+            int candidate = s.pop();
+            for (int neighbour : neighbours[candidate][level])
+            {
+                if (!s.visit(neighbour))
+                    continue;
+
+                double similarity = similarity(dense, queryNorm, neighbour);
+                if (similarity > results.threshold())
+                {
+                    s.push(neighbour, similarity);
+                    results.offer(neighbour, similarity);
+                }
+            }
+        }
+
+        return results;
+    }
+
+    private double similarity(double[] dense, double queryNorm, int node)
+    {
+        return vectors[node].dot(dense) / (queryNorm * norms[node]);
+    }
+
+    private static double dot(SparseVector vector, float[] dense)
+    {
+        double sum = 0;
+        for (int i = 0; i < vector.indexes.length; i++)
+            sum += vector.values[i] * dense[vector.indexes[i]];
+
+        return sum;
+    }
+
+    private int maxNeighbours(int level)
+    {
+        return level == 0 ? 2 * m : m;
+    }
+
+    @Override
+    public List<String> export()
+    {
+        List<String> lines = new ArrayList<>();
+        lines.add("**_index:" + identifier);
+        lines.add("**_hnsw:" + m + ";" + efConstruction + ";" + efSearch + ";" + entryPoint + ";" + maxLevel);
+
+        // One line per node, levels separated by | and neighbours by ,
+        for (int[][] levels : neighbours)
+        {
+            StringBuilder sb = new StringBuilder();
+            for (int l = 0; l < levels.length; l++)
+            {
+                if (l > 0)
+                    sb.append("|");
+                for (int i = 0; i < levels[l].length; i++)
+                {
+                    if (i > 0)
+                        sb.append(",");
+                    sb.append(levels[l][i]);
+                }
+            }
+            lines.add(sb.toString());
+        }
+
+        return lines;
+    }
+
+    @Override
+    public void load(List<String> lines, SparseVector[] vectors, int dimension)
+    {
+        this.vectors = vectors;
+        this.dimension = dimension;
+        norms = DenseQuery.norms(vectors);
+
+        String[] parameters = lines.get(0).split(":")[1].split(";");
+        m = Integer.parseInt(parameters[0]);
+        efConstruction = Integer.parseInt(parameters[1]);
+        efSearch = Integer.parseInt(parameters[2]);
+        entryPoint = Integer.parseInt(parameters[3]);
+        maxLevel = Integer.parseInt(parameters[4]);
+
+        neighbours = new int[vectors.length][][];
+        for (int i = 0; i < vectors.length; i++)
+        {
+            String[] levels = lines.get(i + 1).split("\\|", -1);
+            neighbours[i] = new int[levels.length][];
+            for (int l = 0; l < levels.length; l++)
+            {
+                String[] ids = levels[l].isEmpty() ? new String[0] : levels[l].split(",");
+                neighbours[i][l] = new int[ids.length];
+                for (int j = 0; j < ids.length; j++)
+                    neighbours[i][l][j] = Integer.parseInt(ids[j]);
+            }
+        }
+    }
+
+    @Override
+    public void write(ModelWriter writer) throws IOException
+    {
+        writer.writeString(identifier);
+        writer.writeInt(m);
+        writer.writeInt(efConstruction);
+        writer.writeInt(efSearch);
+        writer.writeInt(entryPoint);
+        writer.writeInt(maxLevel);
+
+        for (int[][] levels : neighbours)
+        {
+            writer.writeInt(levels.length);
+            for (int[] level : levels)
+                writer.writeInts(level);
+        }
+    }
+
+    @Override
+    public void read(ModelReader reader, SparseVector[] vectors, int dimension)
+    {
+        this.vectors = vectors;
+        this.dimension = dimension;
+        norms = DenseQuery.norms(vectors);
+
+        m = reader.readInt();
+        efConstruction = reader.readInt();
+        efSearch = reader.readInt();
+        entryPoint = reader.readInt();
+        maxLevel = reader.readInt();
+
+        neighbours = new int[vectors.length][][];
+        for (int i = 0; i < vectors.length; i++)
+        {
+            neighbours[i] = new int[reader.readInt()][];
+            for (int l = 0; l < neighbours[i].length; l++)
+                neighbours[i][l] = reader.readInts();
+        }
+    }
+
+    /**
+     * Buffers of one search - visited marks and a max-heap of candidates
+     */
+    private static class SearchState
+    {
+        /** Visit number each node was last visited in */
+        private int[] visited = new int[0];
+
+        /** Number of the current visit */
+        private int visit;
+
+        /** Candidate ids in heap order */
+        private int[] ids = new int[16];
+
+        /** Candidate similarities in heap order, the highest is the root */
+        private double[] scores = new double[16];
+
+        /** Number of candidates */
+        private int size;
+
+        /** Nodes found, valid until the next search of a level */
+        private final TopK results = new TopK(0);
+
+        private void startVisit(int nodes)
+        {
+            if (visited.length < nodes)
+                visited = new int[nodes];
+
+            size = 0;
+            visit++;
+            if (visit == 0)
+            {
+                // Visit numbers wrapped around
+                Arrays.fill(visited, 0);
+                visit = 1;
+            }
+        }
+
+        /**
+         * Marks a node visited
+         * @param node node
+         * @return false if the node was visited already
+         */
+        private boolean visit(int node)
+        {
+            if (visited[node] == visit)
+                return false;
+
+            visited[node] = visit;
+            return true;
+        }
+
+        private void push(int id, double score)
+        {
+            if (size == ids.length)
+            {
+                ids = Arrays.copyOf(ids, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+
+            int i = size++;
+            while (i > 0)
+            {
+                int parent = (i - 1) >>> 1;
+                if (scores[parent] >= score)
+                    break;
+                ids[i] = ids[parent];
+                scores[i] = scores[parent];
+                i = parent;
+            }
+            ids[i] = id;
+            scores[i] = score;
+        }
+
+        private double peekScore()
+        {
+            return scores[0];
+        }
+
+        private int pop()
+        {
+            int top = ids[0];
+            int id = ids[--size];
+            double score = scores[size];
+
+            int i = 0;
+            while (true)
+            {
+                int child = 2 * i + 1;
+                if (child >= size)
+                    break;
+                if (child + 1 < size && scores[child + 1] > scores[child])
+                    child++;
+                if (scores[child] <= score)
+                    break;
+                ids[i] = ids[child];
+                scores[i] = scores[child];
+                i = child;
+            }
+            ids[i] = id;
+            scores[i] = score;
+
+            return top;
+        }
+    }
+}
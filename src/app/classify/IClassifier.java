@@ -1,15 +1,95 @@
 package app.classify;
 
-import app.parametrize.IParametrizer;
+import app.ModelReader;
+import app.ModelWriter;
+import app.SparseVector;
+import app.TrainingSet;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Classifier of parametrized documents
+ * Once trained or loaded, classify must be safe to call from several threads at once -
+ * it may only read the trained state and keep its working buffers per thread
+ */
 public interface IClassifier
 {
-    String classify(double[] vector);
+    /**
+     * Returns the estimated class of a vector
+     * Safe to call concurrently once the classifier is trained or loaded
+     * @param vector vector
+     * @return class
+     */
+    String classify(SparseVector vector);
 
-    void train(IParametrizer parametrizer);
+    /**
+     * Writes a score of every class into a caller-provided array, in the order of getClasses
+     * Scores are shares of the classifier's belief - non-negative, summing to 1 and highest for the class classify returns
+     * Safe to call concurrently once the classifier is trained or loaded
+     * @param vector vector
+     * @param scores array of getClasses().length scores, overwritten
+     */
+    void score(SparseVector vector, double[] scores);
+
+    /**
+     * Returns classes the classifier was trained for
+     * @return sorted classes
+     */
+    String[] getClasses();
+
+    /**
+     * Returns classes whose score reaches a threshold
+     * @param vector vector
+     * @param threshold minimum score
+     * @return classes from the highest score, at least the best one
+     */
+    default List<String> classifyMultiLabel(SparseVector vector, double threshold)
+    {
+        double[] scores = new double[getClasses().length];
+        score(vector, scores);
+
+        return labels(getClasses(), scores, threshold);
+    }
+
+    /**
+     * Returns classes whose score reaches a threshold
+     * @param classes classes
+     * @param scores score of each class
+     * @param threshold minimum score
+     * @return classes from the highest score, at least the best one
+     */
+    static List<String> labels(String[] classes, double[] scores, double threshold)
+    {
+        // Few classes pass, selection by repeated maximum keeps the first class on ties like classify
+        // Classes are ordered by score then index, each pick is the first class ordered after the previous one
+        List<String> labels = new ArrayList<>();
+        int previous = -1;
+        while (labels.size() < classes.length)
+        {
+            int best = -1;
+            for (int i = 0; i < classes.length; i++)
+                if (previous < 0 || scores[i] < scores[previous] || (scores[i] == scores[previous] && i > previous))
+                    if (best < 0 || scores[i] > scores[best])
+                        best = i;
+
+            if (!labels.isEmpty() && scores[best] < threshold)
+                break;
+
+            previous = best;
+            labels.add(classes[best]);
+        }
+
+        return labels;
+    }
+
+    void train(TrainingSet trainingSet);
 
     List<String> export();
 
     void load(List<String> lines);
+
+    void write(ModelWriter writer) throws IOException;
+
+    void read(ModelReader reader);
 }
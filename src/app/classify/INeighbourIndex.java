@@ -0,0 +1,75 @@
+package app.classify;
+
+import app.ModelReader;
+import app.ModelWriter;
+import app.SparseVector;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Finds training vectors nearest to a query by the index's metric
+ * Scores are higher for nearer vectors - cosine similarity, or negated euclidean or manhattan distance
+ * Used by KNearestNeighbours, implementations trade exactness for speed
+ */
+public interface INeighbourIndex
+{
+    /**
+     * Builds the index over the training vectors
+     * @param vectors training vectors, kept by reference
+     * @param dimension dimension of the vectors
+     */
+    void build(SparseVector[] vectors, int dimension);
+
+    /**
+     * Finds K nearest training vectors
+     * @param query query vector
+     * @param k number of vectors to find
+     * @return the vectors' indexes and scores, higher meaning nearer
+     */
+    default TopK search(SparseVector query, int k)
+    {
+        TopK nearest = new TopK(k);
+        search(query, nearest);
+        return nearest;
+    }
+
+    /**
+     * Finds as many nearest training vectors as a caller's TopK keeps
+     * Searching into a TopK kept per thread allocates nothing, the indexes keep their other buffers per thread
+     * @param query query vector
+     * @param nearest emptied and filled with the vectors' indexes and scores, higher meaning nearer
+     */
+    void search(SparseVector query, TopK nearest);
+
+    /**
+     * Tells whether the index uses the training vectors after build
+     * Indexes keeping their own copy let the classifier drop the vectors and save them empty
+     * @return true if the vectors are used
+     */
+    default boolean needsVectors()
+    {
+        return true;
+    }
+
+    List<String> export();
+
+    /**
+     * Loads the index exported by export
+     * @param lines lines of the index without the identifier line
+     * @param vectors training vectors the index was built over
+     * @param dimension dimension of the vectors
+     */
+    void load(List<String> lines, SparseVector[] vectors, int dimension);
+
+    void write(ModelWriter writer) throws IOException;
+
+    /**
+     * Reads the index written by write
+     * Identifier is expected to be read already
+     * @param reader reader
+     * @param vectors training vectors the index was built over
+     * @param dimension dimension of the vectors
+     */
+    void read(ModelReader reader, SparseVector[] vectors, int dimension);
+}
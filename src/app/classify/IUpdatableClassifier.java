@@ -0,0 +1,17 @@
+package app.classify;
+
+import app.TrainingSet;
+
+/**
+ * Classifier that folds new training documents into its trained state without training from scratch
+ * Documents for update are labelled against getClasses()
+ */
+public interface IUpdatableClassifier extends IClassifier
+{
+    /**
+     * Adds parametrized documents to the trained state
+     * Must not run concurrently with classify
+     * @param trainingSet documents parametrized by the parametrizer the classifier was trained with
+     */
+    void update(TrainingSet trainingSet);
+}
@@ -0,0 +1,533 @@
+package app.classify;
+
+import app.ModelReader;
+import app.ModelWriter;
+import app.SparseVector;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Exact cosine search over an inverted index - for each dimension, the training vectors that are non-zero in it
+ * A query only visits the postings of its own non-zero dimensions, term at a time, and accumulates a score
+ * per training vector, so its cost follows the length of those postings instead of the size of the training set
+ * With MaxScore, query terms are taken from the highest possible contribution to the lowest. Once the remaining
+ * terms cannot lift an unseen vector above the K-th best score, no new vectors are accumulated, vectors that
+ * cannot reach the K-th best score are dropped and the remaining terms are looked up for the rest only
+ */
+public class InvertedIndex implements INeighbourIndex
+{
+    /** Postings of dimension t occupy [termStarts[t], termStarts[t + 1]) of postingIds and postingWeights */
+    private int[] termStarts;
+
+    /** Ids of the vectors, ascending within each dimension */
+    private int[] postingIds;
+
+    /** Components of the vectors divided by their norms */
+    private float[] postingWeights;
+
+    /** Highest weight of each dimension */
+    private float[] termMaxima;
+
+    /** Lowest weight of each dimension */
+    private float[] termMinima;
+
+    /** Whether a vector has any postings, zero vectors have none */
+    private boolean[] indexed;
+
+    /** Number of training vectors */
+    private int size;
+
+    /** Dimension of the vectors */
+    private int dimension;
+
+    /** Whether MaxScore pruning is used */
+    private boolean maxScore;
+
+    /** Stamp of vectors dropped by MaxScore, never a query's stamp */
+    private static final int DROPPED = 0;
+
+    /** Search buffers, one per thread */
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(() -> new Scratch(0));
+
+    public static String identifier = "inverted";
+
+    public InvertedIndex()
+    {
+        this(true);
+    }
+
+    /**
+     * @param maxScore whether MaxScore pruning is used, otherwise all postings of the query's dimensions are visited
+     */
+    public InvertedIndex(boolean maxScore)
+    {
+        this.maxScore = maxScore;
+    }
+
+    public boolean usesMaxScore()
+    {
+        return maxScore;
+    }
+
+    @Override
+    public boolean needsVectors()
+    {
+        return false;
+    }
+
+    @Override
+    public void build(SparseVector[] vectors, int dimension)
+    {
+        this.dimension = dimension;
+        size = vectors.length;
+
+        termStarts = new int[dimension + 1];
+        for (SparseVector vector : vectors)
+            for (int index : vector.indexes)
+                termStarts[index + 1]++;
+        for (int t = 0; t < dimension; t++)
+            termStarts[t + 1] += termStarts[t];
+
+        // Vectors are added in order, so the postings of each dimension are sorted by id
+        postingIds = new int[termStarts[dimension]];
+        postingWeights = new float[termStarts[dimension]];
+        int[] next = Arrays.copyOf(termStarts, dimension);
+        for (int i = 0; i < vectors.length; i++)
+        {
+            double norm = vectors[i].norm();
+            if (norm == 0)
+                continue;
+
+            for (int j = 0; j < vectors[i].indexes.length; j++)
+            {
+                int p = next[vectors[i].indexes[j]]++;
+                postingIds[p] = i;
+                postingWeights[p] = (float) (vectors[i].values[j] / norm);
+            }
+        }
+
+        // Zero vectors left gaps at the ends of their dimensions' postings
+        compact(next);
+        summarize();
+    }
+
+    /**
+     * Removes unused ends of postings
+     * @param ends end of the used part of each dimension's postings
+     */
+    private void compact(int[] ends)
+    {
+        int used = 0;
+        for (int t = 0; t < dimension; t++)
+        {
+            int start = termStarts[t];
+            int length = ends[t] - start;
+            System.arraycopy(postingIds, start, postingIds, used, length);
+            System.arraycopy(postingWeights, start, postingWeights, used, length);
+            termStarts[t] = used;
+            used += length;
+        }
+        termStarts[dimension] = used;
+
+        postingIds = Arrays.copyOf(postingIds, used);
+        postingWeights = Arrays.copyOf(postingWeights, used);
+    }
+
+    /**
+     * Calculates weight bounds of the dimensions and marks indexed vectors
+     */
+    private void summarize()
+    {
+        termMaxima = new float[dimension];
+        termMinima = new float[dimension];
+        indexed = new boolean[size];
+
+        for (int t = 0; t < dimension; t++)
+        {
+            float max = 0, min = 0;
+            for (int p = termStarts[t]; p < termStarts[t + 1]; p++)
+            {
+                max = Math.max(max, postingWeights[p]);
+                min = Math.min(min, postingWeights[p]);
+                indexed[postingIds[p]] = true;
+            }
+            termMaxima[t] = max;
+            termMinima[t] = min;
+        }
+    }
+
+    @Override
+    public void search(SparseVector query, TopK nearest)
+    {
+        int k = nearest.capacity();
+        nearest.reset(k);
+        double queryNorm = query.norm();
+        if (queryNorm == 0)
+            return;
+
+        Scratch s = scratch.get();
+        if (s.scores.length < size)
+        {
+            s = new Scratch(size);
+            scratch.set(s);
+        }
+        s.nextQuery();
+
+        int terms = order(query, queryNorm, s);
+        int candidates = 0;
+        int term = 0;
+        double threshold = Double.NEGATIVE_INFINITY;
+
+        // Postings visited since the K-th score was last found, finding it costs a pass over the candidates
+        long work = 0;
+
+        // Accumulates every vector in the postings until the remaining terms cannot lift a new vector into the top K
+        for (; term < terms; term++)
+        {
+            if (maxScore && candidates >= k && work >= candidates && s.bestScore + s.remainingLower[term] > s.remainingUpper[term])
+            {
+                work = 0;
+                threshold = kthScore(s, candidates, k) + s.remainingLower[term];
+                if (threshold > s.remainingUpper[term])
+                    break;
+            }
+
+            float weight = s.queryWeights[term];
+            int t = s.queryTerms[term];
+            for (int p = termStarts[t]; p < termStarts[t + 1]; p++)
+            {
+                int id = postingIds[p];
+                if (s.stamps[id] != s.stamp)
+                {
+                    s.stamps[id] = s.stamp;
+                    s.scores[id] = 0;
+                    s.candidates[candidates++] = id;
+                }
+                float score = s.scores[id] += weight * postingWeights[p];
+                if (score > s.bestScore)
+                    s.bestScore = score;
+            }
+            work += termStarts[t + 1] - termStarts[t];
+        }
+
+        if (term < terms)
+            candidates = accumulateRemaining(s, candidates, k, threshold, term, terms);
+
+        for (int i = 0; i < candidates; i++)
+            nearest.offer(s.candidates[i], s.scores[s.candidates[i]]);
+
+        // Like the exact scan, vectors sharing no dimension with the query fill the rest with zero similarity
+        for (int i = 0; i < size && nearest.size() < k; i++)
+            if (indexed[i] && s.stamps[i] != s.stamp)
+                nearest.offer(i, 0);
+    }
+
+    /**
+     * Sorts the query's dimensions by their highest possible contribution and sums the bounds of the remaining terms
+     * @param query query
+     * @param queryNorm norm of the query
+     * @param s search buffers
+     * @return number of query terms with postings
+     */
+    private int order(SparseVector query, double queryNorm, Scratch s)
+    {
+        s.reserveTerms(query.indexes.length);
+
+        int terms = 0;
+        for (int i = 0; i < query.indexes.length; i++)
+        {
+            int t = query.indexes[i];
+            if (t >= dimension || termStarts[t] == termStarts[t + 1])
+                continue;
+
+            float weight = (float) (query.values[i] / queryNorm);
+            float upper = Math.max(weight * termMaxima[t], weight * termMinima[t]);
+            float lower = Math.min(weight * termMaxima[t], weight * termMinima[t]);
+
+            // Insertion sort, queries have at most a few hundred terms
+            int j = terms++;
+            while (j > 0 && s.upper[j - 1] < upper)
+            {
+                s.queryTerms[j] = s.queryTerms[j - 1];
+                s.queryWeights[j] = s.queryWeights[j - 1];
+                s.upper[j] = s.upper[j - 1];
+                s.lower[j] = s.lower[j - 1];
+                j--;
+            }
+            s.queryTerms[j] = t;
+            s.queryWeights[j] = weight;
+            s.upper[j] = upper;
+            s.lower[j] = lower;
+        }
+
+        s.remainingUpper[terms] = 0;
+        s.remainingLower[terms] = 0;
+        for (int i = terms - 1; i >= 0; i--)
+        {
+            s.remainingUpper[i] = s.remainingUpper[i + 1] + Math.max(s.upper[i], 0);
+            s.remainingLower[i] = s.remainingLower[i + 1] + Math.min(s.lower[i], 0);
+        }
+
+        return terms;
+    }
+
+    /**
+     * Returns the K-th highest accumulated score
+     * @param s search buffers
+     * @param candidates number of candidates
+     * @param k K
+     * @return K-th highest score
+     */
+    private static double kthScore(Scratch s, int candidates, int k)
+    {
+        TopK best = s.best;
+        best.reset(k);
+        for (int i = 0; i < candidates; i++)
+            best.offer(s.candidates[i], s.scores[s.candidates[i]]);
+
+        return best.threshold();
+    }
+
+    /**
+     * Adds the remaining terms to the candidates, no new vectors are accumulated
+     * Candidates that cannot reach the K-th best score are dropped whenever the postings visited since the last
+     * time outweigh a pass over the candidates. Postings much longer than the candidates are binary searched
+     * for each candidate instead of being visited
+     * @param s search buffers
+     * @param candidates number of candidates
+     * @param k K
+     * @param threshold lowest final score of the K-th best vector
+     * @param from first remaining term
+     * @param terms number of terms
+     * @return number of candidates
+     */
+    private int accumulateRemaining(Scratch s, int candidates, int k, double threshold, int from, int terms)
+    {
+        long work = candidates;
+        boolean sorted = false;
+
+        for (int term = from; term < terms; term++)
+        {
+            if (work >= candidates)
+            {
+                work = 0;
+                threshold = Math.max(threshold, kthScore(s, candidates, k) + s.remainingLower[term]);
+                candidates = prune(s, candidates, threshold, s.remainingUpper[term]);
+            }
+
+            float weight = s.queryWeights[term];
+            int t = s.queryTerms[term];
+            int start = termStarts[t], end = termStarts[t + 1];
+
+            if (end - start > candidates * 16L)
+            {
+                // Pruning keeps the order, the candidates are sorted once
+                if (!sorted)
+                {
+                    Arrays.sort(s.candidates, 0, candidates);
+                    sorted = true;
+                }
+
+                for (int i = 0; i < candidates && start < end; i++)
+                {
+                    int id = s.candidates[i];
+                    int p = Arrays.binarySearch(postingIds, start, end, id);
+                    if (p >= 0)
+                        s.scores[id] += weight * postingWeights[p];
+
+                    // The next candidate lies further
+                    start = p >= 0 ? p + 1 : -p - 1;
+                }
+                work += candidates;
+            }
+            else
+            {
+                for (int p = start; p < end; p++)
+                {
+                    int id = postingIds[p];
+                    if (s.stamps[id] == s.stamp)
+                        s.scores[id] += weight * postingWeights[p];
+                }
+                work += end - start;
+            }
+        }
+
+        return candidates;
+    }
+
+    /**
+     * Keeps the candidates that can still reach the threshold, in their order
+     * @param s search buffers
+     * @param candidates number of candidates
+     * @param threshold lowest final score of the K-th best vector
+     * @param remainingUpper highest possible contribution of the remaining terms
+     * @return number of kept candidates
+     */
+    private static int prune(Scratch s, int candidates, double threshold, double remainingUpper)
+    {
+        int kept = 0;
+        for (int i = 0; i < candidates; i++)
+        {
+            int id = s.candidates[i];
+            if (s.scores[id] + remainingUpper >= threshold)
+                s.candidates[kept++] = id;
+            else
+                s.stamps[id] = DROPPED;
+        }
+
+        return kept;
+    }
+
+    @Override
+    public List<String> export()
+    {
+        List<String> lines = new ArrayList<>();
+        lines.add("**_index:" + identifier);
+        lines.add("**_inverted:" + size + ";" + dimension + ";" + maxScore);
+
+        // One line per dimension with postings - dimension|id:weight;id:weight
+        for (int t = 0; t < dimension; t++)
+        {
+            if (termStarts[t] == termStarts[t + 1])
+                continue;
+
+            StringBuilder sb = new StringBuilder().append(t).append("|");
+            for (int p = termStarts[t]; p < termStarts[t + 1]; p++)
+                sb.append(postingIds[p]).append(":").append(postingWeights[p]).append(";");
+            lines.add(sb.toString());
+        }
+
+        return lines;
+    }
+
+    @Override
+    public void load(List<String> lines, SparseVector[] vectors, int dimension)
+    {
+        String[] parameters = lines.get(0).split(":")[1].split(";");
+        size = Integer.parseInt(parameters[0]);
+        this.dimension = Integer.parseInt(parameters[1]);
+        maxScore = Boolean.parseBoolean(parameters[2]);
+
+        termStarts = new int[this.dimension + 1];
+        List<String[]> postings = new ArrayList<>();
+        for (int i = 1; i < lines.size(); i++)
+        {
+            if (lines.get(i).isEmpty())
+                continue;
+
+            String[] parts = lines.get(i).split("\\|");
+            String[] pairs = parts[1].split(";");
+            termStarts[Integer.parseInt(parts[0]) + 1] = pairs.length;
+            postings.add(pairs);
+        }
+        for (int t = 0; t < this.dimension; t++)
+            termStarts[t + 1] += termStarts[t];
+
+        postingIds = new int[termStarts[this.dimension]];
+        postingWeights = new float[postingIds.length];
+        int p = 0;
+        for (String[] pairs : postings)
+        {
+            for (String pair : pairs)
+            {
+                int colon = pair.indexOf(':');
+                postingIds[p] = Integer.parseInt(pair.substring(0, colon));
+                postingWeights[p++] = Float.parseFloat(pair.substring(colon + 1));
+            }
+        }
+
+        summarize();
+    }
+
+    @Override
+    public void write(ModelWriter writer) throws IOException
+    {
+        writer.writeString(identifier);
+        writer.writeInt(size);
+        writer.writeBoolean(maxScore);
+        writer.writeInts(termStarts);
+        writer.writeInts(postingIds);
+        writer.writeFloats(postingWeights);
+    }
+
+    @Override
+    public void read(ModelReader reader, SparseVector[] vectors, int dimension)
+    {
+        size = reader.readInt();
+        maxScore = reader.readBoolean();
+        termStarts = reader.readInts();
+        postingIds = reader.readInts();
+        postingWeights = reader.readFloats();
+        this.dimension = termStarts.length - 1;
+
+        summarize();
+    }
+
+    /**
+     * Buffers of one search
+     * Scores are valid where stamps equal the current stamp, so nothing is cleared between queries
+     */
+    private static class Scratch
+    {
+        /** Accumulated scores of the vectors */
+        private final float[] scores;
+
+        /** Query that last touched each vector's score, or DROPPED */
+        private final int[] stamps;
+
+        /** Ids of the accumulated vectors */
+        private final int[] candidates;
+
+        /** Best candidates, for the score to beat */
+        private final TopK best = new TopK(0);
+
+        /** Current query */
+        private int stamp;
+
+        /** Highest accumulated score of the current query */
+        private float bestScore;
+
+        /** Query dimensions ordered by their highest contribution, with their weights and bounds */
+        private int[] queryTerms = new int[0];
+        private float[] queryWeights = new float[0];
+        private float[] upper = new float[0];
+        private float[] lower = new float[0];
+
+        /** Sums of the bounds of terms from each one to the last */
+        private double[] remainingUpper = new double[1];
+        private double[] remainingLower = new double[1];
+
+        private Scratch(int size)
+        {
+            scores = new float[size];
+            stamps = new int[size];
+            candidates = new int[size];
+        }
+
+        private void nextQuery()
+        {
+            if (++stamp == Integer.MAX_VALUE)
+            {
+                Arrays.fill(stamps, DROPPED);
+                stamp = 1;
+            }
+            bestScore = Float.NEGATIVE_INFINITY;
+        }
+
+        private void reserveTerms(int terms)
+        {
+            if (queryTerms.length >= terms)
+                return;
+
+            queryTerms = new int[terms];
+            queryWeights = new float[terms];
+            upper = new float[terms];
+            lower = new float[terms];
+            remainingUpper = new double[terms + 1];
+            remainingLower = new double[terms + 1];
+        }
+    }
+}
@@ -0,0 +1,526 @@
+package app.classify;
+
+import app.ModelReader;
+import app.ModelWriter;
+import app.SparseVector;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Approximate search over an inverted file of product-quantized vectors (IVF-PQ)
+ * Sparse vectors are mapped to a dense space of a few hundred dimensions by a random sign projection,
+ * which roughly keeps their cosine similarities, and normalized to unit length
+ * The projected vectors are clustered by k-means into inverted lists. The residual of a vector from its list's
+ * centroid is split into subspaces and each part replaced by the nearest of 256 codewords of its subspace,
+ * so a vector takes one byte per subspace
+ * A query visits the nprobe lists with the most similar centroids. Its similarity to a vector is the centroid
+ * similarity plus one table lookup per subspace - the tables hold the query's products with all codewords
+ * With re-ranking, the best rerank * K candidates are scored again exactly, which needs the training vectors
+ */
+public class IvfPqIndex implements INeighbourIndex
+{
+    /** Seed of the clustering, the index is the same for the same training vectors */
+    private static final long SEED = 42;
+
+    /** Codewords of each subspace, codes are bytes */
+    private static final int CODEWORDS = 256;
+
+    /** Maximum k-means iterations */
+    private static final int ITERATIONS = 20;
+
+    /** K-means is trained on at most this many points per cluster */
+    private static final int TRAINING_POINTS_PER_CLUSTER = 32;
+
+    /** Dimension of the projected vectors, a multiple of 64 */
+    private int projectedDimension;
+
+    /** Number of subspaces, divides projectedDimension */
+    private int subspaces;
+
+    /** Requested number of lists, 0 for the square root of the number of vectors */
+    private int lists;
+
+    /** Number of lists visited by a query */
+    private int nprobe;
+
+    /** Candidates scored exactly are rerank * K, 0 for no re-ranking */
+    private int rerank;
+
+    /** Training vectors, only kept for re-ranking */
+    private SparseVector[] vectors;
+
+    /** Euclidean norms of the training vectors, only kept for re-ranking */
+    private double[] norms;
+
+    /** Dimension of the training vectors */
+    private int dimension;
+
+    /** Centroids of the lists, list l occupies [l * projectedDimension, (l + 1) * projectedDimension) */
+    private float[] centroids;
+
+    /** Codewords of each subspace, codeword c occupies [c * subspace dimension, (c + 1) * subspace dimension) */
+    private float[][] codebooks;
+
+    /** List l occupies [listStarts[l], listStarts[l + 1]) of listIds */
+    private int[] listStarts;
+
+    /** Vector ids ordered by list */
+    private int[] listIds;
+
+    /** Codes of the vectors in listIds order, subspaces bytes a vector */
+    private byte[] codes;
+
+    /** Search buffers, one per thread */
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    public static String identifier = "ivfpq";
+
+    public IvfPqIndex()
+    {
+        this(256, 32, 0, 8, 0);
+    }
+
+    /**
+     * @param projectedDimension dimension of the projected vectors, a multiple of 64
+     * @param subspaces number of subspaces, bytes a vector, divides projectedDimension
+     * @param lists number of lists, 0 for the square root of the number of vectors
+     * @param nprobe number of lists visited by a query
+     * @param rerank candidates scored exactly are rerank * K, 0 for no re-ranking
+     */
+    public IvfPqIndex(int projectedDimension, int subspaces, int lists, int nprobe, int rerank)
+    {
+        if (projectedDimension <= 0 || projectedDimension % 64 != 0 || subspaces <= 0 || projectedDimension % subspaces != 0
+                || lists < 0 || nprobe <= 0 || rerank < 0)
+            throw new IllegalArgumentException("Invalid IVF-PQ parameters");
+
+        this.projectedDimension = projectedDimension;
+        this.subspaces = subspaces;
+        this.lists = lists;
+        this.nprobe = nprobe;
+        this.rerank = rerank;
+    }
+
+    /**
+     * Sets number of lists visited by a query
+     * @param nprobe number of lists, at least 1
+     */
+    public void setNprobe(int nprobe)
+    {
+        if (nprobe <= 0)
+            throw new IllegalArgumentException("Invalid number of lists to probe");
+
+        this.nprobe = nprobe;
+    }
+
+    public int getNprobe()
+    {
+        return nprobe;
+    }
+
+    @Override
+    public boolean needsVectors()
+    {
+        return rerank > 0;
+    }
+
+    @Override
+    public void build(SparseVector[] vectors, int dimension)
+    {
+        this.dimension = dimension;
+        int d = projectedDimension;
+        int subspaceDimension = d / subspaces;
+        Random random = new Random(SEED);
+
+        float[] projected = new float[vectors.length * d];
+        IntStream.range(0, vectors.length).parallel().forEach(i -> project(vectors[i], projected, i * d));
+
+        // Zero vectors have no similarity to anything, they are left out of the lists
+        int[] nonZero = IntStream.range(0, vectors.length).filter(i -> projected[i * d] != 0 || norm(projected, i * d) != 0).toArray();
+        int listCount = Math.max(1, Math.min(lists > 0 ? lists : (int) Math.round(Math.sqrt(nonZero.length)), nonZero.length));
+
+        centroids = nonZero.length == 0 ? new float[d]
+                : KMeans.cluster(sample(projected, d, nonZero, listCount * TRAINING_POINTS_PER_CLUSTER, random),
+                        d, listCount, ITERATIONS, random);
+
+        int[] assignment = new int[vectors.length];
+        float[] residuals = new float[nonZero.length * d];
+        IntStream.range(0, nonZero.length).parallel().forEach(n ->
+        {
+            int i = nonZero[n];
+            assignment[i] = KMeans.nearest(centroids, d, projected, i * d);
+            for (int j = 0; j < d; j++)
+                residuals[n * d + j] = projected[i * d + j] - centroids[assignment[i] * d + j];
+        });
+
+        // One quantizer per subspace, trained on that part of the residuals
+        codebooks = new float[subspaces][];
+        int[] all = IntStream.range(0, nonZero.length).toArray();
+        for (int m = 0; m < subspaces; m++)
+        {
+            float[] part = new float[nonZero.length * subspaceDimension];
+            for (int n = 0; n < nonZero.length; n++)
+                System.arraycopy(residuals, n * d + m * subspaceDimension, part, n * subspaceDimension, subspaceDimension);
+
+            codebooks[m] = new float[CODEWORDS * subspaceDimension];
+            if (nonZero.length > 0)
+            {
+                int codewords = Math.min(CODEWORDS, nonZero.length);
+                float[] trained = KMeans.cluster(sample(part, subspaceDimension, all, CODEWORDS * TRAINING_POINTS_PER_CLUSTER, random),
+                        subspaceDimension, codewords, ITERATIONS, random);
+                System.arraycopy(trained, 0, codebooks[m], 0, trained.length);
+
+                // Unused codewords repeat the first one, they are never nearer than it
+                for (int c = codewords; c < CODEWORDS; c++)
+                    System.arraycopy(trained, 0, codebooks[m], c * subspaceDimension, subspaceDimension);
+            }
+        }
+
+        // Lists in order, codes of each list together
+        listStarts = new int[listCount + 1];
+        for (int i : nonZero)
+            listStarts[assignment[i] + 1]++;
+        for (int l = 0; l < listCount; l++)
+            listStarts[l + 1] += listStarts[l];
+
+        int[] next = Arrays.copyOf(listStarts, listCount);
+        int[] positions = new int[nonZero.length];
+        listIds = new int[nonZero.length];
+        for (int n = 0; n < nonZero.length; n++)
+        {
+            positions[n] = next[assignment[nonZero[n]]]++;
+            listIds[positions[n]] = nonZero[n];
+        }
+
+        codes = new byte[nonZero.length * subspaces];
+        IntStream.range(0, nonZero.length).parallel().forEach(n ->
+        {
+            for (int m = 0; m < subspaces; m++)
+                codes[positions[n] * subspaces + m] = (byte) KMeans.nearest(codebooks[m], subspaceDimension, residuals, n * d + m * subspaceDimension);
+        });
+
+        keepVectors(vectors);
+    }
+
+    @Override
+    public void search(SparseVector query, TopK nearest)
+    {
+        int k = nearest.capacity();
+        nearest.reset(k);
+        Scratch s = scratch.get();
+        int d = projectedDimension;
+        int subspaceDimension = d / subspaces;
+
+        project(query, s.query, 0);
+        double queryNorm = query.norm();
+        if (queryNorm == 0 || listIds.length == 0)
+            return;
+
+        TopK probes = s.probes;
+        probes.reset(Math.min(nprobe, listStarts.length - 1));
+        for (int l = 0; l < listStarts.length - 1; l++)
+            probes.offer(l, dot(s.query, 0, centroids, l * d, d));
+
+        // Products of the query with every codeword of every subspace
+        for (int m = 0; m < subspaces; m++)
+            for (int c = 0; c < CODEWORDS; c++)
+                s.table[m * CODEWORDS + c] = (float) dot(s.query, m * subspaceDimension, codebooks[m], c * subspaceDimension, subspaceDimension);
+
+        // Without re-ranking the candidates are the result
+        TopK candidates = nearest;
+        if (rerank > 0)
+        {
+            candidates = s.candidates;
+            candidates.reset(k * rerank);
+        }
+        int probeCount = probes.sortDescending();
+        for (int p = 0; p < probeCount; p++)
+        {
+            int l = probes.id(p);
+            double centroidSimilarity = probes.score(p);
+            for (int i = listStarts[l]; i < listStarts[l + 1]; i++)
+            {
+                float similarity = 0;
+                for (int m = 0; m < subspaces; m++)
+                    similarity += s.table[m * CODEWORDS + (codes[i * subspaces + m] & 0xFF)];
+
+                candidates.offer(listIds[i], centroidSimilarity + similarity);
+            }
+        }
+
+        if (rerank == 0)
+            return;
+
+        int count = candidates.sortDescending();
+        for (int i = 0; i < count; i++)
+        {
+            int id = candidates.id(i);
+            nearest.offer(id, query.dot(vectors[id]) / (queryNorm * norms[id]));
+        }
+    }
+
+    /**
+     * Returns memory taken by the lists, codes, centroids and codebooks
+     * @return bytes
+     */
+    public long bytes()
+    {
+        long floats = centroids.length + (long) codebooks.length * codebooks[0].length;
+
+        return codes.length + (long) (listStarts.length + listIds.length) * Integer.BYTES + floats * Float.BYTES;
+    }
+
+    /**
+     * Projects a sparse vector and normalizes the result to unit length
+     * Each dimension of the sparse vector is added to or subtracted from every projected dimension
+     * by the bits of a hash of its index, so no projection matrix is stored
+     * @param vector sparse vector
+     * @param out array for the projected vector
+     * @param offset start of the projected vector in out
+     */
+    private void project(SparseVector vector, float[] out, int offset)
+    {
+        Arrays.fill(out, offset, offset + projectedDimension, 0);
+        int blocks = projectedDimension / 64;
+
+        for (int i = 0; i < vector.indexes.length; i++)
+        {
+            int valueBits = Float.floatToRawIntBits((float) vector.values[i]);
+            for (int block = 0; block < blocks; block++)
+            {
+                long signs = mix((long) vector.indexes[i] * blocks + block);
+
+                // The hash bit flips the sign bit of the value, random signs would defeat branch prediction
+                for (int j = 0; j < 64; j++)
+                    out[offset + block * 64 + j] += Float.intBitsToFloat(valueBits ^ ((int) (signs >>> j) << 31));
+            }
+        }
+
+        double norm = norm(out, offset);
+        if (norm > 0)
+            for (int j = 0; j < projectedDimension; j++)
+                out[offset + j] /= norm;
+    }
+
+    /**
+     * SplitMix64 finalizer, 64 independent-looking bits from a counter
+     * @param x counter
+     * @return mixed bits
+     */
+    private static long mix(long x)
+    {
+        x += 0x9E3779B97F4A7C15L;
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        return x ^ (x >>> 31);
+    }
+
+    private double norm(float[] values, int offset)
+    {
+        return Math.sqrt(dot(values, offset, values, offset, projectedDimension));
+    }
+
+    private static double dot(float[] a, int aOffset, float[] b, int bOffset, int length)
+    {
+        double sum = 0;
+        for (int j = 0; j < length; j++)
+            sum += a[aOffset + j] * b[bOffset + j];
+
+        return sum;
+    }
+
+    /**
+     * Copies a random sample of points for training k-means
+     * @param points points
+     * @param dimension dimension of the points
+     * @param ids ids of the points to sample from
+     * @param size maximum sample size
+     * @param random random generator
+     * @return sampled points
+     */
+    private static float[] sample(float[] points, int dimension, int[] ids, int size, Random random)
+    {
+        int[] chosen = ids.clone();
+        int count = Math.min(size, chosen.length);
+
+        // Partial Fisher-Yates shuffle
+        for (int i = 0; i < count; i++)
+        {
+            int j = i + random.nextInt(chosen.length - i);
+            int swap = chosen[i];
+            chosen[i] = chosen[j];
+            chosen[j] = swap;
+        }
+
+        float[] sample = new float[count * dimension];
+        for (int i = 0; i < count; i++)
+            System.arraycopy(points, chosen[i] * dimension, sample, i * dimension, dimension);
+
+        return sample;
+    }
+
+    /**
+     * Keeps the training vectors if they are needed for re-ranking
+     * @param vectors training vectors
+     */
+    private void keepVectors(SparseVector[] vectors)
+    {
+        this.vectors = needsVectors() ? vectors : null;
+        norms = needsVectors() ? DenseQuery.norms(vectors) : null;
+    }
+
+    @Override
+    public List<String> export()
+    {
+        List<String> lines = new ArrayList<>();
+        lines.add("**_index:" + identifier);
+        lines.add("**_ivfpq:" + projectedDimension + ";" + subspaces + ";" + (listStarts.length - 1) + ";" + nprobe + ";"
+                + rerank + ";" + dimension);
+
+        // Centroid lines, codebook lines, then one line per list - vector ids and hexadecimal codes
+        int d = projectedDimension;
+        for (int l = 0; l < listStarts.length - 1; l++)
+            lines.add(floats(Arrays.copyOfRange(centroids, l * d, (l + 1) * d)));
+        for (float[] codebook : codebooks)
+            lines.add(floats(codebook));
+
+        for (int l = 0; l < listStarts.length - 1; l++)
+        {
+            StringBuilder sb = new StringBuilder();
+            for (int i = listStarts[l]; i < listStarts[l + 1]; i++)
+            {
+                if (i > listStarts[l])
+                    sb.append(",");
+                sb.append(listIds[i]);
+            }
+            sb.append("|");
+            for (int i = listStarts[l] * subspaces; i < listStarts[l + 1] * subspaces; i++)
+                sb.append(Character.forDigit((codes[i] >>> 4) & 0xF, 16)).append(Character.forDigit(codes[i] & 0xF, 16));
+            lines.add(sb.toString());
+        }
+
+        return lines;
+    }
+
+    @Override
+    public void load(List<String> lines, SparseVector[] vectors, int dimension)
+    {
+        String[] parameters = lines.get(0).split(":")[1].split(";");
+        projectedDimension = Integer.parseInt(parameters[0]);
+        subspaces = Integer.parseInt(parameters[1]);
+        int listCount = Integer.parseInt(parameters[2]);
+        nprobe = Integer.parseInt(parameters[3]);
+        rerank = Integer.parseInt(parameters[4]);
+        this.dimension = Integer.parseInt(parameters[5]);
+
+        int d = projectedDimension;
+        centroids = new float[listCount * d];
+        for (int l = 0; l < listCount; l++)
+            System.arraycopy(parseFloats(lines.get(1 + l)), 0, centroids, l * d, d);
+
+        codebooks = new float[subspaces][];
+        for (int m = 0; m < subspaces; m++)
+            codebooks[m] = parseFloats(lines.get(1 + listCount + m));
+
+        listStarts = new int[listCount + 1];
+        List<int[]> ids = new ArrayList<>();
+        List<String> hexCodes = new ArrayList<>();
+        for (int l = 0; l < listCount; l++)
+        {
+            String[] parts = lines.get(1 + listCount + subspaces + l).split("\\|", -1);
+            int[] listIdsOfLine = parts[0].isEmpty() ? new int[0] : Arrays.stream(parts[0].split(",")).mapToInt(Integer::parseInt).toArray();
+            ids.add(listIdsOfLine);
+            hexCodes.add(parts[1]);
+            listStarts[l + 1] = listStarts[l] + listIdsOfLine.length;
+        }
+
+        listIds = new int[listStarts[listCount]];
+        codes = new byte[listIds.length * subspaces];
+        for (int l = 0; l < listCount; l++)
+        {
+            System.arraycopy(ids.get(l), 0, listIds, listStarts[l], ids.get(l).length);
+            String hex = hexCodes.get(l);
+            for (int i = 0; i < hex.length() / 2; i++)
+                codes[listStarts[l] * subspaces + i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+
+        keepVectors(vectors);
+    }
+
+    private static String floats(float[] values)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (float value : values)
+            sb.append(Float.toString(value)).append(";");
+
+        return sb.toString();
+    }
+
+    private static float[] parseFloats(String line)
+    {
+        String[] parts = line.split(";");
+        float[] values = new float[parts.length];
+        for (int i = 0; i < parts.length; i++)
+            values[i] = Float.parseFloat(parts[i]);
+
+        return values;
+    }
+
+    @Override
+    public void write(ModelWriter writer) throws IOException
+    {
+        writer.writeString(identifier);
+        writer.writeInt(projectedDimension);
+        writer.writeInt(subspaces);
+        writer.writeInt(nprobe);
+        writer.writeInt(rerank);
+        writer.writeInt(dimension);
+        writer.writeFloats(centroids);
+        for (float[] codebook : codebooks)
+            writer.writeFloats(codebook);
+        writer.writeInts(listStarts);
+        writer.writeInts(listIds);
+        writer.writeBytes(codes);
+    }
+
+    @Override
+    public void read(ModelReader reader, SparseVector[] vectors, int dimension)
+    {
+        projectedDimension = reader.readInt();
+        subspaces = reader.readInt();
+        nprobe = reader.readInt();
+        rerank = reader.readInt();
+        this.dimension = reader.readInt();
+        centroids = reader.readFloats();
+        codebooks = new float[subspaces][];
+        for (int m = 0; m < subspaces; m++)
+            codebooks[m] = reader.readFloats();
+        listStarts = reader.readInts();
+        listIds = reader.readInts();
+        codes = reader.readBytes();
+
+        keepVectors(vectors);
+    }
+
+    /**
+     * Buffers of one search
+     */
+    private class Scratch
+    {
+        /** Projected query */
+        private final float[] query = new float[projectedDimension];
+
+        /** Products of the query with the codewords */
+        private final float[] table = new float[subspaces * CODEWORDS];
+
+        /** Lists to probe */
+        private final TopK probes = new TopK(0);
+
+        /** Candidates to re-rank */
+        private final TopK candidates = new TopK(0);
+    }
+}
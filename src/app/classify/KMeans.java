@@ -1,37 +1,918 @@
 package app.classify;
 
-import app.parametrize.IParametrizer;
+import app.Logger;
+import app.ModelReader;
+import app.ModelWriter;
+import app.SparseVector;
+import app.TrainingSet;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
+import java.util.function.IntToDoubleFunction;
+import java.util.stream.IntStream;
 
 /**
  * K-means clustering
- * Training data is clustered into K classes (number of classes loaded from the classes file)
- * Then
+ * Training vectors are clustered into K clusters, by default as many as there are classes, and each cluster is
+ * labelled by the majority class of its vectors. A vector is classified by the label of its nearest centroid,
+ * so classification costs K sparse dot products whatever the number of training vectors
+ * With the cosine metric vectors and centroids are normalized (spherical k-means), otherwise distances are euclidean
+ * Clusters are seeded by greedy k-means++ and refined by Lloyd iterations over all vectors or over random mini-batches
+ * Mini-batches bound the work of an iteration, not memory - the training vectors are all held by TrainingSet
  */
 public class KMeans implements IClassifier
 {
+    /** Points assigned in parallel above this count */
+    private static final int PARALLEL_POINTS = 4096;
+
+    /** Default maximum number of iterations */
+    public static final int DEFAULT_ITERATIONS = 100;
+
+    /** Default convergence threshold - squared centroid movement relative to the squared centroid norms */
+    public static final double DEFAULT_TOLERANCE = 1e-4;
+
+    /** Seed of the random generator, training is repeatable */
+    private static final long SEED = 42;
+
+    /** Class labels */
+    private String[] classes;
+
+    /** Cosine or euclidean */
+    private Metric metric;
+
+    /** Requested number of clusters, 0 for the number of classes */
+    private int clusterCount;
+
+    /** Vectors in a mini-batch, 0 for Lloyd iterations over all vectors */
+    private int batchSize;
+
+    /** Maximum number of iterations, each over all vectors or over one mini-batch */
+    private int iterations;
+
+    /** Iterations stop once the centroids move less than this */
+    private double tolerance;
+
+    /** Dimension of the vectors */
+    private int dimension;
+
+    /** Centroids, centroid c occupies [c * dimension, (c + 1) * dimension) */
+    private double[] centroids;
+
+    /** Squared norms of the centroids */
+    private double[] centroidNorms;
+
+    /** Share of each class in the labels of each cluster's vectors, row-major clusters x classes */
+    private double[] clusterShares;
+
+    /** Class index of each cluster - its class with the highest share */
+    private int[] clusterClasses;
+
+    public static String identifier = "kmeans";
+
+    public KMeans() {}
+
+    /**
+     * @param clusterCount number of clusters, 0 for the number of classes
+     * @param metric cosine or euclidean
+     * @param batchSize vectors in a mini-batch, 0 for Lloyd iterations over all vectors
+     */
+    public KMeans(int clusterCount, Metric metric, int batchSize)
+    {
+        this(clusterCount, metric, batchSize, DEFAULT_ITERATIONS, DEFAULT_TOLERANCE);
+    }
+
+    /**
+     * @param clusterCount number of clusters, 0 for the number of classes
+     * @param metric cosine or euclidean
+     * @param batchSize vectors in a mini-batch, 0 for Lloyd iterations over all vectors
+     * @param iterations maximum number of iterations
+     * @param tolerance convergence threshold
+     */
+    public KMeans(int clusterCount, Metric metric, int batchSize, int iterations, double tolerance)
+    {
+        if (clusterCount < 0 || batchSize < 0 || iterations < 1 || tolerance < 0 || metric == Metric.MANHATTAN)
+            throw new IllegalArgumentException("Invalid k-means parameters");
+
+        this.clusterCount = clusterCount;
+        this.metric = metric;
+        this.batchSize = batchSize;
+        this.iterations = iterations;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Clusters dense points by Lloyd iterations from greedy k-means++ seeds, minimizing squared euclidean distances
+     * Stops when no point changes its cluster or after the given number of iterations
+     * Empty clusters are moved to the point farthest from its centroid
+     * @param points points, point i occupies [i * dimension, (i + 1) * dimension)
+     * @param dimension dimension of the points
+     * @param k number of clusters, at most the number of points
+     * @param iterations maximum number of iterations
+     * @param random random generator for seeding
+     * @return centroids, centroid c occupies [c * dimension, (c + 1) * dimension)
+     */
+    public static float[] cluster(float[] points, int dimension, int k, int iterations, Random random)
+    {
+        int count = points.length / dimension;
+        float[] centroids = seed(points, dimension, k, random);
+        int[] assignment = new int[count];
+        Arrays.fill(assignment, -1);
+
+        for (int iteration = 0; iteration < iterations; iteration++)
+        {
+            // Assignment step, the only one proportional to count * k
+            boolean changed = range(count).map(i ->
+            {
+                int nearest = nearest(centroids, dimension, points, i * dimension);
+                int previous = assignment[i];
+                assignment[i] = nearest;
+                return nearest != previous ? 1 : 0;
+            }).sum() > 0;
+
+            if (!changed)
+                break;
+
+            // Update step
+            double[] sums = new double[k * dimension];
+            int[] sizes = new int[k];
+            for (int i = 0; i < count; i++)
+            {
+                int c = assignment[i];
+                sizes[c]++;
+                for (int j = 0; j < dimension; j++)
+                    sums[c * dimension + j] += points[i * dimension + j];
+            }
+
+            for (int c = 0; c < k; c++)
+            {
+                if (sizes[c] == 0)
+                {
+                    int farthest = farthest(points, dimension, centroids, assignment);
+                    System.arraycopy(points, farthest * dimension, centroids, c * dimension, dimension);
+                    assignment[farthest] = c;
+                    continue;
+                }
+
+                for (int j = 0; j < dimension; j++)
+                    centroids[c * dimension + j] = (float) (sums[c * dimension + j] / sizes[c]);
+            }
+        }
+
+        return centroids;
+    }
+
+    /**
+     * Chooses greedy k-means++ seeds among the points
+     * @param points points
+     * @param dimension dimension of the points
+     * @param k number of seeds
+     * @param random random generator
+     * @return seeds as centroids
+     */
+    private static float[] seed(float[] points, int dimension, int k, Random random)
+    {
+        float[] centroids = new float[k * dimension];
+        int[] seeds = greedySeeds(points.length / dimension, k,
+                seed -> i -> squaredDistance(points, i * dimension, points, seed * dimension, dimension), random);
+        for (int c = 0; c < k; c++)
+            System.arraycopy(points, seeds[c] * dimension, centroids, c * dimension, dimension);
+
+        return centroids;
+    }
+
+    /**
+     * Chooses greedy k-means++ seeds - for each next seed a few points are drawn with probability proportional to
+     * their squared distance from the nearest seed chosen so far, and the one lowering the sum of these distances
+     * the most is kept. Plain k-means++ often puts two seeds into one cluster
+     * @param count number of points
+     * @param k number of seeds, at most count
+     * @param distancesFrom squared distances of the points from a point, by the point indexes, valid until the next call
+     * @param random random generator
+     * @return indexes of the seed points
+     */
+    private static int[] greedySeeds(int count, int k, IntFunction<IntToDoubleFunction> distancesFrom, Random random)
+    {
+        int[] seeds = new int[k];
+        if (k == 0)
+            return seeds;
+
+        int trials = 2 + (int) Math.log(k);
+        // Distances to the seeds so far, with the best trial seed and with the current trial seed
+        double[] distances = new double[count];
+        double[] bestDistances = new double[count];
+        double[] trialDistances = new double[count];
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+
+        int chosen = random.nextInt(count);
+        for (int c = 0; c < k; c++)
+        {
+            double total = 0;
+            for (double d : distances)
+                total += d;
+
+            // The first seed is uniform, so is any seed once all points coincide with seeds
+            double best = Double.POSITIVE_INFINITY;
+            for (int trial = 0; trial < (c == 0 ? 1 : trials); trial++)
+            {
+                int candidate = c == 0 ? chosen : total == 0 ? random.nextInt(count) : draw(distances, total, random);
+
+                IntToDoubleFunction distance = distancesFrom.apply(candidate);
+                double[] current = distances, into = trialDistances;
+                range(count).forEach(i -> into[i] = Math.min(current[i], distance.applyAsDouble(i)));
+
+                double potential = Arrays.stream(into).sum();
+                if (potential < best)
+                {
+                    best = potential;
+                    trialDistances = bestDistances;
+                    bestDistances = into;
+                    chosen = candidate;
+                }
+            }
+
+            seeds[c] = chosen;
+            double[] previous = distances;
+            distances = bestDistances;
+            bestDistances = previous;
+        }
+
+        return seeds;
+    }
+
+    /**
+     * Returns the centroid nearest to a point
+     * @param centroids centroids
+     * @param dimension dimension of the points
+     * @param points array holding the point
+     * @param offset start of the point
+     * @return centroid index
+     */
+    public static int nearest(float[] centroids, int dimension, float[] points, int offset)
+    {
+        int nearest = 0;
+        double best = Double.POSITIVE_INFINITY;
+        for (int c = 0; c < centroids.length / dimension; c++)
+        {
+            double distance = squaredDistance(points, offset, centroids, c * dimension, dimension);
+            if (distance < best)
+            {
+                best = distance;
+                nearest = c;
+            }
+        }
+
+        return nearest;
+    }
+
+    /**
+     * Returns the point farthest from its assigned centroid
+     * @return point index
+     */
+    private static int farthest(float[] points, int dimension, float[] centroids, int[] assignment)
+    {
+        int farthest = 0;
+        double best = -1;
+        for (int i = 0; i < assignment.length; i++)
+        {
+            double distance = squaredDistance(points, i * dimension, centroids, assignment[i] * dimension, dimension);
+            if (distance > best)
+            {
+                best = distance;
+                farthest = i;
+            }
+        }
+
+        return farthest;
+    }
+
+    /**
+     * Returns stream of point indexes, parallel for many points
+     * @param count number of points
+     * @return stream
+     */
+    private static IntStream range(int count)
+    {
+        IntStream range = IntStream.range(0, count);
+        return count >= PARALLEL_POINTS ? range.parallel() : range;
+    }
+
+    private static double squaredDistance(float[] a, int aOffset, float[] b, int bOffset, int dimension)
+    {
+        double sum = 0;
+        for (int j = 0; j < dimension; j++)
+        {
+            double difference = a[aOffset + j] - b[bOffset + j];
+            sum += difference * difference;
+        }
+
+        return sum;
+    }
+
+    /**
+     * Classifies the vector by the label of its nearest centroid
+     * @param vector vector
+     * @return class
+     */
     @Override
-    public String classify(double[] vector)
+    public String classify(SparseVector vector)
     {
-        return null;
+        if (clusterClasses.length == 0)
+            return classes[0];
+
+        return classes[clusterClasses[nearestCentroid(vector)]];
     }
 
+    /**
+     * Writes the class shares of the nearest cluster
+     * @param vector vector
+     * @param scores array of getClasses().length scores, overwritten
+     */
     @Override
-    public void train(IParametrizer parametrizer)
+    public void score(SparseVector vector, double[] scores)
     {
-        return;
+        if (clusterClasses.length == 0)
+        {
+            Arrays.fill(scores, 1.0 / scores.length);
+            return;
+        }
+
+        System.arraycopy(clusterShares, nearestCentroid(vector) * classes.length, scores, 0, classes.length);
     }
 
+    @Override
+    public String[] getClasses()
+    {
+        return classes;
+    }
+
+    /**
+     * Returns the cluster nearest to a vector - with |c|^2 - 2 x.c, |x|^2 is the same for all clusters
+     * Normalized centroids make it the most cosine-similar cluster too
+     * @param vector vector
+     * @return cluster index
+     */
+    private int nearestCentroid(SparseVector vector)
+    {
+        int nearest = 0;
+        double best = Double.POSITIVE_INFINITY;
+        for (int c = 0; c < centroidNorms.length; c++)
+        {
+            double dot = 0;
+            int offset = c * dimension;
+            for (int i = 0; i < vector.indexes.length; i++)
+                dot += vector.values[i] * centroids[offset + vector.indexes[i]];
+
+            double distance = centroidNorms[c] - 2 * dot;
+            if (distance < best)
+            {
+                best = distance;
+                nearest = c;
+            }
+        }
+
+        return nearest;
+    }
+
+    @Override
+    public void train(TrainingSet trainingSet)
+    {
+        classes = trainingSet.classes;
+        dimension = trainingSet.vectorLength;
+
+        SparseVector[] points = trainingSet.vectors;
+        if (metric == Metric.COSINE)
+            points = Arrays.stream(points).map(KMeans::normalize).toArray(SparseVector[]::new);
+
+        int k = Math.min(clusterCount > 0 ? clusterCount : classes.length, points.length);
+        Random random = new Random(SEED);
+
+        // Mini-batches are seeded from a sample, so that seeding does not pass over all vectors k times
+        int[] candidates = batchSize > 0 && batchSize < points.length
+                ? batch(points.length, Math.max(batchSize, k), random) : IntStream.range(0, points.length).toArray();
+
+        Logger.info("Seeding " + k + " clusters");
+        seedCentroids(points, candidates, k, random);
+
+        int[] assignment = new int[points.length];
+        Arrays.fill(assignment, -1);
+        Accumulator[] accumulators = accumulators(points.length, k);
+        if (batchSize > 0)
+            miniBatches(points, k, random);
+        else
+            lloyd(points, assignment, accumulators);
+
+        // Class shares of each cluster, clusters without labelled vectors take the shares overall
+        assign(points, IntStream.range(0, points.length).toArray(), assignment, accumulators);
+        double[][] classCounts = new double[k][classes.length];
+        double[] totals = new double[classes.length];
+        for (int i = 0; i < points.length; i++)
+        {
+            for (int c : trainingSet.documentClasses[i])
+            {
+                classCounts[assignment[i]][c]++;
+                totals[c]++;
+            }
+        }
+
+        clusterShares = new double[k * classes.length];
+        for (int c = 0; c < k; c++)
+        {
+            double[] counts = Arrays.stream(classCounts[c]).sum() > 0 ? classCounts[c] : totals;
+            double sum = Arrays.stream(counts).sum();
+            for (int j = 0; j < classes.length; j++)
+                clusterShares[c * classes.length + j] = sum > 0 ? counts[j] / sum : 1.0 / classes.length;
+        }
+        labelClusters();
+    }
+
+    /**
+     * Labels each cluster by its class with the highest share, the first one on ties
+     */
+    private void labelClusters()
+    {
+        clusterClasses = new int[clusterShares.length / classes.length];
+        for (int c = 0; c < clusterClasses.length; c++)
+        {
+            for (int j = 1; j < classes.length; j++)
+                if (clusterShares[c * classes.length + j] > clusterShares[c * classes.length + clusterClasses[c]])
+                    clusterClasses[c] = j;
+        }
+    }
+
+    /**
+     * Lloyd iterations - all vectors are assigned to their nearest centroids, then centroids move to the means
+     * Stops when no vector changes its cluster, when the centroids move less than the tolerance or after the
+     * maximum number of iterations. An empty cluster moves to the vector farthest from its centroid
+     * @param points vectors
+     * @param assignment cluster of each vector, filled
+     * @param accumulators accumulators for all vectors, reused by every iteration
+     */
+    private void lloyd(SparseVector[] points, int[] assignment, Accumulator[] accumulators)
+    {
+        int k = centroidNorms.length;
+        int[] all = IntStream.range(0, points.length).toArray();
+        for (int iteration = 0; iteration < iterations; iteration++)
+        {
+            Accumulator accumulator = assign(points, all, assignment, accumulators);
+            if (accumulator.changed == 0)
+                break;
+
+            double shift = moveCentroids(accumulator, null);
+            Logger.info("K-means iteration " + (iteration + 1) + ", " + accumulator.changed + " vectors changed cluster");
+
+            boolean reseeded = false;
+            for (int c = 0; c < k; c++)
+            {
+                if (accumulator.sizes[c] > 0)
+                    continue;
+
+                int farthest = farthest(points, assignment);
+                setCentroid(c, points[farthest]);
+                assignment[farthest] = c;
+                reseeded = true;
+            }
+
+            if (shift <= tolerance && !reseeded)
+                break;
+        }
+    }
+
+    /**
+     * Mini-batch iterations - centroids move towards the means of their vectors in random batches,
+     * by the share of the batch in all vectors the centroid has had so far
+     * Stops when the centroids move less than the tolerance or after the maximum number of iterations
+     * @param points vectors
+     * @param k number of clusters
+     * @param random random generator
+     */
+    private void miniBatches(SparseVector[] points, int k, Random random)
+    {
+        int[] counts = new int[k];
+        int[] assignment = new int[points.length];
+        Accumulator[] accumulators = accumulators(batchSize, k);
+        for (int iteration = 0; iteration < iterations; iteration++)
+        {
+            int[] batch = batch(points.length, batchSize, random);
+            Accumulator accumulator = assign(points, batch, assignment, accumulators);
+            if (moveCentroids(accumulator, counts) <= tolerance)
+                break;
+        }
+    }
+
+    /**
+     * Creates accumulators for assigning vectors - one for few vectors, else one per thread of the common ForkJoinPool
+     * @param count number of vectors assigned at once
+     * @param k number of clusters
+     * @return accumulators
+     */
+    private Accumulator[] accumulators(int count, int k)
+    {
+        int tasks = count >= PARALLEL_POINTS ? Math.max(ForkJoinPool.getCommonPoolParallelism(), 1) : 1;
+        Accumulator[] accumulators = new Accumulator[tasks];
+        for (int t = 0; t < tasks; t++)
+            accumulators[t] = new Accumulator(k, dimension);
+
+        return accumulators;
+    }
+
+    /**
+     * Assigns vectors to their nearest centroids and sums the vectors of each cluster
+     * The vectors are split into one range per accumulator, each range is summed in parallel into its own accumulator
+     * @param points vectors
+     * @param selected indexes of the vectors to assign
+     * @param assignment cluster of each vector, updated for the selected vectors
+     * @param accumulators accumulators, cleared
+     * @return sums of the clusters, the first accumulator
+     */
+    private Accumulator assign(SparseVector[] points, int[] selected, int[] assignment, Accumulator[] accumulators)
+    {
+        int tasks = accumulators.length;
+        IntStream range = IntStream.range(0, tasks);
+        (tasks > 1 ? range.parallel() : range).forEach(t ->
+        {
+            Accumulator accumulator = accumulators[t];
+            accumulator.clear();
+            int to = (int) ((long) selected.length * (t + 1) / tasks);
+            for (int j = (int) ((long) selected.length * t / tasks); j < to; j++)
+            {
+                int i = selected[j];
+                int c = nearestCentroid(points[i]);
+                if (assignment[i] != c)
+                    accumulator.changed++;
+                assignment[i] = c;
+                accumulator.add(c, points[i]);
+            }
+        });
+
+        for (int t = 1; t < tasks; t++)
+            accumulators[0].merge(accumulators[t]);
+
+        return accumulators[0];
+    }
+
+    /**
+     * Returns the vector farthest from its centroid
+     * @param points vectors
+     * @param assignment cluster of each vector
+     * @return vector index
+     */
+    private int farthest(SparseVector[] points, int[] assignment)
+    {
+        double[] distances = new double[points.length];
+        range(points.length).forEach(i -> distances[i] = squaredDistance(points[i], assignment[i]));
+
+        int farthest = 0;
+        for (int i = 1; i < distances.length; i++)
+            if (distances[i] > distances[farthest])
+                farthest = i;
+
+        return farthest;
+    }
+
+    /**
+     * Moves a centroid to a vector
+     * @param c cluster index
+     * @param vector vector
+     */
+    private void setCentroid(int c, SparseVector vector)
+    {
+        Arrays.fill(centroids, c * dimension, (c + 1) * dimension, 0);
+        for (int i = 0; i < vector.indexes.length; i++)
+            centroids[c * dimension + vector.indexes[i]] = vector.values[i];
+        centroidNorms[c] = vector.dot(vector);
+    }
+
+    /**
+     * Moves each centroid with vectors towards their mean
+     * @param accumulator sums of the clusters
+     * @param counts vectors each cluster has had in previous mini-batches, updated, null to move to the means
+     * @return squared movement of the centroids relative to their squared norms
+     */
+    private double moveCentroids(Accumulator accumulator, int[] counts)
+    {
+        double shift = 0, norms = 0;
+        double[] centroid = new double[dimension];
+        for (int c = 0; c < centroidNorms.length; c++)
+        {
+            int size = accumulator.sizes[c];
+            int offset = c * dimension;
+            if (size > 0)
+            {
+                double weight = 1;
+                if (counts != null)
+                {
+                    counts[c] += size;
+                    weight = (double) size / counts[c];
+                }
+
+                for (int j = 0; j < dimension; j++)
+                {
+                    double old = centroids[offset + j];
+                    centroid[j] = old + weight * (accumulator.sums[offset + j] / size - old);
+                }
+
+                if (metric == Metric.COSINE)
+                    scale(centroid, Math.sqrt(squaredNorm(centroid)));
+
+                for (int j = 0; j < dimension; j++)
+                {
+                    double difference = centroid[j] - centroids[offset + j];
+                    shift += difference * difference;
+                }
+                System.arraycopy(centroid, 0, centroids, offset, dimension);
+            }
+
+            centroidNorms[c] = squaredNorm(Arrays.copyOfRange(centroids, offset, offset + dimension));
+            norms += centroidNorms[c];
+        }
+
+        return norms == 0 ? 0 : shift / norms;
+    }
+
+    /**
+     * Chooses greedy k-means++ seeds among candidate vectors
+     * @param points vectors
+     * @param candidates indexes of the candidate vectors
+     * @param k number of seeds
+     * @param random random generator
+     */
+    private void seedCentroids(SparseVector[] points, int[] candidates, int k, Random random)
+    {
+        centroids = new double[k * dimension];
+        centroidNorms = new double[k];
+
+        double[] norms = new double[candidates.length];
+        for (int i = 0; i < candidates.length; i++)
+            norms[i] = points[candidates[i]].dot(points[candidates[i]]);
+
+        // Each trial seed is scattered into one dense buffer, so that distances take sparse x dense products
+        double[] dense = new double[dimension];
+        int[] scattered = {-1};
+        int[] seeds = greedySeeds(candidates.length, k, seed ->
+        {
+            if (scattered[0] >= 0)
+                for (int index : points[candidates[scattered[0]]].indexes)
+                    dense[index] = 0;
+            SparseVector vector = points[candidates[seed]];
+            for (int i = 0; i < vector.indexes.length; i++)
+                dense[vector.indexes[i]] = vector.values[i];
+            scattered[0] = seed;
+
+            return i ->
+            {
+                SparseVector point = points[candidates[i]];
+                double dot = 0;
+                for (int j = 0; j < point.indexes.length; j++)
+                    dot += point.values[j] * dense[point.indexes[j]];
+
+                return Math.max(0, norms[i] + norms[seed] - 2 * dot);
+            };
+        }, random);
+        for (int c = 0; c < k; c++)
+            setCentroid(c, points[candidates[seeds[c]]]);
+    }
+
+    /**
+     * Draws an index with probability proportional to its weight
+     * @param weights weights
+     * @param total sum of the weights
+     * @param random random generator
+     * @return index
+     */
+    private static int draw(double[] weights, double total, Random random)
+    {
+        double target = random.nextDouble() * total;
+        for (int i = 0; i < weights.length; i++)
+        {
+            target -= weights[i];
+            if (target < 0)
+                return i;
+        }
+
+        return weights.length - 1;
+    }
+
+    /**
+     * Returns squared euclidean distance of a vector from a centroid
+     * @param vector vector
+     * @param c cluster index
+     * @return squared distance
+     */
+    private double squaredDistance(SparseVector vector, int c)
+    {
+        double dot = 0;
+        for (int i = 0; i < vector.indexes.length; i++)
+            dot += vector.values[i] * centroids[c * dimension + vector.indexes[i]];
+
+        return Math.max(0, vector.dot(vector) + centroidNorms[c] - 2 * dot);
+    }
+
+    /**
+     * Returns random vector indexes, drawn with replacement
+     * @param count number of vectors
+     * @param size number of indexes
+     * @param random random generator
+     * @return indexes
+     */
+    private static int[] batch(int count, int size, Random random)
+    {
+        int[] batch = new int[size];
+        for (int i = 0; i < size; i++)
+            batch[i] = random.nextInt(count);
+
+        return batch;
+    }
+
+    private static SparseVector normalize(SparseVector vector)
+    {
+        double[] values = vector.values.clone();
+        scale(values, Math.sqrt(vector.dot(vector)));
+
+        return new SparseVector(vector.indexes, values, vector.dimension);
+    }
+
+    private static void scale(double[] values, double norm)
+    {
+        if (norm == 0)
+            return;
+
+        for (int i = 0; i < values.length; i++)
+            values[i] /= norm;
+    }
+
+    private static double squaredNorm(double[] values)
+    {
+        double sum = 0;
+        for (double value : values)
+            sum += value * value;
+
+        return sum;
+    }
+
+    /**
+     * Sums of the vectors assigned to each cluster by one thread
+     */
+    private static class Accumulator
+    {
+        /** Sum of cluster c occupies [c * dimension, (c + 1) * dimension) */
+        private final double[] sums;
+
+        /** Number of vectors of each cluster */
+        private final int[] sizes;
+
+        private final int dimension;
+
+        /** Vectors assigned to another cluster than before */
+        private int changed;
+
+        private Accumulator(int k, int dimension)
+        {
+            sums = new double[k * dimension];
+            sizes = new int[k];
+            this.dimension = dimension;
+        }
+
+        private void clear()
+        {
+            Arrays.fill(sums, 0);
+            Arrays.fill(sizes, 0);
+            changed = 0;
+        }
+
+        private void add(int c, SparseVector vector)
+        {
+            sizes[c]++;
+            for (int i = 0; i < vector.indexes.length; i++)
+                sums[c * dimension + vector.indexes[i]] += vector.values[i];
+        }
+
+        /**
+         * Adds sums of another accumulator, components in parallel
+         * @param other accumulator
+         */
+        private void merge(Accumulator other)
+        {
+            range(sums.length).forEach(i -> sums[i] += other.sums[i]);
+            for (int c = 0; c < sizes.length; c++)
+                sizes[c] += other.sizes[c];
+
+            changed += other.changed;
+        }
+    }
+
+    /**
+     * Exports the classifier as a list of lines
+     * Centroids are exported as index:value pairs of their non-zero components
+     * @return lines to export
+     */
     @Override
     public List<String> export()
     {
-        return null;
+        List<String> lines = new ArrayList<>();
+        lines.add("**_classifier:" + identifier);
+        lines.add("**_classes:");
+        lines.add(String.join(";", classes) + ";");
+        lines.add("**_metric:" + metric.identifier);
+        lines.add("**_dimension:" + dimension);
+
+        lines.add("**_clusters:" + clusterClasses.length);
+
+        lines.add("**_class_shares:");
+        for (int c = 0; c < clusterClasses.length; c++)
+        {
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < classes.length; j++)
+                sb.append(Double.toString(clusterShares[c * classes.length + j])).append(";");
+            lines.add(sb.toString());
+        }
+
+        lines.add("**_centroids:");
+        for (int c = 0; c < clusterClasses.length; c++)
+        {
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < dimension; j++)
+            {
+                double value = centroids[c * dimension + j];
+                if (value != 0)
+                    sb.append(j).append(":").append(Double.toString(value)).append(";");
+            }
+            lines.add(sb.toString());
+        }
+
+        return lines;
     }
 
+    /**
+     * Loads and initializes the classifier
+     * @param lines lines written by export
+     */
     @Override
     public void load(List<String> lines)
     {
-        return;
+        classes = lines.get(2).split(";");
+        metric = Metric.forIdentifier(lines.get(3).split(":")[1]);
+        dimension = Integer.parseInt(lines.get(4).split(":")[1]);
+        int k = Integer.parseInt(lines.get(5).split(":")[1]);
+
+        clusterShares = new double[k * classes.length];
+        for (int c = 0; c < k; c++)
+        {
+            String[] shares = lines.get(7 + c).split(";");
+            for (int j = 0; j < classes.length; j++)
+                clusterShares[c * classes.length + j] = Double.parseDouble(shares[j]);
+        }
+        labelClusters();
+
+        centroids = new double[k * dimension];
+        for (int c = 0; c < k; c++)
+        {
+            String line = lines.get(8 + k + c);
+            for (String pair : line.isEmpty() ? new String[0] : line.split(";"))
+            {
+                int colon = pair.indexOf(':');
+                centroids[c * dimension + Integer.parseInt(pair.substring(0, colon))] = Double.parseDouble(pair.substring(colon + 1));
+            }
+        }
+        computeNorms();
+    }
+
+    @Override
+    public void write(ModelWriter writer) throws IOException
+    {
+        writer.writeString(identifier);
+        writer.writeStrings(classes);
+        writer.writeString(metric.identifier);
+        writer.writeInt(dimension);
+        writer.writeDoubles(clusterShares);
+        writer.writeDoubles(centroids);
+    }
+
+    /**
+     * Reads the classifier written by write
+     * Identifier is expected to be read already
+     * @param reader reader
+     */
+    @Override
+    public void read(ModelReader reader)
+    {
+        classes = reader.readStrings();
+        metric = Metric.forIdentifier(reader.readString());
+        dimension = reader.readInt();
+        clusterShares = reader.readDoubles();
+        labelClusters();
+        centroids = reader.readDoubles();
+        computeNorms();
+    }
+
+    private void computeNorms()
+    {
+        centroidNorms = new double[clusterClasses.length];
+        for (int c = 0; c < clusterClasses.length; c++)
+            centroidNorms[c] = squaredNorm(Arrays.copyOfRange(centroids, c * dimension, (c + 1) * dimension));
     }
 }
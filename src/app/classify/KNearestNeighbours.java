@@ -1,13 +1,13 @@
 package app.classify;
 
-import app.Document;
-import app.LibraryMethods;
 import app.Logger;
-import app.Settings;
-import app.parametrize.IParametrizer;
+import app.ModelReader;
+import app.ModelWriter;
+import app.SparseVector;
+import app.TrainingSet;
 
+import java.io.IOException;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Implementation of supervised K-NN algorithm
@@ -15,7 +15,13 @@ import java.util.stream.Collectors;
 public class KNearestNeighbours implements IClassifier
 {
     /** All training vectors */
-    private double[][] vectors;
+    private SparseVector[] vectors;
+
+    /** Dimension of the training vectors */
+    private int dimension;
+
+    /** Finds the nearest training vectors */
+    private INeighbourIndex index;
 
     /** Class indexes for each vector */
     private int[][] vectorClasses;
@@ -26,108 +32,152 @@ public class KNearestNeighbours implements IClassifier
     /** K */
     private int K;
 
+    /** Search and vote buffers, by thread */
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
     public static String identifier = "knn";
 
     public KNearestNeighbours() {}
 
     public KNearestNeighbours(int k)
+    {
+        this(k, new ExactIndex());
+    }
+
+    public KNearestNeighbours(int k, INeighbourIndex index)
     {
         K = k;
+        this.index = index;
     }
 
+    public INeighbourIndex getIndex()
+    {
+        return index;
+    }
+
+    /**
+     * Classifies the vector by similarity-weighted vote of its K most similar training vectors
+     * @param vector vector
+     * @return class
+     */
     @Override
-    public String classify(double[] vector)
+    public String classify(SparseVector vector)
+    {
+        Scratch s = scratch.get();
+        s.nearest.reset(K);
+        index.search(vector, s.nearest);
+        return decide(s, s.nearest.sortDescending());
+    }
+
+    /**
+     * Classifies the vector once for each of several values of K
+     * The most similar training vectors are searched once, for the largest K, each K votes with their prefix
+     * @param vector vector
+     * @param neighbourCounts values of K
+     * @return class for each value of K
+     */
+    public String[] classify(SparseVector vector, int[] neighbourCounts)
     {
-        HashMap<Integer, Double> distances = new HashMap<>();
+        Scratch s = scratch.get();
+        s.nearest.reset(Arrays.stream(neighbourCounts).max().orElse(K));
+        index.search(vector, s.nearest);
+        int count = s.nearest.sortDescending();
 
-        for (int i = 0; i < vectors.length; i++)
-        {
-            distances.put(i, cosineSimilarity(vector, vectors[i]));
-        }
+        String[] results = new String[neighbourCounts.length];
+        for (int i = 0; i < neighbourCounts.length; i++)
+            results[i] = decide(s, Math.min(count, neighbourCounts[i]));
 
-        Map<Integer, Double> sorted = distances.entrySet().stream()
-                .sorted(Map.Entry.comparingByValue())
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (e1, e2) -> e1, HashMap::new));
+        return results;
+    }
 
-        int i = 0;
-        int[] classOccurrences = new int[classes.length];
-        for (Map.Entry<Integer, Double> e : sorted.entrySet())
+    /**
+     * Returns the class with the most votes of the nearest vectors, plain counts break ties
+     * @param s buffers holding the nearest vectors sorted from the most similar
+     * @param count number of the nearest vectors voting
+     * @return class
+     */
+    private String decide(Scratch s, int count)
+    {
+        if (s.votes.length != classes.length)
         {
-            if (i == K) break;
-            for (int j = 0; j < vectorClasses[e.getKey()].length; j++)
-            {
-                classOccurrences[vectorClasses[e.getKey()][j]] += 1 / (e.getValue() + 1);
-            }
+            s.votes = new double[classes.length];
+            s.counts = new int[classes.length];
         }
+        double[] classVotes = s.votes;
+        int[] classCounts = s.counts;
+        Arrays.fill(classVotes, 0);
+        Arrays.fill(classCounts, 0);
+        vote(s.nearest, count, classVotes, classCounts);
 
-        double maxValue = -1;
-        int maxIndex = -1;
-        for (i = 0; i < classOccurrences.length; i++)
+        int maxIndex = 0;
+        for (int i = 1; i < classVotes.length; i++)
         {
-            if (maxValue < classOccurrences[i])
+            if (classVotes[i] > classVotes[maxIndex]
+                    || (classVotes[i] == classVotes[maxIndex] && classCounts[i] > classCounts[maxIndex]))
             {
-                maxValue = classOccurrences[i];
                 maxIndex = i;
             }
         }
 
         return classes[maxIndex];
+    }
 
-        /*
-        // Calculate all distances
-        double[] distances = new double[vectors.length];
-        for (int i = 0; i < vectors.length; i++)
-        {
-            double[] otherVector = vectors[i];
-            distances[i] = cosineSimilarity(vector, otherVector);
-        }
+    /**
+     * Writes each class's share of the weighted votes of the K most similar training vectors
+     * Classes share equally when no neighbour has a weight
+     * @param vector vector
+     * @param scores array of getClasses().length scores, overwritten
+     */
+    @Override
+    public void score(SparseVector vector, double[] scores)
+    {
+        Arrays.fill(scores, 0);
+        TopK nearest = scratch.get().nearest;
+        nearest.reset(K);
+        index.search(vector, nearest);
+        vote(nearest, nearest.sortDescending(), scores, null);
 
-        // Get indexes of K smallest distances
-        int[] smallestDistanceIndexes = new int[K];
-        for (int i = 0; i < K; i++)
-        {
-            double minValue = Double.POSITIVE_INFINITY;
-            int minIndex = -1;
-            for (int j = 0; j < distances.length; j++)
-            {
-                if (minValue > distances[j])
-                {
-                    minValue = distances[j];
-                    minIndex = j;
-                }
-            }
-            smallestDistanceIndexes[i] = minIndex;
-            try {
-                distances[minIndex] = Double.POSITIVE_INFINITY;
-            }
-            catch (ArrayIndexOutOfBoundsException e) {
-                int a = 0;
-            }
-        }
+        double sum = 0;
+        for (double score : scores)
+            sum += score;
+        for (int i = 0; i < scores.length; i++)
+            scores[i] = sum > 0 ? scores[i] / sum : 1.0 / scores.length;
+    }
 
-        // Count all occurrences for each class
-        int[] classesCounts = new int[classes.length];
-        for (int i = 0; i < smallestDistanceIndexes.length; i++)
-        {
-            for (int j = 0; j < vectorClasses[i].length; j++)
-            {
-                classesCounts[vectorClasses[i][j]] += 1 / distances[i] + 1;
-            }
-        }
+    @Override
+    public String[] getClasses()
+    {
+        return classes;
+    }
 
-        // Select the maximum
-        int maxIndex = 0;
-        int maxCount = 0;
-        for (int i = 0; i < classesCounts.length; i++)
+    /**
+     * Adds votes of the nearest training vectors, each for all its classes
+     * A neighbour votes with its similarity. With negative scores - negated distances or opposite directions -
+     * each neighbour votes with its position between the farthest neighbour (weight 0) and the nearest one (weight 1)
+     * @param nearest nearest vectors sorted from the most similar
+     * @param count number of the nearest vectors voting
+     * @param classVotes votes of each class, added to
+     * @param classCounts number of neighbours of each class, added to, or null
+     */
+    private void vote(TopK nearest, int count, double[] classVotes, int[] classCounts)
+    {
+        if (count == 0)
+            return;
+
+        double highest = nearest.score(0), lowest = nearest.score(count - 1);
+        for (int i = 0; i < count; i++)
         {
-            if (maxCount < classesCounts[i])
+            double weight = nearest.score(i);
+            if (lowest < 0)
+                weight = highest == lowest ? 1 : (weight - lowest) / (highest - lowest);
+
+            for (int c : vectorClasses[nearest.id(i)])
             {
-                maxCount = classesCounts[i];
-                maxIndex = i;
+                classVotes[c] += weight;
+                if (classCounts != null)
+                    classCounts[c]++;
             }
         }
-
-        return classes[maxIndex];*/
     }
 
     /**
@@ -147,14 +197,16 @@ public class KNearestNeighbours implements IClassifier
         lines.add(sb.toString());
 
         lines.add("**_k:" + K);
+        lines.add("**_dimension:" + dimension);
 
+        // Vectors are exported as index:value pairs of their non-zero components
         lines.add("**_vectors:");
-        for (double[] vector : vectors)
+        for (SparseVector vector : vectors)
         {
             sb = new StringBuilder();
-            for (int i = 0; i < vector.length; i++)
+            for (int i = 0; i < vector.indexes.length; i++)
             {
-                sb.append(Double.toString(vector[i])).append(";");
+                sb.append(vector.indexes[i]).append(":").append(Double.toString(vector.values[i])).append(";");
             }
             lines.add(sb.toString());
         }
@@ -172,6 +224,8 @@ public class KNearestNeighbours implements IClassifier
             lines.add(sb.toString());
         }
 
+        lines.addAll(index.export());
+
         return lines;
     }
 
@@ -188,36 +242,40 @@ public class KNearestNeighbours implements IClassifier
         // get K
         K = Integer.parseInt(lines.get(3).split(":")[1]);
 
-        // On line 5 vectors start
-        int i = 5;
+        // get dimension
+        dimension = Integer.parseInt(lines.get(4).split(":")[1]);
+
+        // On line 6 vectors start
+        int i = 6;
         String s = lines.get(i);
-        ArrayList<ArrayList<Double>> vecs = new ArrayList<>();
+        ArrayList<SparseVector> vecs = new ArrayList<>();
         while (!s.equals("**_vector_classes:"))
         {
-            // Split vectors
-            String[] vals = s.split(";");
-            vecs.add(new ArrayList<>());
+            // Split vectors into index:value pairs
+            String[] vals = s.isEmpty() ? new String[0] : s.split(";");
+            int[] indexes = new int[vals.length];
+            double[] values = new double[vals.length];
             for (int j = 0; j < vals.length; j++)
             {
-                vecs.get(i - 5).add(Double.parseDouble(vals[j]));
+                int colon = vals[j].indexOf(':');
+                indexes[j] = Integer.parseInt(vals[j].substring(0, colon));
+                values[j] = Double.parseDouble(vals[j].substring(colon + 1));
             }
+            vecs.add(new SparseVector(indexes, values, dimension));
             i++;
             s = lines.get(i);
         }
 
-        // Convert the arraylists into arrays
-        vectors = new double[vecs.size()][vecs.get(0).size()];
-        for (int j = 0; j < vecs.size(); j++)
-            for (int k = 0; k < vecs.get(0).size(); k++)
-                vectors[j][k] = vecs.get(j).get(k);
+        vectors = new SparseVector[vecs.size()];
+        vecs.toArray(vectors);
 
         i++;
         int j = 0;
         vectorClasses = new int[vectors.length][];
-        while (i < lines.size())
+        while (i < lines.size() && !lines.get(i).startsWith("**_index:"))
         {
             s = lines.get(i);
-            String[] vals = s.split(";");
+            String[] vals = s.isEmpty() ? new String[0] : s.split(";");
             vectorClasses[j] = new int[vals.length];
             for (int k = 0; k < vals.length; k++)
                 vectorClasses[j][k] = Integer.parseInt(vals[k]);
@@ -225,79 +283,133 @@ public class KNearestNeighbours implements IClassifier
             j++;
             i++;
         }
+
+        // Models without an index section use exact search
+        if (i < lines.size())
+        {
+            index = createIndex(lines.get(i).split(":")[1]);
+            index.load(lines.subList(i + 1, lines.size()), vectors, dimension);
+        }
+        else
+        {
+            index = new ExactIndex();
+            index.build(vectors, dimension);
+        }
     }
 
     /**
-     * Calculates N-dimensional euclidean distance between two vectors
-     * @param vector vector
-     * @param otherVector other vector
-     * @return euclidean distance
+     * Writes the classifier in binary format
+     * Vectors are written as one array of offsets and one array each of all indexes and all values
+     * @param writer writer
+     * @throws IOException on write error
      */
-    private double getDistanceNDimensions(double[] vector, double[] otherVector)
+    @Override
+    public void write(ModelWriter writer) throws IOException
     {
-        double sum = 0;
-        for (int i = 0; i < vector.length; i++)
+        writer.writeString(identifier);
+        writer.writeStrings(classes);
+        writer.writeInt(K);
+        writer.writeInt(dimension);
+
+        int[] offsets = new int[vectors.length + 1];
+        for (int i = 0; i < vectors.length; i++)
+            offsets[i + 1] = offsets[i] + vectors[i].indexes.length;
+
+        int[] indexes = new int[offsets[vectors.length]];
+        double[] values = new double[offsets[vectors.length]];
+        for (int i = 0; i < vectors.length; i++)
         {
-            sum += (vector[i] - otherVector[i]) * (vector[i] - otherVector[i]);
+            System.arraycopy(vectors[i].indexes, 0, indexes, offsets[i], vectors[i].indexes.length);
+            System.arraycopy(vectors[i].values, 0, values, offsets[i], vectors[i].values.length);
         }
-        return Math.sqrt(sum);
+
+        writer.writeInts(offsets);
+        writer.writeInts(indexes);
+        writer.writeDoubles(values);
+
+        for (int[] c : vectorClasses)
+            writer.writeInts(c);
+
+        index.write(writer);
     }
 
-    private double getHammingDistance(double[] vector, double[] otherVector)
+    /**
+     * Reads the classifier written by write
+     * Identifier is expected to be read already
+     * @param reader reader
+     */
+    @Override
+    public void read(ModelReader reader)
     {
-        double sum = 0;
-        for (int i = 0; i < vector.length; i++)
-        {
-            sum += Math.abs(vector[i] - otherVector[i]);
-        }
-        return sum;
+        classes = reader.readStrings();
+        K = reader.readInt();
+        dimension = reader.readInt();
+
+        // Each vector is copied straight out of the mapping
+        int[] offsets = reader.readInts();
+        int[][] indexes = reader.readIntSlices(offsets);
+        double[][] values = reader.readDoubleSlices(offsets);
+
+        vectors = new SparseVector[indexes.length];
+        for (int i = 0; i < vectors.length; i++)
+            vectors[i] = new SparseVector(indexes[i], values[i], dimension);
+
+        vectorClasses = new int[vectors.length][];
+        for (int i = 0; i < vectors.length; i++)
+            vectorClasses[i] = reader.readInts();
+
+        index = createIndex(reader.readString());
+        index.read(reader, vectors, dimension);
     }
 
     /**
-     *
-     * @param vector
-     * @param otherVector
-     * @return
+     * Creates an empty index for an identifier
+     * @param identifier index identifier
+     * @return index
      */
-    private double cosineSimilarity(double[] vector, double[] otherVector) {
-        double dotProduct = 0.0;
-        double normA = 0.0;
-        double normB = 0.0;
-        for (int i = 0; i < vector.length; i++) {
-            dotProduct += vector[i] * otherVector[i];
-            normA += Math.pow(vector[i], 2);
-            normB += Math.pow(otherVector[i], 2);
-        }
-        return dotProduct / (Math.sqrt(normA) * Math.sqrt(normB));
+    private static INeighbourIndex createIndex(String identifier)
+    {
+        if (identifier.equals(HnswIndex.identifier))
+            return new HnswIndex();
+        if (identifier.equals(QuantizedIndex.identifier))
+            return new QuantizedIndex();
+        if (identifier.equals(IvfPqIndex.identifier))
+            return new IvfPqIndex();
+        if (identifier.equals(InvertedIndex.identifier))
+            return new InvertedIndex();
+
+        return new ExactIndex();
     }
 
     @Override
-    public void train(IParametrizer parametrizer)
+    public void train(TrainingSet trainingSet)
     {
-        Logger.info("Loading classes");
-        classes = LibraryMethods.loadClassesSorted();
-        Logger.info("Loading documents");
-        Document[] trainDocuments = LibraryMethods.loadDocuments(Settings.trainingSetPath);
-        Logger.info("Parametrizing documents");
-
-        vectors = new double[trainDocuments.length][];
-        vectorClasses = new int[trainDocuments.length][];
-        for (int i = 0; i < vectors.length; i++)
-        {
-            vectors[i] = parametrizer.parametrize(trainDocuments[i]);
-            List<String> documentClasses = trainDocuments[i].classes;
-            List<Integer> validDocumentClasses = new ArrayList<>();
+        classes = trainingSet.classes;
+        dimension = trainingSet.vectorLength;
+        vectors = trainingSet.vectors;
+        vectorClasses = trainingSet.documentClasses;
 
-            for (String clss : documentClasses)
-            {
-                int index = Arrays.binarySearch(classes, clss);
-                if (index >= 0)
-                    validDocumentClasses.add(index);
-            }
+        Logger.info("Building neighbour index");
+        index.build(vectors, dimension);
 
-            vectorClasses[i] = new int[validDocumentClasses.size()];
-            for (int j = 0; j < validDocumentClasses.size(); j++)
-                vectorClasses[i][j] = validDocumentClasses.get(j);
+        // The index has its own copy, the vectors are neither kept nor saved
+        if (!index.needsVectors())
+        {
+            vectors = new SparseVector[vectors.length];
+            Arrays.fill(vectors, new SparseVector(new int[0], new double[0], dimension));
         }
     }
+
+    /**
+     * Buffers of one thread, reused by each classification
+     */
+    private static class Scratch
+    {
+        /** Nearest training vectors */
+        private final TopK nearest = new TopK(0);
+
+        /** Votes and neighbour counts of each class */
+        private double[] votes = new double[0];
+        private int[] counts = new int[0];
+    }
 }
@@ -0,0 +1,40 @@
+package app.classify;
+
+/**
+ * Measure of how close a query is to a training vector
+ * Scores are higher for closer vectors, distances are negated so that TopK keeps the nearest ones
+ */
+public enum Metric
+{
+    /** Cosine similarity */
+    COSINE("cosine"),
+
+    /** Negated euclidean distance */
+    EUCLIDEAN("euclidean"),
+
+    /** Negated sum of absolute differences */
+    MANHATTAN("manhattan");
+
+    /** Name in model files and arguments */
+    public final String identifier;
+
+    Metric(String identifier)
+    {
+        this.identifier = identifier;
+    }
+
+    /**
+     * Returns metric with an identifier
+     * @param identifier identifier
+     * @return metric
+     * @throws IllegalArgumentException if no metric has the identifier
+     */
+    public static Metric forIdentifier(String identifier)
+    {
+        for (Metric metric : values())
+            if (metric.identifier.equals(identifier))
+                return metric;
+
+        throw new IllegalArgumentException("Unknown metric " + identifier);
+    }
+}
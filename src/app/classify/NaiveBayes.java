@@ -1,25 +1,43 @@
 package app.classify;
 
-import app.Document;
 import app.LibraryMethods;
 import app.Logger;
-import app.Settings;
-import app.parametrize.IParametrizer;
+import app.ModelReader;
+import app.ModelWriter;
+import app.SparseVector;
+import app.TrainingSet;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
-public class NaiveBayes implements IClassifier
+/**
+ * Multinomial naive Bayes classifier with Laplace smoothing
+ * Raw class and word counts are kept next to the probabilities, so new documents can be added by update
+ */
+public class NaiveBayes implements IUpdatableClassifier
 {
     /** classification classes */
     private String[] classes;
 
-    /** probabilities of classes - number of class occurrences / number of all class occurrences (meaning potentially higher than document number) */
-    private double[] classProbabilities;
+    /** log probabilities of classes - number of class occurrences / number of all class occurrences (meaning potentially higher than document number) */
+    private double[] classLogProbabilities;
 
-    /** probabilities of words given classes */
-    private double[][] wordClassProbabilities;
+    /** log probabilities of words given classes, term-major - entry of term t and class c is at t * classes.length + c */
+    private double[] wordClassLogProbabilities;
+
+    /** number of occurrences of each class in the training documents, null for models saved without counts */
+    private int[] classOccurrences;
+
+    /** total counts of words in the training documents of each class, laid out like wordClassLogProbabilities */
+    private double[] classTokenTotalCounts;
+
+    /** classes whose word counts changed since their probabilities were calculated */
+    private boolean[] staleClasses;
+
+    /** set when counts changed since probabilities were calculated */
+    private volatile boolean stale;
 
     public static String identifier = "nb";
 
@@ -30,24 +48,10 @@ public class NaiveBayes implements IClassifier
      * @return class
      */
     @Override
-    public String classify(double[] vector)
+    public String classify(SparseVector vector)
     {
         double[] scores = new double[classes.length];
-
-        for (int i = 0; i < classes.length; i++)
-        {
-            scores[i] = Math.log(classProbabilities[i]);
-
-            for (int j = 0; j < vector.length; j++)
-            {
-                try {
-                    scores[i] += vector[j] * Math.log(wordClassProbabilities[i][j]);
-                }
-                catch (IndexOutOfBoundsException e) {
-                    int a = 0;
-                }
-            }
-        }
+        logScores(vector, scores);
 
         int maxIndex = -1;
         double maxScore = Double.NEGATIVE_INFINITY;
@@ -63,116 +67,193 @@ public class NaiveBayes implements IClassifier
         return classes[maxIndex];
     }
 
+    /**
+     * Writes posterior probabilities of the classes, normalized from the log scores
+     * @param vector vector
+     * @param scores array of getClasses().length scores, overwritten
+     */
     @Override
-    public void train(IParametrizer parametrizer)
+    public void score(SparseVector vector, double[] scores)
     {
-        Logger.info("Loading classes");
-        loadClasses();
-        Logger.info("Loading documents");
-        Document[] trainDocuments = LibraryMethods.loadDocuments(Settings.trainingSetPath);
-        classProbabilities = getClassProbabilities(trainDocuments);
-        double[][] documentVectors = new double[trainDocuments.length][parametrizer.getVectorLength()];
-
-        Logger.info("Parametrizing documents");
-        for (int i = 0; i < documentVectors.length; i++)
+        logScores(vector, scores);
+
+        // Subtracting the maximum keeps the highest exponent at 0, so the sum cannot underflow
+        double max = Double.NEGATIVE_INFINITY;
+        for (double score : scores)
+            max = Math.max(max, score);
+
+        double sum = 0;
+        for (int i = 0; i < scores.length; i++)
         {
-            documentVectors[i] = parametrizer.parametrize(trainDocuments[i]);
+            scores[i] = Math.exp(scores[i] - max);
+            sum += scores[i];
         }
-
-        Logger.info("Calculating word-class probabilities");
-        calculateWordClassProbabilities(documentVectors, trainDocuments);
+        for (int i = 0; i < scores.length; i++)
+            scores[i] /= sum;
     }
 
     /**
-     * Calculates probabilities of words occurring in a class
-     * @param documentVectors parametrized documents
-     * @param trainDocuments non-parametrized documents with class information
+     * Writes log of class probability times the probabilities of the vector's words for each class
+     * Only non-zero components contribute, each of them adds to all classes from one contiguous row
+     * @param vector vector
+     * @param scores array of classes.length scores, overwritten
      */
-    private void calculateWordClassProbabilities(double[][] documentVectors, Document[] trainDocuments)
+    private void logScores(SparseVector vector, double[] scores)
     {
-        ArrayList<double[]>[] documentsSeparatedByClass = new ArrayList[classes.length];
-        for (int i = 0; i < classes.length; i++)
-            documentsSeparatedByClass[i] = new ArrayList<>();
+        refresh();
 
-        // Separate documents by class
-        for (int i = 0; i < classes.length; i++)
+        int classCount = classes.length;
+        System.arraycopy(classLogProbabilities, 0, scores, 0, classCount);
+
+        for (int j = 0; j < vector.indexes.length; j++)
         {
-            for (int j = 0; j < trainDocuments.length; j++)
+            double value = vector.values[j];
+            int row = vector.indexes[j] * classCount;
+            for (int i = 0; i < classCount; i++)
             {
-                if (trainDocuments[j].classes.contains(classes[i]))
-                {
-                    documentsSeparatedByClass[i].add(documentVectors[j]);
-                }
+                scores[i] += value * wordClassLogProbabilities[row + i];
             }
         }
+    }
 
-        // For each class, calculate total counts of each token across all documents belonging to that class
-        double[][] classTokenTotalCounts = new double[classes.length][documentVectors[0].length];
-        for (int i = 0; i < classes.length; i++)
+    @Override
+    public void train(TrainingSet trainingSet)
+    {
+        classes = trainingSet.classes;
+        classOccurrences = new int[classes.length];
+        classTokenTotalCounts = new double[trainingSet.vectorLength * classes.length];
+        wordClassLogProbabilities = new double[classTokenTotalCounts.length];
+        staleClasses = new boolean[classes.length];
+        addCounts(trainingSet.vectors, trainingSet.documentClasses);
+
+        Logger.info("Calculating word-class probabilities");
+        refresh();
+    }
+
+    @Override
+    public String[] getClasses()
+    {
+        return classes;
+    }
+
+    /**
+     * Adds counts of new documents, probabilities are recalculated on the next classification or export
+     * Vectors have to come from the parametrizer the classifier was trained with
+     * @param trainingSet parametrized documents labelled against getClasses()
+     */
+    @Override
+    public synchronized void update(TrainingSet trainingSet)
+    {
+        if (classTokenTotalCounts == null)
         {
-            for (int j = 0; j < documentsSeparatedByClass[i].size(); j++)
-            {
-                for (int k = 0; k < documentVectors[0].length; k++)
-                {
-                    double[] vector = documentsSeparatedByClass[i].get(j);
-                    classTokenTotalCounts[i][k] += vector[k];
-                }
-            }
+            Logger.error("Model holds no training counts and cannot be updated, it has to be trained again, program will exit.");
+            System.exit(1);
+        }
+        if (trainingSet.vectorLength * classes.length != classTokenTotalCounts.length)
+        {
+            Logger.error("Vector length " + trainingSet.vectorLength + " does not match the model, program will exit.");
+            System.exit(1);
         }
 
-        // For each class, count totals of all vector parts
-        double[] classTotals = new double[classes.length];
-        for (int i = 0; i < classes.length; i++)
+        addCounts(trainingSet.vectors, trainingSet.documentClasses);
+    }
+
+    /**
+     * Adds class occurrences and word counts of documents
+     * @param documentVectors parametrized documents
+     * @param documentClasses class indexes of the documents
+     */
+    private void addCounts(SparseVector[] documentVectors, int[][] documentClasses)
+    {
+        // Number of classes specified within documents (pot. higher than number of documents - if a document has more than one class)
+        for (int[] indexes : documentClasses)
         {
-            for (int j = 0; j < documentVectors[0].length; j++)
+            for (int index : indexes)
             {
-                classTotals[i] += classTokenTotalCounts[i][j];
+                classOccurrences[index] += 1;
             }
         }
 
-        // Calculate probabilities of vector parts for each class
-        wordClassProbabilities = new double[classes.length][documentVectors[0].length];
-        for (int i = 0; i < classes.length; i++)
+        // For each class, add counts of each token across all documents belonging to that class
+        // Document a class was last counted for - a class listed twice in a document counts once
+        int[] lastDocument = new int[classes.length];
+        Arrays.fill(lastDocument, -1);
+        for (int i = 0; i < documentVectors.length; i++)
         {
-            for (int j = 0; j < documentVectors[0].length; j++)
+            SparseVector vector = documentVectors[i];
+            for (int index : documentClasses[i])
             {
-                wordClassProbabilities[i][j] = (classTokenTotalCounts[i][j] + 1) / (classTotals[i] + documentVectors[0].length);
+                if (lastDocument[index] == i)
+                    continue;
+                lastDocument[index] = i;
+                staleClasses[index] = true;
+
+                for (int k = 0; k < vector.indexes.length; k++)
+                {
+                    classTokenTotalCounts[vector.indexes[k] * classes.length + index] += vector.values[k];
+                }
             }
         }
+
+        stale = true;
     }
 
     /**
-     * Calculates class probabilities
-     * @param docs training documents
-     * @return class probabilities
+     * Recalculates probabilities if counts changed since they were calculated
+     * Safe to call from several classifying threads, only the first one calculates
      */
-    private double[] getClassProbabilities(Document[] docs)
+    private void refresh()
     {
-        // Number of classes specified within documents (pot. higher than number of documents - if a document has more than one class)
-        int[] classOccurrences = new int[classes.length];
-        double[] classProbabilities = new double[classes.length];
-        int total = 0;
+        if (!stale)
+            return;
 
-        for (Document d : docs)
+        synchronized (this)
         {
-            for (String clss : d.classes)
+            if (stale)
             {
-                int index = Arrays.binarySearch(classes, clss);
-
-                if (index >= 0)
-                {
-                    classOccurrences[index] += 1;
-                    total++;
-                }
+                calculateProbabilities();
+                stale = false;
             }
         }
+    }
 
-        for (int i = 0; i < classOccurrences.length; i++)
+    /**
+     * Calculates class probabilities and probabilities of words occurring in the classes whose counts changed
+     */
+    private void calculateProbabilities()
+    {
+        int total = 0;
+        for (int occurrences : classOccurrences)
+            total += occurrences;
+
+        double[] classLogProbabilities = new double[classes.length];
+        for (int i = 0; i < classes.length; i++)
         {
-            classProbabilities[i] = (double)classOccurrences[i] / total;
+            classLogProbabilities[i] = Math.log((double)classOccurrences[i] / total);
         }
+        this.classLogProbabilities = classLogProbabilities;
+
+        int vectorLength = classTokenTotalCounts.length / classes.length;
+        for (int i = 0; i < classes.length; i++)
+        {
+            if (!staleClasses[i])
+                continue;
+            staleClasses[i] = false;
+
+            // Total of all vector parts of the class
+            double classTotal = 0;
+            for (int j = 0; j < vectorLength; j++)
+            {
+                classTotal += classTokenTotalCounts[j * classes.length + i];
+            }
 
-        return classProbabilities;
+            // Probabilities of vector parts for the class
+            for (int j = 0; j < vectorLength; j++)
+            {
+                int k = j * classes.length + i;
+                wordClassLogProbabilities[k] = Math.log((classTokenTotalCounts[k] + 1) / (classTotal + vectorLength));
+            }
+        }
     }
 
     /**
@@ -190,6 +271,8 @@ public class NaiveBayes implements IClassifier
     @Override
     public List<String> export()
     {
+        refresh();
+
         List<String> lines = new ArrayList<>();
         lines.add("**_classifier:" + identifier);
 
@@ -201,54 +284,161 @@ public class NaiveBayes implements IClassifier
         lines.add(cs.toString());
 
 
-        lines.add("**_class_probabilities:");
+        lines.add("**_class_log_probabilities:");
         cs = new StringBuilder();
-        for (double p : classProbabilities)
+        for (double p : classLogProbabilities)
             cs.append(p).append(";");
         lines.add(cs.toString());
 
-        lines.add("**_token_probabilities");
-        for (double[] p : wordClassProbabilities)
+        // One line per class
+        lines.add("**_token_log_probabilities");
+        for (int c = 0; c < classes.length; c++)
         {
             cs = new StringBuilder();
-            for (int i = 0; i < p.length; i++)
+            for (int i = c; i < wordClassLogProbabilities.length; i += classes.length)
             {
-                cs.append(p[i]).append(";");
+                cs.append(wordClassLogProbabilities[i]).append(";");
             }
             lines.add(cs.toString());
         }
 
+        if (classTokenTotalCounts != null)
+        {
+            lines.add("**_class_occurrences:");
+            cs = new StringBuilder();
+            for (int o : classOccurrences)
+                cs.append(o).append(";");
+            lines.add(cs.toString());
+
+            // One line per class
+            lines.add("**_token_counts");
+            for (int c = 0; c < classes.length; c++)
+            {
+                cs = new StringBuilder();
+                for (int i = c; i < classTokenTotalCounts.length; i += classes.length)
+                {
+                    cs.append(classTokenTotalCounts[i]).append(";");
+                }
+                lines.add(cs.toString());
+            }
+        }
+
         return lines;
     }
 
+    /**
+     * Loads the classifier from exported lines
+     * Models exported before log probabilities were stored hold plain probabilities, their logarithms are taken
+     * Models exported before counts were stored load without them and cannot be updated
+     * @param lines lines
+     */
     @Override
     public void load(List<String> lines)
     {
         // Parse classes
         String s = lines.get(2);
         classes = s.split(";");
+        boolean logarithms = lines.get(3).equals("**_class_log_probabilities:");
 
         // Parse class probabilities
         s = lines.get(4);
         String[] temp = s.split(";");
-        classProbabilities = new double[classes.length];
+        classLogProbabilities = new double[classes.length];
         for (int i = 0; i < temp.length; i++)
         {
-            classProbabilities[i] = Double.parseDouble(temp[i]);
+            classLogProbabilities[i] = parseLogProbability(temp[i], logarithms);
         }
 
-        // Parse word-class probabilities
-        wordClassProbabilities = new double[classes.length][];
-        for (int i = 6; i < lines.size(); i++)
+        // Parse word-class probabilities, one line per class
+        wordClassLogProbabilities = null;
+        for (int i = 0; i < classes.length; i++)
         {
-            s = lines.get(i);
+            s = lines.get(6 + i);
             String[] ps = s.split(";");
-            wordClassProbabilities[i - 6] = new double[ps.length];
+            if (wordClassLogProbabilities == null)
+                wordClassLogProbabilities = new double[ps.length * classes.length];
+
             for (int j = 0; j < ps.length; j++)
             {
-                wordClassProbabilities[i - 6][j] = Double.parseDouble(ps[j]);
+                wordClassLogProbabilities[j * classes.length + i] = parseLogProbability(ps[j], logarithms);
+            }
+        }
+
+        classOccurrences = null;
+        classTokenTotalCounts = null;
+        staleClasses = new boolean[classes.length];
+        stale = false;
+
+        int countsStart = 6 + classes.length;
+        if (lines.size() <= countsStart || !lines.get(countsStart).equals("**_class_occurrences:"))
+            return;
+
+        // Parse class occurrences
+        temp = lines.get(countsStart + 1).split(";");
+        classOccurrences = new int[classes.length];
+        for (int i = 0; i < temp.length; i++)
+        {
+            classOccurrences[i] = Integer.parseInt(temp[i]);
+        }
+
+        // Parse word counts, one line per class
+        classTokenTotalCounts = new double[wordClassLogProbabilities.length];
+        for (int i = 0; i < classes.length; i++)
+        {
+            String[] cs = lines.get(countsStart + 3 + i).split(";");
+            for (int j = 0; j < cs.length; j++)
+            {
+                classTokenTotalCounts[j * classes.length + i] = Double.parseDouble(cs[j]);
             }
         }
     }
-}
 
+    private static double parseLogProbability(String s, boolean logarithm)
+    {
+        double value = Double.parseDouble(s);
+        return logarithm ? value : Math.log(value);
+    }
+
+    /**
+     * Writes the classifier in binary format
+     * @param writer writer
+     * @throws IOException on write error
+     */
+    @Override
+    public void write(ModelWriter writer) throws IOException
+    {
+        refresh();
+
+        writer.writeString(identifier);
+        writer.writeStrings(classes);
+        writer.writeDoubles(classLogProbabilities);
+        writer.writeDoubles(wordClassLogProbabilities);
+
+        // Counts make the model resumable, models loaded without them are written without them
+        writer.writeBoolean(classTokenTotalCounts != null);
+        if (classTokenTotalCounts != null)
+        {
+            writer.writeInts(classOccurrences);
+            writer.writeDoubles(classTokenTotalCounts);
+        }
+    }
+
+    /**
+     * Reads the classifier written by write
+     * Identifier is expected to be read already
+     * @param reader reader
+     */
+    @Override
+    public void read(ModelReader reader)
+    {
+        classes = reader.readStrings();
+        classLogProbabilities = reader.readDoubles();
+        wordClassLogProbabilities = reader.readDoubles();
+
+        boolean counts = reader.readBoolean();
+        classOccurrences = counts ? reader.readInts() : null;
+        classTokenTotalCounts = counts ? reader.readDoubles() : null;
+        staleClasses = new boolean[classes.length];
+        stale = false;
+    }
+}
@@ -0,0 +1,494 @@
+package app.classify;
+
+import app.ModelReader;
+import app.ModelWriter;
+import app.SparseVector;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Exact scan over quantized training vectors, cosine similarity only
+ * Vectors are normalized to unit length and their values stored as 8-bit codes or as 16-bit half precision floats.
+ * Indexes are stored as their lowest 16 bits, components sharing the higher bits form a segment with a common base
+ * A component then takes 3 or 4 bytes instead of the 12 bytes of a SparseVector
+ * 8-bit codes are scaled per dimension and per vector - the dimension scales are multiplied into the query once,
+ * so the codes of each vector are summed against the query directly
+ * With re-ranking, the best rerank * K candidates are scored again exactly, which needs the training vectors to be kept;
+ * without it the vectors are not needed at all
+ */
+public class QuantizedIndex implements INeighbourIndex
+{
+    /** Half precision floats by their bits */
+    private static final float[] HALF_TO_FLOAT = new float[1 << 16];
+
+    /** 8-bit codes as floats by their unsigned value, a lookup is faster than converting */
+    private static final float[] CODE_TO_FLOAT = new float[1 << 8];
+
+    static
+    {
+        for (int i = 0; i < HALF_TO_FLOAT.length; i++)
+            HALF_TO_FLOAT[i] = fromHalf((short) i);
+        for (int i = 0; i < CODE_TO_FLOAT.length; i++)
+            CODE_TO_FLOAT[i] = (byte) i;
+    }
+
+    /** Bits of a value code, 8 or 16 */
+    private int bits;
+
+    /** Candidates scored exactly are rerank * K, 0 for no re-ranking */
+    private int rerank;
+
+    /** Training vectors, only kept for re-ranking */
+    private SparseVector[] vectors;
+
+    /** Euclidean norms of the training vectors, only kept for re-ranking */
+    private double[] norms;
+
+    /** Dimension of the vectors */
+    private int dimension;
+
+    /** Segments of vector v are [vectorSegments[v], vectorSegments[v + 1]) */
+    private int[] vectorSegments;
+
+    /** Segment s occupies [segmentStarts[s], segmentStarts[s + 1]) of lows and codes */
+    private int[] segmentStarts;
+
+    /** Higher bits of the indexes of each segment */
+    private int[] segmentBases;
+
+    /** Lowest 16 bits of the index of each component */
+    private char[] lows;
+
+    /** 8-bit value codes, null with 16 bits */
+    private byte[] codes;
+
+    /** Half precision values, null with 8 bits */
+    private char[] halves;
+
+    /** Value of code 1 of each vector before the dimension scale, 0 for zero vectors */
+    private float[] scales;
+
+    /** Largest absolute value of each dimension among the normalized vectors, null with 16 bits */
+    private float[] dimensionScales;
+
+    /** Dense query buffers */
+    private final DenseQuery denseQuery = new DenseQuery();
+
+    /** Candidates to re-rank, by thread */
+    private final ThreadLocal<TopK> rerankCandidates = ThreadLocal.withInitial(() -> new TopK(0));
+
+    public static String identifier = "quantized";
+
+    public QuantizedIndex()
+    {
+        this(8, 0);
+    }
+
+    /**
+     * @param bits bits of a value code, 8 or 16
+     * @param rerank candidates scored exactly are rerank * K, 0 for no re-ranking
+     */
+    public QuantizedIndex(int bits, int rerank)
+    {
+        if ((bits != 8 && bits != 16) || rerank < 0)
+            throw new IllegalArgumentException("Invalid quantization parameters");
+
+        this.bits = bits;
+        this.rerank = rerank;
+    }
+
+    @Override
+    public boolean needsVectors()
+    {
+        return rerank > 0;
+    }
+
+    @Override
+    public void build(SparseVector[] vectors, int dimension)
+    {
+        this.dimension = dimension;
+        double[] vectorNorms = DenseQuery.norms(vectors);
+
+        if (bits == 8)
+        {
+            dimensionScales = new float[dimension];
+            for (int v = 0; v < vectors.length; v++)
+                for (int i = 0; i < vectors[v].indexes.length; i++)
+                {
+                    int d = vectors[v].indexes[i];
+                    dimensionScales[d] = (float) Math.max(dimensionScales[d], Math.abs(vectors[v].values[i] / vectorNorms[v]));
+                }
+        }
+
+        allocate(vectors.length, v -> vectors[v].indexes);
+        scales = new float[vectors.length];
+
+        int[] vectorCodes = new int[0];
+        for (int v = 0; v < vectors.length; v++)
+        {
+            SparseVector vector = vectors[v];
+            if (vectorNorms[v] == 0)
+                continue;
+
+            int length = vector.indexes.length;
+            if (vectorCodes.length < length)
+                vectorCodes = new int[length];
+
+            if (bits == 8)
+            {
+                // Values relative to their dimension's largest value are within [-1, 1]
+                double max = 0;
+                for (int i = 0; i < length; i++)
+                    max = Math.max(max, Math.abs(vector.values[i] / vectorNorms[v] / dimensionScales[vector.indexes[i]]));
+
+                scales[v] = (float) (max / 127);
+                for (int i = 0; i < length; i++)
+                    vectorCodes[i] = (int) Math.round(vector.values[i] / vectorNorms[v] / dimensionScales[vector.indexes[i]] / scales[v]);
+            }
+            else
+            {
+                scales[v] = 1;
+                for (int i = 0; i < length; i++)
+                    vectorCodes[i] = toHalf((float) (vector.values[i] / vectorNorms[v])) & 0xFFFF;
+            }
+
+            store(v, vectorCodes);
+        }
+
+        keepVectors(vectors);
+    }
+
+    @Override
+    public void search(SparseVector query, TopK nearest)
+    {
+        int k = nearest.capacity();
+        nearest.reset(k);
+        double queryNorm = query.norm();
+        if (queryNorm == 0)
+            return;
+
+        // Without re-ranking the candidates are the result
+        TopK candidates = nearest;
+        if (rerank > 0)
+        {
+            candidates = rerankCandidates.get();
+            candidates.reset(k * rerank);
+        }
+        float[] dense = denseQuery.scatterFloat(query, dimension);
+
+        if (bits == 8)
+        {
+            for (int index : query.indexes)
+                dense[index] *= dimensionScales[index];
+
+            for (int v = 0; v < scales.length; v++)
+                if (scales[v] != 0)
+                    candidates.offer(v, dot8(v, dense) * scales[v] / queryNorm);
+        }
+        else
+        {
+            for (int v = 0; v < scales.length; v++)
+                if (scales[v] != 0)
+                    candidates.offer(v, dot16(v, dense) / queryNorm);
+        }
+
+        denseQuery.clear(query, dense);
+
+        if (rerank == 0)
+            return;
+
+        int count = candidates.sortDescending();
+        for (int i = 0; i < count; i++)
+        {
+            int id = candidates.id(i);
+            nearest.offer(id, query.dot(vectors[id]) / (queryNorm * norms[id]));
+        }
+    }
+
+    /**
+     * Dot product of 8-bit codes of a vector with a dense query
+     * @param vector vector
+     * @param dense dense query multiplied by the dimension scales
+     * @return dot product in units of the vector's scale
+     */
+    private float dot8(int vector, float[] dense)
+    {
+        float sum = 0;
+        for (int s = vectorSegments[vector]; s < vectorSegments[vector + 1]; s++)
+        {
+            int base = segmentBases[s];
+            for (int i = segmentStarts[s]; i < segmentStarts[s + 1]; i++)
+                sum += CODE_TO_FLOAT[codes[i] & 0xFF] * dense[base + lows[i]];
+        }
+
+        return sum;
+    }
+
+    /**
+     * Dot product of half precision values of a vector with a dense query
+     * @param vector vector
+     * @param dense dense query
+     * @return dot product
+     */
+    private float dot16(int vector, float[] dense)
+    {
+        float sum = 0;
+        for (int s = vectorSegments[vector]; s < vectorSegments[vector + 1]; s++)
+        {
+            int base = segmentBases[s];
+            for (int i = segmentStarts[s]; i < segmentStarts[s + 1]; i++)
+                sum += HALF_TO_FLOAT[halves[i]] * dense[base + lows[i]];
+        }
+
+        return sum;
+    }
+
+    /**
+     * Returns memory taken by the quantized vectors
+     * @return bytes
+     */
+    public long bytes()
+    {
+        long components = lows.length;
+        long scaleCount = scales.length + (dimensionScales == null ? 0 : dimensionScales.length);
+        long segmentInts = vectorSegments.length + segmentStarts.length + segmentBases.length;
+
+        return components * (Character.BYTES + bits / 8) + segmentInts * Integer.BYTES + scaleCount * Float.BYTES;
+    }
+
+    /**
+     * Splits components of vectors into segments and stores the lowest bits of their indexes
+     * @param count number of vectors
+     * @param indexes gives indexes of the components of each vector
+     */
+    private void allocate(int count, IntFunction<int[]> indexes)
+    {
+        vectorSegments = new int[count + 1];
+        int components = 0;
+        for (int v = 0; v < count; v++)
+        {
+            int[] vectorIndexes = indexes.apply(v);
+            components += vectorIndexes.length;
+
+            int segments = 0;
+            for (int i = 0; i < vectorIndexes.length; i++)
+                if (i == 0 || vectorIndexes[i] >>> 16 != vectorIndexes[i - 1] >>> 16)
+                    segments++;
+            vectorSegments[v + 1] = vectorSegments[v] + segments;
+        }
+
+        segmentStarts = new int[vectorSegments[count] + 1];
+        segmentBases = new int[vectorSegments[count]];
+        lows = new char[components];
+        codes = bits == 8 ? new byte[components] : null;
+        halves = bits == 16 ? new char[components] : null;
+
+        int s = 0, p = 0;
+        for (int v = 0; v < count; v++)
+        {
+            int[] vectorIndexes = indexes.apply(v);
+            for (int i = 0; i < vectorIndexes.length; i++)
+            {
+                if (i == 0 || vectorIndexes[i] >>> 16 != vectorIndexes[i - 1] >>> 16)
+                {
+                    segmentStarts[s] = p;
+                    segmentBases[s++] = vectorIndexes[i] & ~0xFFFF;
+                }
+                lows[p++] = (char) vectorIndexes[i];
+            }
+        }
+        segmentStarts[s] = p;
+    }
+
+    /**
+     * Stores codes of the components of a vector into space made by allocate
+     * @param vector vector
+     * @param vectorCodes codes of the components, 8-bit codes or half precision bits
+     */
+    private void store(int vector, int[] vectorCodes)
+    {
+        int start = segmentStarts[vectorSegments[vector]];
+        int end = segmentStarts[vectorSegments[vector + 1]];
+        for (int p = start; p < end; p++)
+        {
+            if (bits == 8)
+                codes[p] = (byte) vectorCodes[p - start];
+            else
+                halves[p] = (char) vectorCodes[p - start];
+        }
+    }
+
+    /**
+     * Keeps the training vectors if they are needed for re-ranking
+     * @param vectors training vectors
+     */
+    private void keepVectors(SparseVector[] vectors)
+    {
+        this.vectors = needsVectors() ? vectors : null;
+        norms = needsVectors() ? DenseQuery.norms(vectors) : null;
+    }
+
+    /**
+     * Converts float to half precision, rounding to nearest
+     * @param value float
+     * @return bits of the half precision float
+     */
+    static short toHalf(float value)
+    {
+        int bits = Float.floatToIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int magnitude = bits & 0x7FFFFFFF;
+
+        // Too large for half precision, slightly smaller values round up to infinity below
+        if (magnitude >= 0x47800000)
+            return (short) (sign | 0x7C00);
+
+        // Below the smallest normal half precision number, counted in units of 2^-24
+        if (magnitude < 0x38800000)
+            return (short) (sign | Math.round(Float.intBitsToFloat(magnitude) * 0x1p24f));
+
+        // Exponent bias changes from 127 to 15, mantissa is rounded from 23 to 10 bits, ties to even
+        int rounded = magnitude + 0xFFF + ((magnitude >>> 13) & 1);
+        return (short) (sign | ((rounded - 0x38000000) >>> 13));
+    }
+
+    /**
+     * Converts half precision to float
+     * @param half bits of the half precision float
+     * @return float
+     */
+    static float fromHalf(short half)
+    {
+        int sign = (half & 0x8000) << 16;
+        int exponent = (half >>> 10) & 0x1F;
+        int mantissa = half & 0x3FF;
+
+        if (exponent == 0)
+            return Float.intBitsToFloat(sign | Float.floatToIntBits(mantissa * 0x1p-24f));
+        if (exponent == 0x1F)
+            return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+
+        return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+    }
+
+    @Override
+    public List<String> export()
+    {
+        List<String> lines = new ArrayList<>();
+        lines.add("**_index:" + identifier);
+        lines.add("**_quantized:" + bits + ";" + rerank + ";" + dimension);
+
+        StringBuilder sb = new StringBuilder();
+        if (dimensionScales != null)
+            for (float scale : dimensionScales)
+                sb.append(Float.toString(scale)).append(";");
+        lines.add(sb.toString());
+
+        // One line per vector - the scale, then index:code pairs
+        for (int v = 0; v < scales.length; v++)
+        {
+            sb = new StringBuilder();
+            sb.append(Float.toString(scales[v])).append(";");
+
+            for (int s = vectorSegments[v]; s < vectorSegments[v + 1]; s++)
+            {
+                for (int i = segmentStarts[s]; i < segmentStarts[s + 1]; i++)
+                {
+                    int code = bits == 8 ? codes[i] : halves[i];
+                    sb.append(segmentBases[s] + lows[i]).append(":").append(code).append(";");
+                }
+            }
+            lines.add(sb.toString());
+        }
+
+        return lines;
+    }
+
+    @Override
+    public void load(List<String> lines, SparseVector[] vectors, int dimension)
+    {
+        String[] parameters = lines.get(0).split(":")[1].split(";");
+        bits = Integer.parseInt(parameters[0]);
+        rerank = Integer.parseInt(parameters[1]);
+        this.dimension = Integer.parseInt(parameters[2]);
+
+        if (bits == 8)
+        {
+            String[] values = lines.get(1).split(";");
+            dimensionScales = new float[this.dimension];
+            for (int d = 0; d < this.dimension; d++)
+                dimensionScales[d] = Float.parseFloat(values[d]);
+        }
+
+        int count = lines.size() - 2;
+        int[][] indexes = new int[count][];
+        int[][] vectorCodes = new int[count][];
+        scales = new float[count];
+
+        for (int v = 0; v < count; v++)
+        {
+            String[] parts = lines.get(v + 2).split(";");
+            scales[v] = Float.parseFloat(parts[0]);
+            indexes[v] = new int[parts.length - 1];
+            vectorCodes[v] = new int[parts.length - 1];
+            for (int i = 1; i < parts.length; i++)
+            {
+                int colon = parts[i].indexOf(':');
+                indexes[v][i - 1] = Integer.parseInt(parts[i].substring(0, colon));
+                vectorCodes[v][i - 1] = Integer.parseInt(parts[i].substring(colon + 1));
+            }
+        }
+
+        allocate(count, v -> indexes[v]);
+        for (int v = 0; v < count; v++)
+            store(v, vectorCodes[v]);
+
+        keepVectors(vectors);
+    }
+
+    @Override
+    public void write(ModelWriter writer) throws IOException
+    {
+        writer.writeString(identifier);
+        writer.writeInt(bits);
+        writer.writeInt(rerank);
+        writer.writeInt(dimension);
+        writer.writeInts(vectorSegments);
+        writer.writeInts(segmentStarts);
+        writer.writeInts(segmentBases);
+        writer.writeChars(lows);
+        if (bits == 8)
+        {
+            writer.writeBytes(codes);
+            writer.writeFloats(dimensionScales);
+        }
+        else
+            writer.writeChars(halves);
+        writer.writeFloats(scales);
+    }
+
+    @Override
+    public void read(ModelReader reader, SparseVector[] vectors, int dimension)
+    {
+        bits = reader.readInt();
+        rerank = reader.readInt();
+        this.dimension = reader.readInt();
+        vectorSegments = reader.readInts();
+        segmentStarts = reader.readInts();
+        segmentBases = reader.readInts();
+        lows = reader.readChars();
+        if (bits == 8)
+        {
+            codes = reader.readBytes();
+            dimensionScales = reader.readFloats();
+        }
+        else
+            halves = reader.readChars();
+        scales = reader.readFloats();
+
+        keepVectors(vectors);
+    }
+}
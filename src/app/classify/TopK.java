@@ -0,0 +1,170 @@
+package app.classify;
+
+/**
+ * Keeps K ids with the highest scores
+ * Bounded min-heap over primitive arrays - the root is the lowest kept score
+ * Equal scores are ordered by id, the lower id ranks higher, so the K best of a larger search are the K best
+ */
+public class TopK
+{
+    /** Ids in heap order */
+    private int[] ids;
+
+    /** Scores in heap order */
+    private double[] scores;
+
+    /** Number of ids to keep */
+    private int k;
+
+    /** Number of kept ids */
+    private int size;
+
+    public TopK(int k)
+    {
+        ids = new int[k];
+        scores = new double[k];
+        this.k = k;
+    }
+
+    /**
+     * Empties the heap and sets the number of ids to keep, so that one TopK serves many searches
+     * @param k number of ids to keep
+     */
+    public void reset(int k)
+    {
+        if (ids.length < k)
+        {
+            ids = new int[k];
+            scores = new double[k];
+        }
+        this.k = k;
+        size = 0;
+    }
+
+    /**
+     * Returns number of ids to keep
+     * @return K
+     */
+    public int capacity()
+    {
+        return k;
+    }
+
+    /**
+     * Offers an id, it is kept if its score is among the K highest so far
+     * @param id id
+     * @param score score
+     */
+    public void offer(int id, double score)
+    {
+        if (size < k)
+        {
+            // Sift up
+            int i = size++;
+            while (i > 0)
+            {
+                int parent = (i - 1) >>> 1;
+                if (!worse(id, score, ids[parent], scores[parent]))
+                    break;
+                ids[i] = ids[parent];
+                scores[i] = scores[parent];
+                i = parent;
+            }
+            ids[i] = id;
+            scores[i] = score;
+        }
+        else if (k > 0 && worse(ids[0], scores[0], id, score))
+        {
+            siftDown(id, score, size);
+        }
+    }
+
+    /**
+     * Returns the lowest kept score
+     * @return lowest kept score or negative infinity if fewer than K ids are kept
+     */
+    public double threshold()
+    {
+        return size < k ? Double.NEGATIVE_INFINITY : scores[0];
+    }
+
+    /**
+     * Returns number of kept ids
+     * @return number of kept ids
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Sorts the kept ids from the highest score to the lowest
+     * The heap is emptied, results are read by id(i) and score(i)
+     * @return number of kept ids
+     */
+    public int sortDescending()
+    {
+        int count = size;
+        // Heap sort - the lowest score goes to the end
+        for (int last = size - 1; last > 0; last--)
+        {
+            int id = ids[last];
+            double score = scores[last];
+            ids[last] = ids[0];
+            scores[last] = scores[0];
+            siftDown(id, score, last);
+        }
+        size = 0;
+
+        return count;
+    }
+
+    public int id(int i)
+    {
+        return ids[i];
+    }
+
+    public double score(int i)
+    {
+        return scores[i];
+    }
+
+    /**
+     * Places an element to the root and sifts it down
+     * @param id id
+     * @param score score
+     * @param heapSize size of the heap
+     */
+    private void siftDown(int id, double score, int heapSize)
+    {
+        int i = 0;
+        while (true)
+        {
+            int child = 2 * i + 1;
+            if (child >= heapSize)
+                break;
+            if (child + 1 < heapSize && worse(ids[child + 1], scores[child + 1], ids[child], scores[child]))
+                child++;
+            if (!worse(ids[child], scores[child], id, score))
+                break;
+            ids[i] = ids[child];
+            scores[i] = scores[child];
+            i = child;
+        }
+        ids[i] = id;
+        scores[i] = score;
+    }
+
+    /**
+     * Returns whether the first element ranks below the second one
+     * @param id first id
+     * @param score first score
+     * @param otherId second id
+     * @param otherScore second score
+     * @return true if the first score is lower, or equal with a higher id
+     */
+    private static boolean worse(int id, double score, int otherId, double otherScore)
+    {
+        return score < otherScore || (score == otherScore && id > otherId);
+    }
+}
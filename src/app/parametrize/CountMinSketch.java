@@ -0,0 +1,105 @@
+package app.parametrize;
+
+/**
+ * Estimates counts of hashed items in fixed memory
+ * Each item maps to one counter in each of the rows, its estimate is the lowest of them
+ * Updates are conservative - only the counters at the estimate are incremented - so an estimate
+ * is never below the true count, but collisions inflate it much less than with plain increments
+ * Counters are bytes saturating at 255, a saturated estimate reaches any minimum count
+ * Sketches of the same size over disjoint parts of the input are merged by adding their counters
+ * Not thread-safe
+ */
+class CountMinSketch
+{
+    /** Number of rows */
+    private static final int DEPTH = 4;
+
+    /** Highest value of a counter */
+    private static final int SATURATED = 0xFF;
+
+    /** Counters, row after row */
+    private final byte[] counters;
+
+    /** Number of counters in a row */
+    private final int width;
+
+    /**
+     * @param bytes memory taken by the counters
+     */
+    CountMinSketch(long bytes)
+    {
+        width = (int) Math.max(1, Math.min(bytes / DEPTH, Integer.MAX_VALUE / DEPTH));
+        counters = new byte[width * DEPTH];
+    }
+
+    /**
+     * Counts an item
+     * @param hash 64-bit hash of the item
+     */
+    void add(long hash)
+    {
+        int estimate = estimate(hash);
+        if (estimate == SATURATED)
+            return;
+
+        for (int row = 0; row < DEPTH; row++)
+        {
+            int i = row * width + column(hash, row);
+            if ((counters[i] & 0xFF) == estimate)
+                counters[i]++;
+        }
+    }
+
+    /**
+     * Returns the estimated count of an item
+     * @param hash 64-bit hash of the item
+     * @return estimate, at least the true count or 255
+     */
+    int estimate(long hash)
+    {
+        int estimate = SATURATED;
+        for (int row = 0; row < DEPTH; row++)
+            estimate = Math.min(estimate, counters[row * width + column(hash, row)] & 0xFF);
+
+        return estimate;
+    }
+
+    /**
+     * Returns whether an item may occur at least the given number of times
+     * @param hash 64-bit hash of the item
+     * @param count minimum count
+     * @return false if the item surely occurs fewer times
+     */
+    boolean reaches(long hash, int count)
+    {
+        int estimate = estimate(hash);
+        return estimate >= count || estimate == SATURATED;
+    }
+
+    /**
+     * Adds counters of a sketch of the same size, saturating at 255
+     * Every counter stays at least the true count of each item mapped to it, so estimates stay at least the true counts
+     * @param other sketch of other items or occurrences
+     */
+    void merge(CountMinSketch other)
+    {
+        for (int i = 0; i < counters.length; i++)
+            counters[i] = (byte) Math.min((counters[i] & 0xFF) + (other.counters[i] & 0xFF), SATURATED);
+    }
+
+    /**
+     * Derives the column of a row from the two halves of the hash
+     * @param hash 64-bit hash
+     * @param row row
+     * @return column
+     */
+    private int column(long hash, int row)
+    {
+        int h = (int) hash + row * (int) (hash >>> 32);
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+
+        return (int) (((h & 0xFFFFFFFFL) * width) >>> 32);
+    }
+}
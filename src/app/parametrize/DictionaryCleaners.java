@@ -1,19 +1,20 @@
 package app.parametrize;
 
-import java.io.BufferedReader;
-import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 
 /**
  * Offers static functions, that clean dictionaries with the aim
  * to reduce overall noise
  * Intended to be used in sequence (e.g. clean dictionary from numbers, then remove low occurrences)
+ * DictionaryFilter runs the same checks in a single pass
  */
 public class DictionaryCleaners
 {
-    private static ArrayList<String> stopWords = new ArrayList<>(List.of(
+    private static final Set<String> stopWords = new HashSet<>(List.of(
            "ačkoli", "ahoj", "ale", "anebo", "ano", "asi", "aspoň", "během", "bez", "beze", "blízko", "bohužel", "brzo", "bude", "budeme", "budeš", "budete",
             "budou", "budu", "byl", "byla", "byli", "bylo", "byly", "bys", "čau", "chce", "chceme", "chceš", "chcete", "chci", "chtějí", "chtít", "chuť", "chuti",
             "co", "čtrnáct", "čtyři", "dál", "dále", "daleko", "děkovat", "děkujeme", "děkuji", "den", "deset", "devatenáct", "devět", "dík", "díky",
@@ -29,6 +30,58 @@ public class DictionaryCleaners
             "vedle", "vlastně", "všechno", "všichni", "vůbec", "vy", "vždy", "za", "zač", "zatímco", "ze", "že"
     ));
 
+    /**
+     * Tells whether a gram is a stop word
+     * @param gram gram
+     * @return true for stop words
+     */
+    public static boolean isStopWord(String gram)
+    {
+        return stopWords.contains(gram);
+    }
+
+    /**
+     * Tells whether a gram contains a number, same as gram.matches(".*\\d+.*")
+     * \d is [0-9] and . matches anything but line terminators, so grams with a line terminator never match
+     * @param gram gram
+     * @return true for grams with a digit
+     */
+    public static boolean containsNumber(String gram)
+    {
+        boolean digit = false;
+        for (int i = 0; i < gram.length(); i++)
+        {
+            char c = gram.charAt(i);
+            if (c >= '0' && c <= '9')
+                digit = true;
+            else if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029')
+                return false;
+        }
+
+        return digit;
+    }
+
+    /**
+     * Tells whether a gram is only whitespace, same as gram.matches("\\s+")
+     * \s is [ \t\n\x0B\f\r]
+     * @param gram gram
+     * @return true for non-empty grams of whitespace
+     */
+    public static boolean isWhitespace(String gram)
+    {
+        if (gram.isEmpty())
+            return false;
+
+        for (int i = 0; i < gram.length(); i++)
+        {
+            char c = gram.charAt(i);
+            if (c != ' ' && c != '\t' && c != '\n' && c != 0x0B && c != '\f' && c != '\r')
+                return false;
+        }
+
+        return true;
+    }
+
     /**
      * Cleans dictionary
      * Removes stop words
@@ -41,7 +94,7 @@ public class DictionaryCleaners
 
         for (Map.Entry<String, Integer> e : map.entrySet())
         {
-            if (stopWords.contains(e.getKey()))
+            if (isStopWord(e.getKey()))
             {
                 continue;
             }
@@ -64,7 +117,7 @@ public class DictionaryCleaners
 
         for (Map.Entry<String, Integer> e : map.entrySet())
         {
-            if (e.getKey().matches(".*\\d+.*"))
+            if (containsNumber(e.getKey()))
             {
                 continue;
             }
@@ -98,9 +151,9 @@ public class DictionaryCleaners
         return newMap;
     }
 
-     /**
+    /**
      * Cleans dictionary
-     * Eliminates all Strings with less than N occurences
+     * Eliminates all Strings made of whitespace only
      * @param map dictionary to clean
      * @return cleaned dictionary
      */
@@ -110,7 +163,7 @@ public class DictionaryCleaners
 
         for (Map.Entry<String, Integer> e : map.entrySet())
         {
-            if (e.getKey().matches("\\s+"))
+            if (isWhitespace(e.getKey()))
             {
                 continue;
             }
@@ -0,0 +1,96 @@
+package app.parametrize;
+
+/**
+ * Cleans a gram dictionary in a single pass
+ * Checks are switched on by the chained methods and all of them run for each gram, removing the same grams
+ * as the corresponding DictionaryCleaners functions applied in sequence
+ * Callers check keepCount first, so only grams occurring often enough have to be built as Strings
+ */
+public class DictionaryFilter
+{
+    /** Grams occurring fewer times are removed */
+    private int minOccurrences;
+
+    /** Remove grams containing numbers */
+    private boolean numbers;
+
+    /** Remove stop words */
+    private boolean stopWords;
+
+    /** Remove grams made of whitespace only */
+    private boolean whitespaces;
+
+    /**
+     * Removes grams with less than N occurrences
+     * @param minOccurrences N
+     * @return this filter
+     */
+    public DictionaryFilter minOccurrences(int minOccurrences)
+    {
+        this.minOccurrences = minOccurrences;
+        return this;
+    }
+
+    /**
+     * Removes grams containing numbers
+     * @return this filter
+     */
+    public DictionaryFilter removeNumbers()
+    {
+        numbers = true;
+        return this;
+    }
+
+    /**
+     * Removes stop words
+     * @return this filter
+     */
+    public DictionaryFilter removeStopWords()
+    {
+        stopWords = true;
+        return this;
+    }
+
+    /**
+     * Removes grams made of whitespace only
+     * @return this filter
+     */
+    public DictionaryFilter removeWhitespaces()
+    {
+        whitespaces = true;
+        return this;
+    }
+
+    /**
+     * Returns the minimum number of occurrences
+     * @return minimum number of occurrences, 0 if not set
+     */
+    public int getMinOccurrences()
+    {
+        return minOccurrences;
+    }
+
+    /**
+     * Tells whether a gram with given count can pass
+     * @param count number of occurrences
+     * @return false if the gram is removed for its count
+     */
+    public boolean keepCount(int count)
+    {
+        return count >= minOccurrences;
+    }
+
+    /**
+     * Tells whether a gram stays in the dictionary
+     * @param gram gram
+     * @param count number of occurrences
+     * @return true if the gram passes all checks
+     */
+    public boolean keep(String gram, int count)
+    {
+        return keepCount(count)
+                && !(numbers && DictionaryCleaners.containsNumber(gram))
+                && !(stopWords && DictionaryCleaners.isStopWord(gram))
+                && !(whitespaces && DictionaryCleaners.isWhitespace(gram));
+    }
+}
@@ -0,0 +1,276 @@
+package app.parametrize;
+
+import app.Document;
+import app.Logger;
+import app.ModelReader;
+import app.ModelWriter;
+import app.SparseVector;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Implements the hashing trick
+ * Word n-grams and character n-grams are hashed straight into 2^bits buckets, no vocabulary is built or stored
+ * With signed hashing one hash bit decides whether a feature adds or subtracts, so that collisions cancel out on average
+ */
+public class FeatureHashing implements IParametrizer
+{
+    /** Marks start and end of a word in character n-grams */
+    private static final char WORD_START = '<', WORD_END = '>';
+
+    /** Seeds keeping word and character grams apart */
+    private static final int WORD_SEED = 0x2545F491, CHAR_SEED = 0x6A09E667;
+
+    /** Number of bits of the bucket index, vector length is 2^bits */
+    private int bits;
+
+    /** Word n-grams of lengths 1 to words are hashed */
+    private int words;
+
+    /** Length of hashed character n-grams of each word, 0 for none */
+    private int chars;
+
+    /** Features are added with a hashed sign */
+    private boolean signed;
+
+    /** Buffers reused by parametrize, one set per thread */
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    public static String identifier = "hashing";
+
+    public FeatureHashing() {}
+
+    /**
+     * @param bits number of bits of the bucket index, at most 30
+     * @param words word n-grams of lengths 1 to words are hashed
+     * @param chars length of hashed character n-grams, 0 for none
+     * @param signed features are added with a hashed sign - not for classifiers needing non-negative counts
+     */
+    public FeatureHashing(int bits, int words, int chars, boolean signed)
+    {
+        if (bits < 1 || bits > 30 || words < 0 || chars < 0)
+            throw new IllegalArgumentException("Invalid feature hashing parameters");
+
+        this.bits = bits;
+        this.words = words;
+        this.chars = chars;
+        this.signed = signed;
+    }
+
+    /**
+     * Returns vector representing the document
+     * @param d document
+     * @return vector of hashed feature counts
+     */
+    @Override
+    public SparseVector parametrize(Document d)
+    {
+        Scratch s = scratch.get();
+        String[] documentWords = d.documentWords;
+        int[] tokenHashes = s.tokenHashes(documentWords.length);
+
+        // Empty tokens left over by splitting are skipped
+        int tokenCount = 0;
+        int charGramCount = 0;
+        for (String word : documentWords)
+        {
+            if (word.isEmpty())
+                continue;
+            tokenHashes[tokenCount++] = word.hashCode();
+            if (chars > 0)
+                charGramCount += Math.max(word.length() + 3 - chars, 1);
+        }
+
+        long[] keys = s.keys(tokenCount * words + charGramCount);
+        int keyCount = 0;
+
+        for (int n = 1; n <= words; n++)
+        {
+            for (int i = 0; i + n <= tokenCount; i++)
+            {
+                int h = WORD_SEED + n;
+                for (int j = i; j < i + n; j++)
+                    h = 31 * h + tokenHashes[j];
+                keys[keyCount++] = key(h);
+            }
+        }
+
+        if (chars > 0)
+        {
+            for (String word : documentWords)
+            {
+                if (word.isEmpty())
+                    continue;
+
+                // Word is framed by WORD_START and WORD_END
+                int padded = word.length() + 2;
+                int last = Math.max(padded - chars, 0);
+                for (int i = 0; i <= last; i++)
+                {
+                    int h = CHAR_SEED + chars;
+                    for (int j = i; j < Math.min(i + chars, padded); j++)
+                        h = 31 * h + (j == 0 ? WORD_START : j == padded - 1 ? WORD_END : word.charAt(j - 1));
+                    keys[keyCount++] = key(h);
+                }
+            }
+        }
+
+        // Equal buckets end up next to each other
+        Arrays.sort(keys, 0, keyCount);
+
+        int[] indexes = new int[keyCount];
+        double[] values = new double[keyCount];
+        int count = 0;
+        for (int i = 0; i < keyCount; )
+        {
+            int bucket = (int) (keys[i] >>> 1);
+            double value = 0;
+            for (; i < keyCount && (int) (keys[i] >>> 1) == bucket; i++)
+                value += (keys[i] & 1) == 0 ? 1 : -1;
+
+            // Opposite signs may cancel out
+            if (value != 0)
+            {
+                indexes[count] = bucket;
+                values[count] = value;
+                count++;
+            }
+        }
+
+        return new SparseVector(Arrays.copyOf(indexes, count), Arrays.copyOf(values, count), getVectorLength());
+    }
+
+    /**
+     * Turns a feature hash into its bucket and sign
+     * @param hash feature hash
+     * @return bucket shifted left by one, lowest bit set for negative sign
+     */
+    private long key(int hash)
+    {
+        int h = fmix(hash);
+        int bucket = h & ((1 << bits) - 1);
+        int negative = signed ? h >>> 31 : 0;
+
+        return ((long) bucket << 1) | negative;
+    }
+
+    /**
+     * Finalization mix of MurmurHash3, spreads every input bit over the whole hash
+     * @param h hash
+     * @return mixed hash
+     */
+    private static int fmix(int h)
+    {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * Nothing to learn, the buckets are fixed
+     * @param documents training documents
+     */
+    @Override
+    public void initialize(Document[] documents)
+    {
+        Logger.info("Hashing features into " + getVectorLength() + " buckets");
+    }
+
+    /**
+     * Returns vector length
+     * @return 2^bits
+     */
+    @Override
+    public int getVectorLength()
+    {
+        return 1 << bits;
+    }
+
+    @Override
+    public List<String> export()
+    {
+        List<String> lines = new ArrayList<>();
+        lines.add("**_parametrizer:" + identifier);
+        lines.add("**_bits:" + bits);
+        lines.add("**_words:" + words);
+        lines.add("**_chars:" + chars);
+        lines.add("**_signed:" + (signed ? "true" : "false"));
+
+        return lines;
+    }
+
+    /**
+     * Parses the lines and loads parametrizer data
+     * @param lines lines
+     */
+    @Override
+    public void load(List<String> lines)
+    {
+        bits = Integer.parseInt(lines.get(1).split(":")[1]);
+        words = Integer.parseInt(lines.get(2).split(":")[1]);
+        chars = Integer.parseInt(lines.get(3).split(":")[1]);
+        signed = lines.get(4).contains("true");
+    }
+
+    /**
+     * Writes parametrizer data in binary format
+     * @param writer writer
+     * @throws IOException on write error
+     */
+    @Override
+    public void write(ModelWriter writer) throws IOException
+    {
+        writer.writeString(identifier);
+        writer.writeInt(bits);
+        writer.writeInt(words);
+        writer.writeInt(chars);
+        writer.writeBoolean(signed);
+    }
+
+    /**
+     * Reads parametrizer data written by write
+     * Identifier is expected to be read already
+     * @param reader reader
+     */
+    @Override
+    public void read(ModelReader reader)
+    {
+        bits = reader.readInt();
+        words = reader.readInt();
+        chars = reader.readInt();
+        signed = reader.readBoolean();
+    }
+
+    /**
+     * Buffers used while parametrizing a document
+     * Grown on demand, never shrunk
+     */
+    private static class Scratch
+    {
+        /** Hashes of the non-empty tokens */
+        private int[] tokenHashes = new int[0];
+
+        /** Keys of the features - bucket and sign */
+        private long[] keys = new long[0];
+
+        private int[] tokenHashes(int length)
+        {
+            if (tokenHashes.length < length)
+                tokenHashes = new int[length];
+            return tokenHashes;
+        }
+
+        private long[] keys(int length)
+        {
+            if (keys.length < length)
+                keys = new long[length];
+            return keys;
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package app.parametrize;
+
+import app.Document;
+import app.Logger;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Counts occurrences and document frequencies of the grams of a corpus in one pass
+ * Documents are split into chunks counted in parallel, each chunk with its own primitive tables
+ * The chunk tables are then merged by stripes of grams, also in parallel
+ * The counts do not depend on the parallelism, parallelism 1 counts on the calling thread
+ * With a memory cap, a first pass estimates the gram counts in a count-min sketch of that size
+ * and only grams estimated to reach the minimum count are counted - exactly, as the estimates are never too low
+ * Only the tokens of counted grams are kept, for unigrams the tokens estimated to reach the minimum count
+ * The first pass is split into the same chunks of documents, each chunk with its own share of the memory,
+ * and the chunk sketches are then summed into one
+ * Public as a handle of counts shared by several NGrams, see NGrams.count
+ */
+public class GramCounter
+{
+    /** Number of tokens in a gram */
+    final int n;
+
+    /** Number of chunks and stripes */
+    private final int parallelism;
+
+    /** Grams occurring fewer times may be left out */
+    final int minCount;
+
+    /** Memory of the count-min sketch in bytes, 0 for counting all grams */
+    private final long memoryCap;
+
+    /** Estimated gram counts, null when all grams are counted */
+    private CountMinSketch sketch;
+
+    /** Tokens of the corpus */
+    TokenIndex tokens;
+
+    /** Counted grams, split by their hash */
+    Stripe[] stripes;
+
+    /** Number of counted documents */
+    int documentCount;
+
+    /**
+     * @param n number of tokens in a gram
+     * @param parallelism number of threads
+     * @param minCount grams occurring fewer times may be left out
+     * @param memoryCap memory of the count-min sketch in bytes, 0 for counting all grams
+     */
+    GramCounter(int n, int parallelism, int minCount, long memoryCap)
+    {
+        this.n = n;
+        this.parallelism = Math.max(parallelism, 1);
+        this.minCount = minCount;
+        this.memoryCap = memoryCap;
+    }
+
+    /**
+     * Counts the grams of documents
+     * @param documents documents
+     */
+    void count(Document[] documents)
+    {
+        documentCount = documents.length;
+        int chunkCount = Math.min(parallelism, Math.max(documents.length, 1));
+        Chunk[] chunks = new Chunk[chunkCount];
+
+        if (memoryCap > 0 && minCount > 1)
+        {
+            CountMinSketch[] sketches = new CountMinSketch[chunkCount];
+            Logger.info("Estimating gram counts in " + memoryCap / 1024 + " KB");
+            run(chunkCount, parallelism > 1, c -> sketches[c] = sketchChunk(documents,
+                    chunkStart(documents, c, chunkCount), chunkStart(documents, c + 1, chunkCount), memoryCap / chunkCount));
+
+            sketch = sketches[0];
+            for (int c = 1; c < chunkCount; c++)
+                sketch.merge(sketches[c]);
+        }
+
+        run(chunkCount, parallelism > 1, c -> chunks[c] = countChunk(documents,
+                chunkStart(documents, c, chunkCount), chunkStart(documents, c + 1, chunkCount)));
+        sketch = null;
+
+        // Tokens are few compared to grams, they are merged in one go
+        tokens = new TokenIndex();
+        for (Chunk chunk : chunks)
+        {
+            chunk.globalTokenIds = new int[chunk.tokens.size()];
+            for (int i = 0; i < chunk.globalTokenIds.length; i++)
+                chunk.globalTokenIds[i] = tokens.add(chunk.tokens.token(i));
+        }
+
+        run(chunkCount, parallelism > 1, c -> groupByStripe(chunks[c]));
+
+        stripes = new Stripe[parallelism];
+        run(parallelism, parallelism > 1, s -> stripes[s] = mergeStripe(chunks, s));
+
+        long counted = 0;
+        for (Stripe stripe : stripes)
+            counted += stripe.grams.size();
+        Logger.info("Counted " + counted + " distinct grams");
+    }
+
+    /**
+     * Returns first document of a chunk
+     * @param documents documents
+     * @param chunk chunk, chunkCount for the end of the last chunk
+     * @param chunkCount number of chunks
+     * @return document index
+     */
+    private static int chunkStart(Document[] documents, int chunk, int chunkCount)
+    {
+        return (int) ((long) documents.length * chunk / chunkCount);
+    }
+
+    /**
+     * Estimates counts of the grams of a range of documents
+     * @param documents documents
+     * @param from first document
+     * @param to end of the range, exclusive
+     * @param bytes memory of the sketch
+     * @return sketch of the range
+     */
+    private CountMinSketch sketchChunk(Document[] documents, int from, int to, long bytes)
+    {
+        CountMinSketch chunkSketch = new CountMinSketch(bytes);
+        int[] tokenHashes = new int[16];
+
+        for (int doc = from; doc < to; doc++)
+        {
+            String[] words = documents[doc].documentWords;
+            if (tokenHashes.length < words.length)
+                tokenHashes = new int[words.length];
+
+            for (int i = 0; i < words.length; i++)
+                tokenHashes[i] = words[i].hashCode();
+
+            for (int i = 0; i + n <= words.length; i++)
+                chunkSketch.add(gramHash(tokenHashes, i));
+        }
+
+        return chunkSketch;
+    }
+
+    /**
+     * Counts grams of a range of documents with chunk-local token and gram ids
+     * @param documents documents
+     * @param from first document
+     * @param to end of the range, exclusive
+     * @return counts of the chunk
+     */
+    private Chunk countChunk(Document[] documents, int from, int to)
+    {
+        Chunk chunk = new Chunk(n);
+        int[] tokenIds = new int[16];
+        int[] tokenHashes = new int[16];
+        // Last document each gram was counted in, to count the document frequency once per document
+        int[] lastDocument = new int[chunk.counts.length];
+        Arrays.fill(lastDocument, -1);
+
+        for (int doc = from; doc < to; doc++)
+        {
+            String[] words = documents[doc].documentWords;
+            if (tokenIds.length < words.length)
+            {
+                tokenIds = new int[words.length];
+                tokenHashes = new int[words.length];
+            }
+
+            // Tokens are interned only with a counted gram, so that rare tokens take no memory under a cap
+            for (int i = 0; i < words.length; i++)
+            {
+                tokenIds[i] = -1;
+                tokenHashes[i] = words[i].hashCode();
+            }
+
+            for (int i = 0; i + n <= words.length; i++)
+            {
+                // Grams surely below the minimum count are not counted
+                if (sketch != null && !sketch.reaches(gramHash(tokenHashes, i), minCount))
+                    continue;
+
+                for (int j = i; j < i + n; j++)
+                    if (tokenIds[j] < 0)
+                        tokenIds[j] = chunk.tokens.add(words[j]);
+
+                int id = chunk.grams.add(tokenIds, i);
+                if (id == chunk.counts.length)
+                {
+                    chunk.counts = Arrays.copyOf(chunk.counts, id * 2);
+                    chunk.documentFrequencies = Arrays.copyOf(chunk.documentFrequencies, id * 2);
+                    lastDocument = Arrays.copyOf(lastDocument, id * 2);
+                    Arrays.fill(lastDocument, id, id * 2, -1);
+                }
+
+                chunk.counts[id]++;
+                if (lastDocument[id] != doc)
+                {
+                    lastDocument[id] = doc;
+                    chunk.documentFrequencies[id]++;
+                }
+            }
+        }
+
+        return chunk;
+    }
+
+    /**
+     * Translates grams of a chunk to corpus token ids and orders them by stripe
+     * @param chunk chunk
+     */
+    private void groupByStripe(Chunk chunk)
+    {
+        int size = chunk.grams.size();
+        chunk.globalGrams = new int[size * n];
+        int[] stripeOf = new int[size];
+        chunk.stripeStarts = new int[parallelism + 1];
+
+        for (int id = 0; id < size; id++)
+        {
+            for (int i = 0; i < n; i++)
+                chunk.globalGrams[id * n + i] = chunk.globalTokenIds[chunk.grams.tokenAt(id, i)];
+
+            stripeOf[id] = stripe(chunk.globalGrams, id * n);
+            chunk.stripeStarts[stripeOf[id] + 1]++;
+        }
+
+        for (int s = 0; s < parallelism; s++)
+            chunk.stripeStarts[s + 1] += chunk.stripeStarts[s];
+
+        // Counting sort of the gram ids by stripe
+        int[] next = Arrays.copyOf(chunk.stripeStarts, parallelism);
+        chunk.order = new int[size];
+        for (int id = 0; id < size; id++)
+            chunk.order[next[stripeOf[id]]++] = id;
+    }
+
+    /**
+     * Merges the grams of one stripe from all chunks
+     * @param chunks chunks
+     * @param s stripe
+     * @return merged stripe
+     */
+    private Stripe mergeStripe(Chunk[] chunks, int s)
+    {
+        Stripe stripe = new Stripe(n);
+
+        for (Chunk chunk : chunks)
+        {
+            for (int k = chunk.stripeStarts[s]; k < chunk.stripeStarts[s + 1]; k++)
+            {
+                int local = chunk.order[k];
+                int id = stripe.grams.add(chunk.globalGrams, local * n);
+                if (id == stripe.counts.length)
+                {
+                    stripe.counts = Arrays.copyOf(stripe.counts, id * 2);
+                    stripe.documentFrequencies = Arrays.copyOf(stripe.documentFrequencies, id * 2);
+                }
+
+                stripe.counts[id] += chunk.counts[local];
+                stripe.documentFrequencies[id] += chunk.documentFrequencies[local];
+            }
+        }
+
+        return stripe;
+    }
+
+    /**
+     * Returns 64-bit hash of a gram from the String hashes of its tokens, the same in every chunk
+     * @param tokenHashes hashes of the tokens
+     * @param offset start of the gram
+     * @return hash
+     */
+    private long gramHash(int[] tokenHashes, int offset)
+    {
+        long h = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < n; i++)
+            h = (h ^ tokenHashes[offset + i]) * 0xBF58476D1CE4E5B9L;
+
+        return h ^ (h >>> 31);
+    }
+
+    /**
+     * Returns stripe of a gram
+     * Independent of the slot hash of GramIndex, so that the grams of a stripe spread over its whole table
+     * @param tokenIds corpus token ids
+     * @param offset start of the gram
+     * @return stripe
+     */
+    private int stripe(int[] tokenIds, int offset)
+    {
+        int h = 0x27D4EB2F;
+        for (int i = 0; i < n; i++)
+            h = (h ^ tokenIds[offset + i]) * 0x85EBCA6B;
+        h ^= h >>> 13;
+
+        return (int) (((h & 0xFFFFFFFFL) * parallelism) >>> 32);
+    }
+
+    /**
+     * Runs tasks 0 to count - 1
+     * @param count number of tasks
+     * @param parallel run the tasks in parallel
+     * @param task task
+     */
+    static void run(int count, boolean parallel, IntConsumer task)
+    {
+        if (parallel)
+            IntStream.range(0, count).parallel().forEach(task);
+        else
+            IntStream.range(0, count).forEach(task);
+    }
+
+    /**
+     * Grams of a range of documents, with token ids local to the chunk
+     */
+    private static class Chunk
+    {
+        private final TokenIndex tokens = new TokenIndex();
+        private final GramIndex grams;
+        private int[] counts = new int[16];
+        private int[] documentFrequencies = new int[16];
+
+        /** Corpus token ids by chunk token id */
+        private int[] globalTokenIds;
+
+        /** Grams in corpus token ids, gram with id i occupies [i * n, i * n + n) */
+        private int[] globalGrams;
+
+        /** Gram ids ordered by stripe */
+        private int[] order;
+
+        /** Stripe s occupies [stripeStarts[s], stripeStarts[s + 1]) of order */
+        private int[] stripeStarts;
+
+        private Chunk(int n)
+        {
+            grams = new GramIndex(n);
+        }
+    }
+
+    /**
+     * Grams of the whole corpus falling into one stripe, with corpus token ids
+     */
+    static class Stripe
+    {
+        final GramIndex grams;
+
+        /** Occurrences by gram id */
+        int[] counts = new int[16];
+
+        /** Number of documents containing the gram by gram id */
+        int[] documentFrequencies = new int[16];
+
+        private Stripe(int n)
+        {
+            grams = new GramIndex(n);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package app.parametrize;
+
+import java.util.Arrays;
+
+/**
+ * Maps grams - tuples of N token ids - to consecutive int ids
+ * Open addressing hash table with linear probing, tuples are stored flat in one array
+ */
+public class GramIndex
+{
+    /** Number of token ids in a gram */
+    private final int n;
+
+    /** Gram ids by slot, -1 marks an empty slot */
+    private int[] slots;
+
+    /** Token ids of the grams, gram with id i occupies [i * n, i * n + n) */
+    private int[] grams;
+
+    /** Hashes of grams by id */
+    private int[] hashes;
+
+    /** Number of grams */
+    private int size;
+
+    public GramIndex(int n)
+    {
+        this(n, 16);
+    }
+
+    public GramIndex(int n, int expectedSize)
+    {
+        this.n = n;
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+        slots = new int[capacity];
+        Arrays.fill(slots, -1);
+        grams = new int[Math.max(expectedSize, 8) * n];
+        hashes = new int[Math.max(expectedSize, 8)];
+    }
+
+    /**
+     * Returns id of the gram starting at offset
+     * @param tokenIds token ids
+     * @param offset start of the gram
+     * @return id or -1 if the gram is not present
+     */
+    public int get(int[] tokenIds, int offset)
+    {
+        int hash = hash(tokenIds, offset);
+        int mask = slots.length - 1;
+
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask)
+        {
+            int id = slots[slot];
+            if (id < 0)
+                return -1;
+            if (hashes[id] == hash && equalsAt(id, tokenIds, offset))
+                return id;
+        }
+    }
+
+    /**
+     * Returns id of the gram starting at offset, adds the gram if it is not present
+     * @param tokenIds token ids
+     * @param offset start of the gram
+     * @return id
+     */
+    public int add(int[] tokenIds, int offset)
+    {
+        int hash = hash(tokenIds, offset);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+
+        for (; ; slot = (slot + 1) & mask)
+        {
+            int id = slots[slot];
+            if (id < 0)
+                break;
+            if (hashes[id] == hash && equalsAt(id, tokenIds, offset))
+                return id;
+        }
+
+        if (size == hashes.length)
+        {
+            hashes = Arrays.copyOf(hashes, size * 2);
+            grams = Arrays.copyOf(grams, size * 2 * n);
+        }
+
+        int id = size++;
+        System.arraycopy(tokenIds, offset, grams, id * n, n);
+        hashes[id] = hash;
+        slots[slot] = id;
+
+        if (size * 2 > slots.length)
+            rehash();
+
+        return id;
+    }
+
+    /**
+     * Returns token id at given position of a gram
+     * @param id gram id
+     * @param position position within the gram
+     * @return token id
+     */
+    public int tokenAt(int id, int position)
+    {
+        return grams[id * n + position];
+    }
+
+    /**
+     * Returns number of grams
+     * @return number of grams
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns number of token ids in a gram
+     * @return N
+     */
+    public int getN()
+    {
+        return n;
+    }
+
+    private boolean equalsAt(int id, int[] tokenIds, int offset)
+    {
+        int start = id * n;
+        for (int i = 0; i < n; i++)
+            if (grams[start + i] != tokenIds[offset + i])
+                return false;
+
+        return true;
+    }
+
+    private int hash(int[] tokenIds, int offset)
+    {
+        int h = 0;
+        for (int i = 0; i < n; i++)
+            h = (h + tokenIds[offset + i]) * 0x9E3779B9;
+
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Doubles the table
+     */
+    private void rehash()
+    {
+        slots = new int[slots.length * 2];
+        Arrays.fill(slots, -1);
+        int mask = slots.length - 1;
+
+        for (int id = 0; id < size; id++)
+        {
+            int slot = hashes[id] & mask;
+            while (slots[slot] >= 0)
+                slot = (slot + 1) & mask;
+            slots[slot] = id;
+        }
+    }
+}
@@ -1,18 +1,37 @@
 package app.parametrize;
 
 import app.Document;
+import app.ModelReader;
+import app.ModelWriter;
+import app.SparseVector;
 
+import java.io.IOException;
 import java.util.List;
 
+/**
+ * Turns documents into vectors
+ * Once initialized or loaded, parametrize must be safe to call from several threads at once -
+ * it may only read the vocabulary and keep its working buffers per thread
+ */
 public interface IParametrizer
 {
     int getVectorLength();
 
-    double[] parametrize(Document d);
+    /**
+     * Returns vector representing the document
+     * Safe to call concurrently once the parametrizer is initialized or loaded
+     * @param d document
+     * @return vector
+     */
+    SparseVector parametrize(Document d);
 
-    void initialize();
+    void initialize(Document[] documents);
 
     List<String> export();
 
     void load(List<String> lines);
+
+    void write(ModelWriter writer) throws IOException;
+
+    void read(ModelReader reader);
 }
@@ -1,10 +1,11 @@
 package app.parametrize;
 
 import app.Document;
-import app.LibraryMethods;
 import app.Logger;
-import app.Settings;
-import java.io.File;
+import app.ModelReader;
+import app.ModelWriter;
+import app.SparseVector;
+import java.io.IOException;
 import java.util.*;
 
 /**
@@ -26,6 +27,24 @@ public class NGrams implements IParametrizer
     /** Using TFIDF or not */
     private boolean tfidf;
 
+    /** Ids of tokens occurring in the grams */
+    private TokenIndex tokenIndex;
+
+    /** Maps grams of token ids to their index in grams */
+    private GramIndex gramIndex;
+
+    /** Number of threads counting the grams in initialize, 1 counts on the calling thread */
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /** Memory for estimating gram counts in initialize in bytes, 0 counts all grams exactly */
+    private long memoryCap;
+
+    /** Minimum count of a gram in the training set, 0 for the default */
+    private int minOccurrences;
+
+    /** Buffers reused by parametrize, one set per thread */
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
     public static String identifier = "ngrams";
 
     public NGrams() {}
@@ -36,140 +55,245 @@ public class NGrams implements IParametrizer
         this.tfidf = tfidf;
     }
 
+    /**
+     * Sets number of threads counting the grams in initialize
+     * The vocabulary and IDF do not depend on it
+     * @param parallelism number of threads, 1 counts on the calling thread
+     */
+    public void setParallelism(int parallelism)
+    {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Bounds the memory taken by rare grams in initialize
+     * A first pass estimates gram counts in a count-min sketch of the given size, only grams that can reach
+     * the minimum count are then counted exactly - the vocabulary and IDF stay the same, a smaller sketch
+     * just lets more rare grams through to the exact count
+     * Around 8 bytes per distinct gram of the corpus leave only a few rare grams to count exactly
+     * @param memoryCap sketch size in bytes, 0 counts all grams exactly
+     */
+    public void setMemoryCap(long memoryCap)
+    {
+        this.memoryCap = memoryCap;
+    }
+
+    /**
+     * Sets minimum count of a gram in the training set for it to enter the vocabulary
+     * @param minOccurrences minimum count, 0 for the default - 5 for unigrams and 2 for longer grams
+     */
+    public void setMinOccurrences(int minOccurrences)
+    {
+        this.minOccurrences = minOccurrences;
+    }
+
     /**
      * Returns vector representing the document
      * @param d Document
      * @return vector representing the document
      */
     @Override
-    public double[] parametrize(Document d)
+    public SparseVector parametrize(Document d)
     {
-        double[] vector = new double[grams.length];
-
-        // Calculate the word frequencies
-        HashMap<String, Integer> wordCounts = new HashMap<>();
-
-        for (int i = 0; i < d.documentWords.length; i++)
+        Scratch s = scratch.get();
+        int length = d.documentWords.length;
+        int[] tokenIds = s.tokenIds(length);
+        int[] counts = s.counts(grams.length);
+        int[] touched = s.touched(length);
+
+        for (int i = 0; i < length; i++)
+            tokenIds[i] = tokenIndex.get(d.documentWords[i]);
+
+        // Count the grams, remembering which columns were hit
+        int touchedCount = 0;
+        for (int i = 0; i + n <= length; i++)
         {
-            if (i + n >= d.documentWords.length)
-                break;
+            int column = gramIndex.get(tokenIds, i);
+            if (column < 0)
+                continue;
 
-            String gram = String.join(" ", Arrays.copyOfRange(d.documentWords, i, i + n));
-            if (!wordCounts.containsKey(gram))
-                wordCounts.put(gram, 1);
-            else
-                wordCounts.put(gram, wordCounts.get(gram) + 1);
+            if (counts[column]++ == 0)
+                touched[touchedCount++] = column;
         }
 
-        for (Map.Entry<String, Integer> e : wordCounts.entrySet())
+        Arrays.sort(touched, 0, touchedCount);
+        int[] indexes = Arrays.copyOf(touched, touchedCount);
+        double[] values = new double[touchedCount];
+
+        for (int i = 0; i < touchedCount; i++)
         {
-            int index = Arrays.binarySearch(grams, e.getKey());
-            if (index >= 0)
-            {
-                if (tfidf)
-                    vector[index] = e.getValue() * idf[index];
-                else
-                    vector[index] = e.getValue();
-            }
+            int column = indexes[i];
+            if (tfidf)
+                values[i] = counts[column] * idf[column];
+            else
+                values[i] = counts[column];
+
+            // Leave the buffer zeroed for the next document
+            counts[column] = 0;
         }
 
-        return vector;
+        return new SparseVector(indexes, values, grams.length);
+    }
+
+    /**
+     * Returns minimum count of a gram in the training set for it to enter the vocabulary
+     * @return minimum count, the default if none was set
+     */
+    public int getMinOccurrences()
+    {
+        if (minOccurrences > 0)
+            return minOccurrences;
+
+        return n == 1 ? 5 : 2;
     }
 
     /**
      * Creates a dictionary of words
      * Initializes class attributes
+     * Grams and their document frequencies are counted in one pass, in parallel if parallelism is above 1
+     * With a memory cap, grams that cannot reach the minimum count are not counted at all
+     * @param documents training documents
      */
     @Override
-    public void initialize()
+    public void initialize(Document[] documents)
     {
-        TreeMap<String, Integer> gramsDictionary = new TreeMap<>();
-        Logger.info("Processing training corpus");
-        Document[] documents = LibraryMethods.loadDocuments(Settings.trainingSetPath);
-
-        // Go trough the documents
-        for (Document d : documents)
-        {
-            // Create grams
-            for (int i = 0; i < d.documentWords.length; i++)
-            {
-                if (i + n > d.documentWords.length)
-                    break;
+        initialize(documents, count(documents, getMinOccurrences()));
+    }
 
-                String gram = String.join(" ", Arrays.copyOfRange(d.documentWords, i, i + n));
+    /**
+     * Counts grams and their document frequencies in the training documents for initialize
+     * The counts do not depend on the minimum count, they serve every NGrams with the same n and memory cap
+     * whose minimum count is at least the given one
+     * @param documents training documents
+     * @param minCount lowest minimum count served, under a memory cap rarer grams are not counted
+     * @return counts
+     */
+    public GramCounter count(Document[] documents, int minCount)
+    {
+        Logger.info("Processing training corpus");
+        GramCounter counter = new GramCounter(n, parallelism, minCount, memoryCap);
+        counter.count(documents);
 
-                if (!gramsDictionary.containsKey(gram))
-                    gramsDictionary.put(gram, 1);
-                else
-                    gramsDictionary.put(gram, gramsDictionary.get(gram) + 1);
-            }
-        }
+        return counter;
+    }
 
+    /**
+     * Creates a dictionary of words from counted grams
+     * The counts are only read, several NGrams may be initialized from them at once
+     * @param documents training documents
+     * @param counter counts of the documents by count of an NGrams with the same n
+     */
+    public void initialize(Document[] documents, GramCounter counter)
+    {
+        if (counter.n != n || counter.documentCount != documents.length || counter.minCount > getMinOccurrences())
+            throw new IllegalArgumentException("Gram counts do not fit the parametrizer");
 
         // Do postprocessing
+        DictionaryFilter filter;
         if (n == 1)
         {
-            gramsDictionary = DictionaryCleaners.cleanDictNumbersInStrings(gramsDictionary);
-            gramsDictionary = DictionaryCleaners.cleanDictStringOccurrences(gramsDictionary, 5);
+            filter = new DictionaryFilter().removeNumbers().minOccurrences(getMinOccurrences());
         }
         else
             {
-                gramsDictionary = DictionaryCleaners.cleanDictStringOccurrences(gramsDictionary, 2);
+                filter = new DictionaryFilter().minOccurrences(getMinOccurrences());
             }
+        filter.removeWhitespaces();
 
-        gramsDictionary = DictionaryCleaners.removeWhitespaces(gramsDictionary);
-        disassembleTreeMap(gramsDictionary);
-
-        // If we need to calculate IDF values
-        if (tfidf)
+        // The filter checks the counts first, grams are built as Strings only if frequent enough
+        Logger.info("Creating bag of words dictionary");
+        int[][] keptIds = new int[counter.stripes.length][];
+        String[][] keptGrams = new String[counter.stripes.length][];
+        GramCounter.run(counter.stripes.length, parallelism > 1, s ->
         {
-            // We'll just use the IDF field to temporarily save the grams' DF
-            idf = new double[grams.length];
-            // Go trough all the documents again
-            for (Document d : documents)
+            GramCounter.Stripe stripe = counter.stripes[s];
+            int[] ids = new int[16];
+            String[] strings = new String[16];
+            int count = 0;
+            StringBuilder sb = new StringBuilder();
+
+            for (int id = 0; id < stripe.grams.size(); id++)
             {
-                // Filter out duplicates
-                Set<String> temp = new TreeSet<>();
-                for (int i = 0; i < d.documentWords.length; i++)
+                if (!filter.keepCount(stripe.counts[id]))
+                    continue;
+
+                sb.setLength(0);
+                for (int i = 0; i < n; i++)
                 {
-                    if (i + n > d.documentWords.length)
-                        break;
-                    temp.add(String.join(" ", Arrays.copyOfRange(d.documentWords, i, i + n)));
+                    if (i > 0)
+                        sb.append(' ');
+                    sb.append(counter.tokens.token(stripe.grams.tokenAt(id, i)));
                 }
+                String gram = sb.toString();
+                if (!filter.keep(gram, stripe.counts[id]))
+                    continue;
 
-                // Add occurrences
-                for (String w : temp)
+                if (count == ids.length)
                 {
-                    int index = Arrays.binarySearch(grams, w);
-                    if (index >= 0)
-                        idf[index] += 1;
+                    ids = Arrays.copyOf(ids, count * 2);
+                    strings = Arrays.copyOf(strings, count * 2);
                 }
+                ids[count] = id;
+                strings[count] = gram;
+                count++;
             }
 
-            // calculate the IDF
-            for (int i = 0; i < idf.length; i++)
+            keptIds[s] = Arrays.copyOf(ids, count);
+            keptGrams[s] = Arrays.copyOf(strings, count);
+        });
+
+        List<String> kept = new ArrayList<>();
+        for (String[] stripeGrams : keptGrams)
+            kept.addAll(Arrays.asList(stripeGrams));
+        grams = kept.toArray(new String[0]);
+        Arrays.parallelSort(grams);
+        buildIndex();
+
+        // If we need to calculate IDF values
+        if (tfidf)
+        {
+            idf = new double[grams.length];
+
+            // Corpus token ids translated to the ids of the vocabulary
+            int[] vocabularyTokenIds = new int[counter.tokens.size()];
+            for (int i = 0; i < vocabularyTokenIds.length; i++)
+                vocabularyTokenIds[i] = tokenIndex.get(counter.tokens.token(i));
+
+            // calculate the IDF from the document frequencies counted with the grams
+            GramCounter.run(counter.stripes.length, parallelism > 1, s ->
             {
-                idf[i] = Math.log(1 + documents.length / idf[i]);
-            }
+                GramCounter.Stripe stripe = counter.stripes[s];
+                int[] tuple = new int[n];
+                for (int id : keptIds[s])
+                {
+                    for (int i = 0; i < n; i++)
+                        tuple[i] = vocabularyTokenIds[stripe.grams.tokenAt(id, i)];
+
+                    idf[gramIndex.get(tuple, 0)] = Math.log(1 + documents.length / (double) stripe.documentFrequencies[id]);
+                }
+            });
         }
     }
 
     /**
-     * Disassembles HashMap dictionary and saves it into counts[] and words[]
-     * @param map
+     * Builds the token and gram indexes from the sorted grams
+     * Gram ids then equal the gram positions in the vector
      */
-    private void disassembleTreeMap(TreeMap<String, Integer> map)
+    private void buildIndex()
     {
-        Logger.info("Creating bag of words dictionary");
-        ArrayList<String> ws = new ArrayList<>();
+        tokenIndex = new TokenIndex(grams.length);
+        gramIndex = new GramIndex(n, grams.length);
+        int[] tuple = new int[n];
 
-        map.forEach((k, v) ->
+        for (String gram : grams)
         {
-            ws.add(k);
-        });
+            // Tokens never contain spaces, so the gram splits back into its tokens
+            String[] tokens = gram.split(" ", -1);
+            for (int i = 0; i < n; i++)
+                tuple[i] = tokenIndex.add(tokens[i]);
 
-        grams = new String[ws.size()];
-        ws.toArray(grams);
+            gramIndex.add(tuple, 0);
+        }
     }
 
     /**
@@ -266,6 +390,79 @@ public class NGrams implements IParametrizer
                 for (int j = 0; j < gs.size(); j++)
                     grams[j] = gs.get(j);
             }
+
+        buildIndex();
     }
 
+    /**
+     * Writes parametrizer data in binary format
+     * @param writer writer
+     * @throws IOException on write error
+     */
+    @Override
+    public void write(ModelWriter writer) throws IOException
+    {
+        writer.writeString(identifier);
+        writer.writeBoolean(tfidf);
+        writer.writeInt(n);
+        writer.writeStrings(grams);
+
+        if (tfidf)
+            writer.writeDoubles(idf);
+    }
+
+    /**
+     * Reads parametrizer data written by write
+     * Identifier is expected to be read already
+     * @param reader reader
+     */
+    @Override
+    public void read(ModelReader reader)
+    {
+        tfidf = reader.readBoolean();
+        n = reader.readInt();
+        grams = reader.readStrings();
+
+        if (tfidf)
+            idf = reader.readDoubles();
+
+        buildIndex();
+    }
+
+    /**
+     * Buffers used while parametrizing a document
+     * Grown on demand, never shrunk
+     */
+    private static class Scratch
+    {
+        /** Token ids of the document */
+        private int[] tokenIds = new int[0];
+
+        /** Gram counts, all zero between documents */
+        private int[] counts = new int[0];
+
+        /** Columns with non-zero count */
+        private int[] touched = new int[0];
+
+        private int[] tokenIds(int length)
+        {
+            if (tokenIds.length < length)
+                tokenIds = new int[length];
+            return tokenIds;
+        }
+
+        private int[] counts(int length)
+        {
+            if (counts.length < length)
+                counts = new int[length];
+            return counts;
+        }
+
+        private int[] touched(int length)
+        {
+            if (touched.length < length)
+                touched = new int[length];
+            return touched;
+        }
+    }
 }
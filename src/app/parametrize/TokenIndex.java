@@ -0,0 +1,141 @@
+package app.parametrize;
+
+import java.util.Arrays;
+
+/**
+ * Interns tokens to consecutive int ids
+ * Open addressing hash table with linear probing, ids are assigned in order of insertion
+ */
+public class TokenIndex
+{
+    /** Token ids by slot, -1 marks an empty slot */
+    private int[] slots;
+
+    /** Tokens by id */
+    private String[] tokens;
+
+    /** Hashes of tokens by id */
+    private int[] hashes;
+
+    /** Number of tokens */
+    private int size;
+
+    public TokenIndex()
+    {
+        this(16);
+    }
+
+    public TokenIndex(int expectedSize)
+    {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+        slots = new int[capacity];
+        Arrays.fill(slots, -1);
+        tokens = new String[Math.max(expectedSize, 8)];
+        hashes = new int[tokens.length];
+    }
+
+    /**
+     * Returns id of a token
+     * @param token token
+     * @return id or -1 if the token is not present
+     */
+    public int get(String token)
+    {
+        int hash = mix(token.hashCode());
+        int mask = slots.length - 1;
+
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask)
+        {
+            int id = slots[slot];
+            if (id < 0)
+                return -1;
+            if (hashes[id] == hash && tokens[id].equals(token))
+                return id;
+        }
+    }
+
+    /**
+     * Returns id of a token, adds the token if it is not present
+     * @param token token
+     * @return id
+     */
+    public int add(String token)
+    {
+        int hash = mix(token.hashCode());
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+
+        for (; ; slot = (slot + 1) & mask)
+        {
+            int id = slots[slot];
+            if (id < 0)
+                break;
+            if (hashes[id] == hash && tokens[id].equals(token))
+                return id;
+        }
+
+        if (size == tokens.length)
+        {
+            tokens = Arrays.copyOf(tokens, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+
+        int id = size++;
+        tokens[id] = token;
+        hashes[id] = hash;
+        slots[slot] = id;
+
+        if (size * 2 > slots.length)
+            rehash();
+
+        return id;
+    }
+
+    /**
+     * Returns token with given id
+     * @param id id
+     * @return token
+     */
+    public String token(int id)
+    {
+        return tokens[id];
+    }
+
+    /**
+     * Returns number of tokens
+     * @return number of tokens
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Doubles the table
+     */
+    private void rehash()
+    {
+        slots = new int[slots.length * 2];
+        Arrays.fill(slots, -1);
+        int mask = slots.length - 1;
+
+        for (int id = 0; id < size; id++)
+        {
+            int slot = hashes[id] & mask;
+            while (slots[slot] >= 0)
+                slot = (slot + 1) & mask;
+            slots[slot] = id;
+        }
+    }
+
+    /**
+     * Spreads the bits of String hash codes, which are poorly distributed in the low bits
+     * @param h hash code
+     * @return mixed hash
+     */
+    static int mix(int h)
+    {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -1,19 +1,228 @@
 package app.parametrize.dimensions;
 
+import app.Document;
+import app.Logger;
+import app.SparseVector;
+import app.parametrize.IParametrizer;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
 /**
- * LDA dimensionality reduction given:
- *      document vectors
- *      ONE document label for each document
+ * Fisher linear discriminant analysis - projects vectors to at most (classes - 1) dimensions separating the classes
+ * Each training document is labelled by its first class, documents without a class do not take part
+ * Directions w maximize between-class over within-class scatter, Sb w = lambda Sw w. Only the input dimensions
+ * non-zero in the most documents take part, Sw is a dense matrix over them
+ * Sw is accumulated from sparse vectors as the sum of their outer products less the class mean outer products,
+ * rows split among threads. Sb has rank below the number of classes, so with Sw = L L^T the problem reduces to
+ * an eigenproblem of a classes x classes matrix. The projection whitens the within-class scatter and is centered
  */
-public class LDA
+public class LDA extends Projection
 {
-    public void initialize(double[][] vectors, int[] vectorClasses, String[] classes)
+    /** Default maximum number of input dimensions taking part */
+    public static final int DEFAULT_FEATURES = 2000;
+
+    /** Added to the diagonal of Sw as a fraction of its mean diagonal, Sw is singular with fewer documents than dimensions */
+    private static final double REGULARIZATION = 0.1;
+
+    /** Rows of Sw accumulated by one task */
+    private static final int BLOCK_ROWS = 64;
+
+    /** Maximum number of input dimensions taking part */
+    private int maxFeatures;
+
+    public static String identifier = "lda";
+
+    public LDA() {}
+
+    /**
+     * @param inner parametrizer whose vectors are projected
+     * @param dimensions maximum number of dimensions, 0 for classes - 1
+     * @param maxFeatures maximum number of input dimensions taking part
+     */
+    public LDA(IParametrizer inner, int dimensions, int maxFeatures)
     {
+        super(inner, dimensions);
+        if (dimensions < 0 || maxFeatures < 1)
+            throw new IllegalArgumentException("Invalid LDA parameters");
+
+        this.maxFeatures = maxFeatures;
+    }
 
+    @Override
+    protected String getIdentifier()
+    {
+        return identifier;
     }
 
-    private double[][][] separateIntoClasses(double[][] vectors, int[] vectorClasses)
+    @Override
+    protected void fit(SparseVector[] vectors, Document[] documents, int inputLength)
     {
-        return null;
+        String[] classes = Arrays.stream(documents).filter(d -> !d.classes.isEmpty()).map(d -> d.classes.get(0))
+                .distinct().sorted().toArray(String[]::new);
+        if (classes.length < 2)
+        {
+            Logger.error("LDA needs documents of at least two classes, program will exit.");
+            System.exit(1);
+        }
+
+        int[] labels = new int[documents.length];
+        for (int i = 0; i < documents.length; i++)
+            labels[i] = documents[i].classes.isEmpty() ? -1 : Arrays.binarySearch(classes, documents[i].classes.get(0));
+
+        int[] features = frequentFeatures(vectors, inputLength, maxFeatures);
+        int n = features.length;
+        int[] rows = new int[inputLength];
+        Arrays.fill(rows, -1);
+        for (int i = 0; i < n; i++)
+            rows[features[i]] = i;
+
+        // Labelled vectors restricted to the features, their rows ascending
+        int[][] vectorRows = new int[vectors.length][];
+        double[][] vectorValues = new double[vectors.length][];
+        for (int i = 0; i < vectors.length; i++)
+        {
+            SparseVector vector = vectors[i];
+            int count = labels[i] < 0 ? 0 : (int) Arrays.stream(vector.indexes).filter(index -> rows[index] >= 0).count();
+            vectorRows[i] = new int[count];
+            vectorValues[i] = new double[count];
+            for (int j = 0, k = 0; k < count; j++)
+            {
+                if (rows[vector.indexes[j]] >= 0)
+                {
+                    vectorRows[i][k] = rows[vector.indexes[j]];
+                    vectorValues[i][k++] = vector.values[j];
+                }
+            }
+        }
+
+        Logger.info("Accumulating LDA scatter over " + n + " dimensions");
+        int classCount = classes.length;
+        double[][] classSums = new double[classCount][n];
+        int[] classSizes = new int[classCount];
+        for (int i = 0; i < vectors.length; i++)
+        {
+            if (labels[i] < 0)
+                continue;
+
+            classSizes[labels[i]]++;
+            for (int j = 0; j < vectorRows[i].length; j++)
+                classSums[labels[i]][vectorRows[i][j]] += vectorValues[i][j];
+        }
+
+        double[] scatter = withinClassScatter(vectorRows, vectorValues, classSums, classSizes, n);
+
+        double trace = 0;
+        for (int i = 0; i < n; i++)
+            trace += scatter[i * n + i];
+        double ridge = trace > 0 ? REGULARIZATION * trace / n : 1;
+        for (int i = 0; i < n; i++)
+            scatter[i * n + i] += ridge;
+
+        Logger.info("Solving LDA eigenproblem");
+        Matrices.cholesky(scatter, n);
+
+        // Sb = B B^T with columns sqrt(size) (class mean - mean), G = L^-1 B
+        int labelled = Arrays.stream(classSizes).sum();
+        double[] mean = new double[n];
+        for (int c = 0; c < classCount; c++)
+            for (int i = 0; i < n; i++)
+                mean[i] += classSums[c][i] / labelled;
+
+        double[][] g = new double[classCount][];
+        IntStream.range(0, classCount).parallel().forEach(c ->
+        {
+            double[] column = new double[n];
+            double weight = classSizes[c] == 0 ? 0 : Math.sqrt(classSizes[c]);
+            for (int i = 0; i < n; i++)
+                column[i] = classSizes[c] == 0 ? 0 : weight * (classSums[c][i] / classSizes[c] - mean[i]);
+            g[c] = Matrices.solveLower(scatter, n, column);
+        });
+
+        // Eigenvectors of G G^T from those of G^T G
+        double[] small = new double[classCount * classCount];
+        for (int c = 0; c < classCount; c++)
+            for (int d = 0; d < classCount; d++)
+                small[c * classCount + d] = Matrices.dot(g[c], 0, g[d], 0, n);
+        double[] eigenvectors = new double[classCount * classCount];
+        double[] eigenvalues = Matrices.symmetricEigen(small, classCount, eigenvectors);
+
+        int limit = Math.min(classCount - 1, dimensions > 0 ? dimensions : Integer.MAX_VALUE);
+        int k = 0;
+        while (k < limit && eigenvalues[k] > 1e-10 * eigenvalues[0])
+            k++;
+
+        double[] projection = new double[n * k];
+        for (int j = 0; j < k; j++)
+        {
+            double[] u = new double[n];
+            for (int c = 0; c < classCount; c++)
+            {
+                double weight = eigenvectors[c * classCount + j] / Math.sqrt(eigenvalues[j]);
+                for (int i = 0; i < n; i++)
+                    u[i] += weight * g[c][i];
+            }
+
+            double[] w = Matrices.solveLowerTransposed(scatter, n, u);
+            for (int i = 0; i < n; i++)
+                projection[i * k + j] = w[i];
+        }
+
+        setProjection(features, projection, k);
+        center(vectors);
+    }
+
+    /**
+     * Within-class scatter - sum of outer products of the vectors less size * mean mean^T of each class
+     * Rows are accumulated in blocks, each block by one task over all vectors, so no two tasks write the same entry
+     * @param vectorRows rows of the non-zero components of each vector, ascending
+     * @param vectorValues values of the components
+     * @param classSums sum of the vectors of each class
+     * @param classSizes number of vectors of each class
+     * @param n number of dimensions
+     * @return dense n x n matrix
+     */
+    private static double[] withinClassScatter(int[][] vectorRows, double[][] vectorValues, double[][] classSums, int[] classSizes, int n)
+    {
+        double[] scatter = new double[n * n];
+
+        IntStream.range(0, (n + BLOCK_ROWS - 1) / BLOCK_ROWS).parallel().forEach(block ->
+        {
+            int from = block * BLOCK_ROWS, to = Math.min(from + BLOCK_ROWS, n);
+            for (int v = 0; v < vectorRows.length; v++)
+            {
+                int[] rows = vectorRows[v];
+                double[] values = vectorValues[v];
+
+                // Components within the block's rows
+                int start = Arrays.binarySearch(rows, from);
+                for (int a = start < 0 ? -start - 1 : start; a < rows.length && rows[a] < to; a++)
+                {
+                    int offset = rows[a] * n;
+                    double value = values[a];
+                    for (int b = 0; b < rows.length; b++)
+                        scatter[offset + rows[b]] += value * values[b];
+                }
+            }
+
+            for (int c = 0; c < classSums.length; c++)
+            {
+                if (classSizes[c] == 0)
+                    continue;
+
+                double[] sum = classSums[c];
+                for (int i = from; i < to; i++)
+                {
+                    double weight = sum[i] / classSizes[c];
+                    if (weight == 0)
+                        continue;
+
+                    for (int j = 0; j < n; j++)
+                        scatter[i * n + j] -= weight * sum[j];
+                }
+            }
+        });
+
+        return scatter;
     }
 }
@@ -0,0 +1,297 @@
+package app.parametrize.dimensions;
+
+import app.Document;
+import app.Logger;
+import app.SparseVector;
+import app.parametrize.IParametrizer;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Latent semantic analysis - projects vectors to the top right singular vectors of the training document matrix
+ * The truncated SVD is randomized: the range of the matrix X is sampled by X times a Gaussian matrix, sharpened by
+ * power iterations and orthonormalized to Q. The small matrix Q^T X then gives the singular vectors
+ * Products with X and X^T go over rows of sparse copies of X and of its transpose, rows in parallel
+ * New documents are folded in as V^T x, so dimensions keep the weight of their singular values. Unlike LDA,
+ * the number of dimensions is not limited by the number of classes and no labels are needed
+ */
+public class LSA extends Projection
+{
+    /** Default number of dimensions */
+    public static final int DEFAULT_DIMENSIONS = 100;
+
+    /** Random samples beyond the requested dimensions */
+    private static final int OVERSAMPLING = 10;
+
+    /** Power iterations, each multiplies by X^T X and sharpens the decay of the singular values */
+    private static final int POWER_ITERATIONS = 2;
+
+    /** Seed of the Gaussian matrix, the projection is the same for the same training vectors */
+    private static final long SEED = 42;
+
+    public static String identifier = "lsa";
+
+    public LSA() {}
+
+    /**
+     * @param inner parametrizer whose vectors are projected
+     * @param dimensions number of dimensions, fewer if the training matrix has a lower rank
+     */
+    public LSA(IParametrizer inner, int dimensions)
+    {
+        super(inner, dimensions);
+        if (dimensions < 1)
+            throw new IllegalArgumentException("Invalid LSA parameters");
+    }
+
+    @Override
+    protected String getIdentifier()
+    {
+        return identifier;
+    }
+
+    @Override
+    protected void fit(SparseVector[] vectors, Document[] documents, int inputLength)
+    {
+        int[] features = frequentFeatures(vectors, inputLength, inputLength);
+        SparseRows x = new SparseRows(vectors, features, inputLength);
+        SparseRows transposed = x.transpose();
+
+        int samples = Math.min(dimensions + OVERSAMPLING, Math.min(x.rowCount(), transposed.rowCount()));
+        if (samples == 0)
+        {
+            setProjection(features, new double[0], 0);
+            return;
+        }
+
+        Logger.info("Sampling range of the " + x.rowCount() + " x " + transposed.rowCount() + " document matrix");
+        Random random = new Random(SEED);
+        double[] omega = new double[transposed.rowCount() * samples];
+        for (int i = 0; i < omega.length; i++)
+            omega[i] = random.nextGaussian();
+
+        // Intermediate bases only keep the columns from collapsing to the top singular vector, one pass is enough
+        double[] q = x.multiply(omega, samples);
+        for (int iteration = 0; iteration < POWER_ITERATIONS; iteration++)
+        {
+            double[] z = orthonormalize(transposed.multiply(orthonormalize(q, samples, 1), samples), samples, 1);
+            q = x.multiply(z, samples);
+        }
+        q = orthonormalize(q, samples, 2);
+
+        // B = Q^T X = Z^T with Z = X^T Q, B B^T = Z^T Z = U S^2 U^T, V = Z U S^-1
+        Logger.info("Calculating singular vectors");
+        double[] z = transposed.multiply(q, samples);
+        double[] gram = gram(z, samples);
+        double[] u = new double[samples * samples];
+        double[] squares = Matrices.symmetricEigen(gram, samples, u);
+
+        int k = 0;
+        while (k < Math.min(dimensions, samples) && squares[k] > 1e-12 * squares[0])
+            k++;
+
+        int n = features.length;
+        int kept = k;
+        double[] projection = new double[n * k];
+        Matrices.rows(0, n).forEach(f ->
+        {
+            for (int j = 0; j < kept; j++)
+            {
+                double sum = 0;
+                for (int s = 0; s < samples; s++)
+                    sum += z[f * samples + s] * u[s * samples + j];
+                projection[f * kept + j] = sum / Math.sqrt(squares[j]);
+            }
+        });
+
+        setProjection(features, projection, k);
+    }
+
+    /**
+     * Orthonormalizes columns of a row-major matrix by Cholesky QR - Y = Q R with R^T R = Y^T Y
+     * A single pass loses orthogonality with ill-conditioned Y, a second pass restores it
+     * A small ridge keeps R invertible when the columns are dependent
+     * @param y row-major matrix with the given number of columns
+     * @param columns number of columns
+     * @param passes number of passes
+     * @return Q
+     */
+    private static double[] orthonormalize(double[] y, int columns, int passes)
+    {
+        for (int pass = 0; pass < passes; pass++)
+        {
+            double[] l = gram(y, columns);
+            double trace = 0;
+            for (int c = 0; c < columns; c++)
+                trace += l[c * columns + c];
+            for (int c = 0; c < columns; c++)
+                l[c * columns + c] += 1e-10 * trace / columns + Double.MIN_NORMAL;
+
+            Matrices.cholesky(l, columns);
+
+            // Row i of Q solves L q = y_i
+            double[] matrix = y;
+            y = new double[matrix.length];
+            double[] q = y;
+            Matrices.rows(0, matrix.length / columns).forEach(i ->
+            {
+                double[] row = new double[columns];
+                System.arraycopy(matrix, i * columns, row, 0, columns);
+                System.arraycopy(Matrices.solveLower(l, columns, row), 0, q, i * columns, columns);
+            });
+        }
+
+        return y;
+    }
+
+    /**
+     * Returns Y^T Y, rows of Y are summed in parallel
+     * @param y row-major matrix
+     * @param columns number of columns
+     * @return columns x columns matrix
+     */
+    private static double[] gram(double[] y, int columns)
+    {
+        int rows = y.length / columns;
+        return IntStream.range(0, rows).parallel().collect(() -> new double[columns * columns], (sum, i) ->
+        {
+            int offset = i * columns;
+            for (int a = 0; a < columns; a++)
+            {
+                double value = y[offset + a];
+                if (value == 0)
+                    continue;
+
+                for (int b = 0; b < columns; b++)
+                    sum[a * columns + b] += value * y[offset + b];
+            }
+        }, (sum, other) ->
+        {
+            for (int i = 0; i < sum.length; i++)
+                sum[i] += other[i];
+        });
+    }
+
+    /**
+     * Sparse matrix stored by rows
+     */
+    private static class SparseRows
+    {
+        /** Row r occupies [starts[r], starts[r + 1]) of columns and values */
+        private final int[] starts;
+
+        private final int[] columns;
+
+        private final double[] values;
+
+        /** Number of columns */
+        private final int width;
+
+        /**
+         * Rows of the vectors restricted to the features, feature i becomes column i
+         * @param vectors vectors
+         * @param features input dimensions, ascending
+         * @param inputLength length of the vectors
+         */
+        private SparseRows(SparseVector[] vectors, int[] features, int inputLength)
+        {
+            int[] map = new int[inputLength];
+            Arrays.fill(map, -1);
+            for (int i = 0; i < features.length; i++)
+                map[features[i]] = i;
+
+            starts = new int[vectors.length + 1];
+            for (int r = 0; r < vectors.length; r++)
+            {
+                int count = 0;
+                for (int index : vectors[r].indexes)
+                    if (map[index] >= 0)
+                        count++;
+                starts[r + 1] = starts[r] + count;
+            }
+
+            columns = new int[starts[vectors.length]];
+            values = new double[starts[vectors.length]];
+            for (int r = 0, p = 0; r < vectors.length; r++)
+            {
+                for (int j = 0; j < vectors[r].indexes.length; j++)
+                {
+                    int column = map[vectors[r].indexes[j]];
+                    if (column < 0)
+                        continue;
+
+                    columns[p] = column;
+                    values[p++] = vectors[r].values[j];
+                }
+            }
+            width = features.length;
+        }
+
+        private SparseRows(int[] starts, int[] columns, double[] values, int width)
+        {
+            this.starts = starts;
+            this.columns = columns;
+            this.values = values;
+            this.width = width;
+        }
+
+        private int rowCount()
+        {
+            return starts.length - 1;
+        }
+
+        /**
+         * Returns the transposed matrix, rows of the result have ascending columns
+         * @return transposed matrix
+         */
+        private SparseRows transpose()
+        {
+            int[] transposedStarts = new int[width + 1];
+            for (int column : columns)
+                transposedStarts[column + 1]++;
+            for (int c = 0; c < width; c++)
+                transposedStarts[c + 1] += transposedStarts[c];
+
+            int[] next = Arrays.copyOf(transposedStarts, width);
+            int[] transposedColumns = new int[columns.length];
+            double[] transposedValues = new double[values.length];
+            for (int r = 0; r < rowCount(); r++)
+            {
+                for (int p = starts[r]; p < starts[r + 1]; p++)
+                {
+                    int q = next[columns[p]]++;
+                    transposedColumns[q] = r;
+                    transposedValues[q] = values[p];
+                }
+            }
+
+            return new SparseRows(transposedStarts, transposedColumns, transposedValues, rowCount());
+        }
+
+        /**
+         * Multiplies by a dense row-major matrix with width rows, rows of the result in parallel
+         * @param dense dense matrix
+         * @param denseColumns number of columns of the dense matrix
+         * @return row-major rowCount() x denseColumns matrix
+         */
+        private double[] multiply(double[] dense, int denseColumns)
+        {
+            double[] product = new double[rowCount() * denseColumns];
+            Matrices.rows(0, rowCount()).forEach(r ->
+            {
+                int offset = r * denseColumns;
+                for (int p = starts[r]; p < starts[r + 1]; p++)
+                {
+                    double value = values[p];
+                    int row = columns[p] * denseColumns;
+                    for (int c = 0; c < denseColumns; c++)
+                        product[offset + c] += value * dense[row + c];
+                }
+            });
+
+            return product;
+        }
+    }
+}
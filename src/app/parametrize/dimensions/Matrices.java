@@ -0,0 +1,192 @@
+package app.parametrize.dimensions;
+
+import java.util.stream.IntStream;
+
+/**
+ * Dense linear algebra on row-major double arrays, entry (i, j) of an n x n matrix is at i * n + j
+ */
+final class Matrices
+{
+    /** Rows below which a loop is not worth splitting among threads */
+    private static final int PARALLEL_ROWS = 256;
+
+    private Matrices() {}
+
+    /**
+     * Cholesky decomposition A = L L^T in place, the lower triangle of a is replaced by L
+     * Rows of each column are calculated in parallel, the upper triangle is left untouched
+     * @param a symmetric positive definite matrix
+     * @param n size
+     * @throws IllegalArgumentException if the matrix is not positive definite
+     */
+    static void cholesky(double[] a, int n)
+    {
+        for (int j = 0; j < n; j++)
+        {
+            int row = j * n;
+            double diagonal = a[row + j] - dot(a, row, a, row, j);
+            if (!(diagonal > 0))
+                throw new IllegalArgumentException("Matrix is not positive definite");
+
+            double pivot = Math.sqrt(diagonal);
+            a[row + j] = pivot;
+
+            int column = j;
+            rows(j + 1, n).forEach(i -> a[i * n + column] = (a[i * n + column] - dot(a, i * n, a, row, column)) / pivot);
+        }
+    }
+
+    /**
+     * Solves L x = b by forward substitution
+     * @param l lower triangular matrix
+     * @param n size
+     * @param b right-hand side
+     * @return x
+     */
+    static double[] solveLower(double[] l, int n, double[] b)
+    {
+        double[] x = new double[n];
+        for (int i = 0; i < n; i++)
+            x[i] = (b[i] - dot(l, i * n, x, 0, i)) / l[i * n + i];
+
+        return x;
+    }
+
+    /**
+     * Solves L^T x = b by back substitution
+     * @param l lower triangular matrix
+     * @param n size
+     * @param b right-hand side
+     * @return x
+     */
+    static double[] solveLowerTransposed(double[] l, int n, double[] b)
+    {
+        double[] x = b.clone();
+        for (int i = n - 1; i >= 0; i--)
+        {
+            x[i] /= l[i * n + i];
+
+            // Column i of L^T is row i of L
+            for (int k = 0; k < i; k++)
+                x[k] -= l[i * n + k] * x[i];
+        }
+
+        return x;
+    }
+
+    /**
+     * Eigenvalues and eigenvectors of a small symmetric matrix by cyclic Jacobi rotations
+     * @param a symmetric matrix, destroyed
+     * @param n size
+     * @param vectors n x n array for the eigenvectors, column j belongs to eigenvalue j
+     * @return eigenvalues from the highest
+     */
+    static double[] symmetricEigen(double[] a, int n, double[] vectors)
+    {
+        for (int i = 0; i < n * n; i++)
+            vectors[i] = i % (n + 1) == 0 ? 1 : 0;
+
+        for (int sweep = 0; sweep < 100; sweep++)
+        {
+            double offDiagonal = 0, total = 0;
+            for (int i = 0; i < n * n; i++)
+            {
+                total += a[i] * a[i];
+                if (i / n != i % n)
+                    offDiagonal += a[i] * a[i];
+            }
+            if (offDiagonal <= 1e-30 * total)
+                break;
+
+            for (int p = 0; p < n - 1; p++)
+            {
+                for (int q = p + 1; q < n; q++)
+                {
+                    double apq = a[p * n + q];
+                    if (apq == 0)
+                        continue;
+
+                    // Rotation zeroing (p, q)
+                    double theta = (a[q * n + q] - a[p * n + p]) / (2 * apq);
+                    double t = Math.signum(theta) / (Math.abs(theta) + Math.sqrt(theta * theta + 1));
+                    if (theta == 0)
+                        t = 1;
+                    double c = 1 / Math.sqrt(t * t + 1), s = t * c;
+
+                    for (int k = 0; k < n; k++)
+                    {
+                        double akp = a[k * n + p], akq = a[k * n + q];
+                        a[k * n + p] = c * akp - s * akq;
+                        a[k * n + q] = s * akp + c * akq;
+                    }
+                    for (int k = 0; k < n; k++)
+                    {
+                        double apk = a[p * n + k], aqk = a[q * n + k];
+                        a[p * n + k] = c * apk - s * aqk;
+                        a[q * n + k] = s * apk + c * aqk;
+                    }
+                    for (int k = 0; k < n; k++)
+                    {
+                        double vkp = vectors[k * n + p], vkq = vectors[k * n + q];
+                        vectors[k * n + p] = c * vkp - s * vkq;
+                        vectors[k * n + q] = s * vkp + c * vkq;
+                    }
+                }
+            }
+        }
+
+        // Selection sort of the eigenvalues, columns of the vectors follow
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++)
+            values[i] = a[i * n + i];
+        for (int i = 0; i < n; i++)
+        {
+            int max = i;
+            for (int j = i + 1; j < n; j++)
+                if (values[j] > values[max])
+                    max = j;
+
+            double value = values[i];
+            values[i] = values[max];
+            values[max] = value;
+            for (int k = 0; k < n; k++)
+            {
+                double v = vectors[k * n + i];
+                vectors[k * n + i] = vectors[k * n + max];
+                vectors[k * n + max] = v;
+            }
+        }
+
+        return values;
+    }
+
+    /**
+     * Dot product of two ranges
+     * @param a first array
+     * @param aOffset start in the first array
+     * @param b second array
+     * @param bOffset start in the second array
+     * @param length length of the ranges
+     * @return dot product
+     */
+    static double dot(double[] a, int aOffset, double[] b, int bOffset, int length)
+    {
+        double sum = 0;
+        for (int k = 0; k < length; k++)
+            sum += a[aOffset + k] * b[bOffset + k];
+
+        return sum;
+    }
+
+    /**
+     * Returns a range of rows, parallel if it is long
+     * @param from first row
+     * @param to end of the rows
+     * @return rows
+     */
+    static IntStream rows(int from, int to)
+    {
+        IntStream rows = IntStream.range(from, to);
+        return to - from >= PARALLEL_ROWS ? rows.parallel() : rows;
+    }
+}
@@ -0,0 +1,339 @@
+package app.parametrize.dimensions;
+
+import app.Document;
+import app.Model;
+import app.ModelReader;
+import app.ModelWriter;
+import app.SparseVector;
+import app.parametrize.IParametrizer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Dimensionality reduction stage - projects vectors of another parametrizer by a linear map to a few dense dimensions
+ * The map is fitted by subclasses on the training vectors and stored with the model, followed by the other parametrizer
+ * Only some input dimensions may take part, the rest are ignored
+ */
+public abstract class Projection implements IParametrizer
+{
+    /** Parametrizer whose vectors are projected */
+    protected IParametrizer inner;
+
+    /** Requested number of dimensions, the number of projected dimensions once fitted */
+    protected int dimensions;
+
+    /** Length of the inner parametrizer's vectors */
+    private int inputLength;
+
+    /** Input dimensions taking part in the projection, ascending */
+    private int[] features;
+
+    /** Row of the projection of each input dimension, -1 for dimensions not taking part */
+    private int[] rows;
+
+    /** Projection, row-major features.length x dimensions */
+    private float[] projection;
+
+    /** Subtracted from every projected vector */
+    private float[] offset;
+
+    /** Inner vectors of the training documents, kept from initialize until parametrizeAll */
+    private SparseVector[] trainingVectors;
+
+    /** Training documents of the kept vectors */
+    private Document[] trainingDocuments;
+
+    protected Projection() {}
+
+    /**
+     * @param inner parametrizer whose vectors are projected
+     * @param dimensions number of dimensions
+     */
+    protected Projection(IParametrizer inner, int dimensions)
+    {
+        this.inner = inner;
+        this.dimensions = dimensions;
+    }
+
+    /**
+     * Returns identifier written to the model
+     * @return identifier
+     */
+    protected abstract String getIdentifier();
+
+    /**
+     * Fits the projection to the training vectors and sets it by setProjection
+     * @param vectors vectors of the inner parametrizer
+     * @param documents training documents
+     * @param inputLength length of the vectors
+     */
+    protected abstract void fit(SparseVector[] vectors, Document[] documents, int inputLength);
+
+    /**
+     * Sets the fitted projection
+     * @param features input dimensions taking part, ascending
+     * @param projection row-major features.length x dimensions
+     * @param dimensions number of projected dimensions
+     */
+    protected void setProjection(int[] features, double[] projection, int dimensions)
+    {
+        this.features = features;
+        this.dimensions = dimensions;
+        this.projection = new float[projection.length];
+        for (int i = 0; i < projection.length; i++)
+            this.projection[i] = (float) projection[i];
+
+        offset = new float[dimensions];
+        mapRows();
+    }
+
+    public IParametrizer getInner()
+    {
+        return inner;
+    }
+
+    @Override
+    public int getVectorLength()
+    {
+        return dimensions;
+    }
+
+    @Override
+    public SparseVector parametrize(Document d)
+    {
+        return project(inner.parametrize(d));
+    }
+
+    /**
+     * Projects a vector of the inner parametrizer
+     * @param vector vector
+     * @return projected vector
+     */
+    public SparseVector project(SparseVector vector)
+    {
+        double[] projected = new double[dimensions];
+        for (int i = 0; i < vector.indexes.length; i++)
+        {
+            int index = vector.indexes[i];
+            int row = index < inputLength ? rows[index] : -1;
+            if (row < 0)
+                continue;
+
+            double value = vector.values[i];
+            for (int k = 0, start = row * dimensions; k < dimensions; k++)
+                projected[k] += value * projection[start + k];
+        }
+
+        for (int k = 0; k < dimensions; k++)
+            projected[k] -= offset[k];
+
+        return SparseVector.fromDense(projected);
+    }
+
+    /**
+     * Initializes the inner parametrizer and fits the projection
+     * @param documents training documents
+     */
+    @Override
+    public void initialize(Document[] documents)
+    {
+        inner.initialize(documents);
+        fitInitialized(documents);
+    }
+
+    /**
+     * Fits the projection to an inner parametrizer already initialized on the training documents
+     * The inner vectors of the training documents are kept for parametrizeAll
+     * @param documents training documents
+     */
+    public void fitInitialized(Document[] documents)
+    {
+        inputLength = inner.getVectorLength();
+
+        SparseVector[] vectors = parametrizeAll(inner, documents);
+        fit(vectors, documents, inputLength);
+        trainingVectors = vectors;
+        trainingDocuments = documents;
+    }
+
+    /**
+     * Parametrizes documents in parallel
+     * The training documents of a projection are projected from the inner vectors kept by initialize,
+     * so that every training document is parametrized by the inner parametrizer once
+     * The kept vectors are released
+     * @param parametrizer initialized parametrizer
+     * @param documents documents
+     * @return vector of each document
+     */
+    public static SparseVector[] parametrizeAll(IParametrizer parametrizer, Document[] documents)
+    {
+        SparseVector[] vectors = new SparseVector[documents.length];
+        if (parametrizer instanceof Projection)
+        {
+            Projection projection = (Projection) parametrizer;
+            SparseVector[] innerVectors = projection.trainingVectors;
+            boolean kept = projection.trainingDocuments == documents;
+            projection.trainingVectors = null;
+            projection.trainingDocuments = null;
+
+            if (kept)
+            {
+                IntStream.range(0, documents.length).parallel().forEach(i -> vectors[i] = projection.project(innerVectors[i]));
+                return vectors;
+            }
+        }
+
+        IntStream.range(0, documents.length).parallel().forEach(i -> vectors[i] = parametrizer.parametrize(documents[i]));
+        return vectors;
+    }
+
+    /**
+     * Centers projected vectors - the projected mean of the training vectors is subtracted from each
+     * @param vectors training vectors of the inner parametrizer
+     */
+    protected void center(SparseVector[] vectors)
+    {
+        double[] sum = new double[dimensions];
+        for (SparseVector vector : vectors)
+        {
+            SparseVector projected = project(vector);
+            for (int i = 0; i < projected.indexes.length; i++)
+                sum[projected.indexes[i]] += projected.values[i];
+        }
+
+        for (int k = 0; k < dimensions; k++)
+            offset[k] = (float) (sum[k] / Math.max(vectors.length, 1));
+    }
+
+    /**
+     * Returns the input dimensions non-zero in the most vectors
+     * @param vectors vectors
+     * @param inputLength length of the vectors
+     * @param count maximum number of dimensions
+     * @return dimensions, ascending
+     */
+    protected static int[] frequentFeatures(SparseVector[] vectors, int inputLength, int count)
+    {
+        int[] frequencies = new int[inputLength];
+        for (SparseVector vector : vectors)
+            for (int index : vector.indexes)
+                frequencies[index]++;
+
+        int[] used = IntStream.range(0, inputLength).filter(i -> frequencies[i] > 0).toArray();
+        if (used.length <= count)
+            return used;
+
+        // Sorted by frequency from the highest, ties by index
+        long[] keys = new long[used.length];
+        for (int i = 0; i < used.length; i++)
+            keys[i] = ((long) (Integer.MAX_VALUE - frequencies[used[i]]) << 32) | used[i];
+        Arrays.sort(keys);
+
+        int[] features = new int[count];
+        for (int i = 0; i < count; i++)
+            features[i] = (int) keys[i];
+        Arrays.sort(features);
+
+        return features;
+    }
+
+    /**
+     * Builds the row lookup of the input dimensions
+     */
+    private void mapRows()
+    {
+        rows = new int[inputLength];
+        Arrays.fill(rows, -1);
+        for (int i = 0; i < features.length; i++)
+            rows[features[i]] = i;
+    }
+
+    @Override
+    public List<String> export()
+    {
+        List<String> lines = new ArrayList<>();
+        lines.add("**_parametrizer:" + getIdentifier());
+        lines.add("**_projection:" + dimensions + ";" + inputLength);
+        lines.add(join(Arrays.stream(features).mapToObj(Integer::toString).toArray(String[]::new)));
+        lines.add(join(floats(offset, 0, dimensions)));
+        for (int i = 0; i < features.length; i++)
+            lines.add(join(floats(projection, i * dimensions, dimensions)));
+
+        // The inner parametrizer reads its lines to the end, it goes last
+        lines.addAll(inner.export());
+
+        return lines;
+    }
+
+    @Override
+    public void load(List<String> lines)
+    {
+        String[] parameters = lines.get(1).split(":")[1].split(";");
+        dimensions = Integer.parseInt(parameters[0]);
+        inputLength = Integer.parseInt(parameters[1]);
+
+        features = lines.get(2).isEmpty() ? new int[0] : Arrays.stream(lines.get(2).split(";")).mapToInt(Integer::parseInt).toArray();
+        offset = parseFloats(lines.get(3), dimensions);
+        projection = new float[features.length * dimensions];
+        for (int i = 0; i < features.length; i++)
+            System.arraycopy(parseFloats(lines.get(4 + i), dimensions), 0, projection, i * dimensions, dimensions);
+        mapRows();
+
+        List<String> innerLines = lines.subList(4 + features.length, lines.size());
+        inner = Model.parametrizerForIdentifier(innerLines.get(0).substring("**_parametrizer:".length()));
+        inner.load(innerLines);
+    }
+
+    @Override
+    public void write(ModelWriter writer) throws IOException
+    {
+        writer.writeString(getIdentifier());
+        writer.writeInt(dimensions);
+        writer.writeInt(inputLength);
+        writer.writeInts(features);
+        writer.writeFloats(offset);
+        writer.writeFloats(projection);
+        inner.write(writer);
+    }
+
+    @Override
+    public void read(ModelReader reader)
+    {
+        dimensions = reader.readInt();
+        inputLength = reader.readInt();
+        features = reader.readInts();
+        offset = reader.readFloats();
+        projection = reader.readFloats();
+        mapRows();
+
+        inner = Model.readParametrizer(reader);
+    }
+
+    private static String join(String[] values)
+    {
+        return String.join(";", values);
+    }
+
+    private static String[] floats(float[] values, int from, int count)
+    {
+        String[] strings = new String[count];
+        for (int i = 0; i < count; i++)
+            strings[i] = Float.toString(values[from + i]);
+
+        return strings;
+    }
+
+    private static float[] parseFloats(String line, int count)
+    {
+        float[] values = new float[count];
+        String[] parts = line.split(";");
+        for (int i = 0; i < count; i++)
+            values[i] = Float.parseFloat(parts[i]);
+
+        return values;
+    }
+}
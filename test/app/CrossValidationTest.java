@@ -0,0 +1,113 @@
+package app;
+
+import app.classify.KNearestNeighbours;
+import app.parametrize.IParametrizer;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CrossValidationTest {
+
+    private static TrainingSet corpus()
+    {
+        Settings.trainingSetPath = "data/uir/Train";
+        Settings.classesPath = "data/uir/classes.txt";
+        return TrainingSet.load();
+    }
+
+    @Test
+    void everyDocumentIsTestedOnce()
+    {
+        TrainingSet corpus = corpus();
+        CrossValidation crossValidation = new CrossValidation(corpus.classes, corpus.documents, 3);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        List<CrossValidation.Result> results = crossValidation.run(new String[] {"tfidf", "hashing"}, new int[] {0, 2},
+                new String[] {"nbayes", "knn"}, new int[] {1, 5}, pool);
+        pool.shutdown();
+
+        // tfidf with two min counts and hashing with none, each with Naive Bayes and K-NN with two values of K
+        assertEquals(9, results.size());
+        for (CrossValidation.Result result : results)
+        {
+            assertEquals(corpus.documents.length, result.tested);
+            assertTrue(result.accuracy() > 0 && result.accuracy() <= 1, "accuracy " + result.accuracy());
+            assertTrue(result.macroF1() >= 0 && result.macroF1() <= 1, "macro F1 " + result.macroF1());
+        }
+        assertTrue(crossValidation.table(results).contains("F1 per class"));
+    }
+
+    @Test
+    void sharedSettingsMatchSeparateRuns()
+    {
+        TrainingSet corpus = corpus();
+        CrossValidation crossValidation = new CrossValidation(corpus.classes, corpus.documents, 4);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        List<CrossValidation.Result> sweep = crossValidation.run(new String[] {"tfidf"}, new int[] {0},
+                new String[] {"nbayes", "knn"}, new int[] {1, 3, 7}, pool);
+        pool.shutdown();
+
+        // Each setting alone, sequentially, has to give exactly the counts of the shared sweep
+        ForkJoinPool single = new ForkJoinPool(1);
+        for (CrossValidation.Result expected : sweep)
+        {
+            CrossValidation.Result alone = crossValidation.run(new String[] {"tfidf"}, new int[] {0},
+                    new String[] {expected.classifier}, new int[] {Math.max(expected.neighbours, 1)}, single).get(0);
+            assertEquals(expected.hits, alone.hits);
+            assertArrayEquals(expected.truePositives, alone.truePositives);
+            assertArrayEquals(expected.falsePositives, alone.falsePositives);
+            assertArrayEquals(expected.falseNegatives, alone.falseNegatives);
+        }
+        single.shutdown();
+    }
+
+    @Test
+    void sharedGramCountsMatchSeparateRuns()
+    {
+        TrainingSet corpus = corpus();
+        CrossValidation crossValidation = new CrossValidation(corpus.classes, corpus.documents, 3);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        List<CrossValidation.Result> sweep = crossValidation.run(new String[] {"tfidf", "tfidf+lsa:10"}, new int[] {0, 2, 8},
+                new String[] {"knn"}, new int[] {3}, pool);
+
+        // Minimum counts of one parametrizer share the grams counted in a fold
+        for (CrossValidation.Result expected : sweep)
+        {
+            CrossValidation.Result alone = crossValidation.run(new String[] {expected.parametrizer}, new int[] {expected.minOccurrences},
+                    new String[] {"knn"}, new int[] {3}, pool).get(0);
+            assertEquals(expected.hits, alone.hits);
+            assertArrayEquals(expected.truePositives, alone.truePositives);
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    void sharedSearchMatchesSeparateClassifiers()
+    {
+        TrainingSet corpus = corpus();
+        IParametrizer parametrizer = Model.createParametrizer("tfidf", "knn", 0);
+        parametrizer.initialize(corpus.documents);
+        corpus.parametrize(parametrizer);
+
+        int[] neighbours = {1, 4, 9};
+        KNearestNeighbours shared = new KNearestNeighbours(9);
+        shared.train(corpus);
+        KNearestNeighbours[] separate = new KNearestNeighbours[neighbours.length];
+        for (int i = 0; i < neighbours.length; i++)
+        {
+            separate[i] = new KNearestNeighbours(neighbours[i]);
+            separate[i].train(corpus);
+        }
+
+        for (SparseVector vector : corpus.vectors)
+        {
+            String[] estimated = shared.classify(vector, neighbours);
+            for (int i = 0; i < neighbours.length; i++)
+                assertEquals(separate[i].classify(vector), estimated[i]);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package app;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ModelReaderTest {
+
+    @Test
+    void slicesMatchWrittenArrays() throws IOException
+    {
+        int[] offsets = {0, 2, 2, 5};
+        int[] indexes = {1, 4, 0, 3, 9};
+        double[] values = {0.5, 1.5, -2, 3, 7};
+
+        Path file = Files.createTempFile("model", ".bin");
+        try (ModelWriter writer = new ModelWriter(file))
+        {
+            writer.writeInts(offsets);
+            writer.writeInts(indexes);
+            writer.writeDoubles(values);
+            writer.writeInt(42);
+        }
+
+        ModelReader reader = ModelReader.map(file);
+        int[][] indexSlices = reader.readIntSlices(reader.readInts());
+        double[][] valueSlices = reader.readDoubleSlices(offsets);
+        assertArrayEquals(new int[][] {{1, 4}, {}, {0, 3, 9}}, indexSlices);
+        assertArrayEquals(new double[][] {{0.5, 1.5}, {}, {-2, 3, 7}}, valueSlices);
+        assertEquals(42, reader.readInt());
+
+        Files.delete(file);
+    }
+
+    @Test
+    void corruptLengthsUnderflow()
+    {
+        // Negative, larger than the bytes left, and offsets not ending at the array length
+        assertThrows(BufferUnderflowException.class, () -> reader(-1, 0).readInts());
+        assertThrows(BufferUnderflowException.class, () -> reader(Integer.MAX_VALUE, 0).readDoubles());
+        assertThrows(BufferUnderflowException.class, () -> reader(3, 0).readStrings());
+        assertThrows(BufferUnderflowException.class, () -> reader(1, 0).readIntSlices(new int[] {0, 2}));
+    }
+
+    private static ModelReader reader(int... ints)
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(ints.length * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int value : ints)
+            buffer.putInt(value);
+        buffer.flip();
+
+        return new ModelReader(buffer);
+    }
+}
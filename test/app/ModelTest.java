@@ -0,0 +1,432 @@
+package app;
+
+import app.classify.ExactIndex;
+import app.classify.HnswIndex;
+import app.classify.IClassifier;
+import app.classify.InvertedIndex;
+import app.classify.IvfPqIndex;
+import app.classify.KMeans;
+import app.classify.KNearestNeighbours;
+import app.classify.Metric;
+import app.classify.NaiveBayes;
+import app.classify.QuantizedIndex;
+import app.parametrize.NGrams;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ModelTest {
+
+    /**
+     * Classifies every document many times over on several threads
+     * and expects exactly the sequential results
+     */
+    private void assertBatchMatchesSequential(Model m)
+    {
+        Document[] documents = LibraryMethods.loadDocuments(Settings.trainingSetPath);
+        List<Document> repeated = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+        {
+            for (Document d : documents)
+            {
+                repeated.add(d);
+                expected.add(m.classifyDocument(d));
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(8);
+        assertEquals(expected, m.classifyAll(repeated.stream(), pool));
+        pool.shutdown();
+    }
+
+    @Test
+    void classifyAllNaiveBayes()
+    {
+        Settings.trainingSetPath = "data/uir/Train";
+        Settings.classesPath = "data/uir/classes.txt";
+
+        Model m = new Model(new NGrams(true, 2), new NaiveBayes());
+        m.train();
+        assertBatchMatchesSequential(m);
+    }
+
+    @Test
+    void classifyAllKNearestNeighbours()
+    {
+        Settings.trainingSetPath = "data/uir/Train";
+        Settings.classesPath = "data/uir/classes.txt";
+
+        Model m = new Model(new NGrams(false, 1), new KNearestNeighbours(5));
+        m.train();
+        assertBatchMatchesSequential(m);
+
+        m = new Model(new NGrams(true, 1), new KNearestNeighbours(5, new HnswIndex()));
+        m.train();
+        assertBatchMatchesSequential(m);
+    }
+
+    @Test
+    void classifyBatch()
+    {
+        Settings.trainingSetPath = "data/uir/Train";
+        Settings.classesPath = "data/uir/classes.txt";
+
+        Model m = new Model(new NGrams(false, 1), new NaiveBayes());
+        m.train();
+
+        List<String> texts = Arrays.asList("Obecní zastupitelstvo v Domažlicích", "Prodá se kůň a kočár", "");
+        List<String> expected = new ArrayList<>();
+        for (String text : texts)
+            expected.add(m.classifyText(text));
+
+        assertEquals(expected, m.classifyBatch(texts));
+    }
+
+    @Test
+    void updateMatchesFullTraining() throws IOException
+    {
+        Settings.trainingSetPath = "data/uir/Train";
+        Settings.classesPath = "data/uir/classes.txt";
+
+        TrainingSet all = TrainingSet.load();
+        NGrams ngrams = new NGrams(false, 1);
+        ngrams.initialize(all.documents);
+        all.parametrize(ngrams);
+        Model full = new Model(ngrams, new NaiveBayes());
+        full.classifier.train(all);
+
+        int half = all.documents.length / 2;
+        TrainingSet first = new TrainingSet(all.classes, Arrays.copyOfRange(all.documents, 0, half));
+        first.parametrize(ngrams);
+        Model partial = new Model(ngrams, new NaiveBayes());
+        partial.classifier.train(first);
+
+        // The second half is folded into a saved model in both formats
+        for (boolean textModel : new boolean[] {false, true})
+        {
+            Path file = Files.createTempFile("model", ".mod");
+            Settings.modelPath = file.toString();
+            Settings.textModel = textModel;
+            partial.saveModel();
+
+            Model resumed = Model.loadModel();
+            resumed.classifyDocument(all.documents[0]);
+            resumed.update(Arrays.stream(all.documents, half, all.documents.length));
+
+            for (Document d : all.documents)
+                assertEquals(full.classifyDocument(d), resumed.classifyDocument(d));
+
+            Files.delete(file);
+        }
+        Settings.textModel = false;
+    }
+
+    @Test
+    void scoresAgreeWithClassification()
+    {
+        Settings.trainingSetPath = "data/uir/Train";
+        Settings.classesPath = "data/uir/classes.txt";
+        Document[] documents = LibraryMethods.loadDocuments(Settings.trainingSetPath);
+
+        IClassifier[] classifiers = {new NaiveBayes(), new KNearestNeighbours(5), new KNearestNeighbours(5, new ExactIndex(Metric.EUCLIDEAN)),
+                new KMeans(20, Metric.COSINE, 0)};
+        for (IClassifier classifier : classifiers)
+        {
+            Model m = new Model(new NGrams(false, 1), classifier);
+            m.train();
+
+            String[] classes = m.getClasses();
+            double[] scores = new double[classes.length];
+            for (Document d : documents)
+            {
+                m.scoreDocument(d, scores);
+                assertEquals(1, Arrays.stream(scores).sum(), 1e-9);
+                assertTrue(Arrays.stream(scores).allMatch(score -> score >= 0));
+
+                // The classified class has the highest score, ties may go either way
+                String clss = m.classifyDocument(d);
+                assertEquals(Arrays.stream(scores).max().getAsDouble(), scores[Arrays.asList(classes).indexOf(clss)], 1e-12);
+
+                List<String> labels = m.classifyDocumentMultiLabel(d, 1.1);
+                assertEquals(1, labels.size());
+                assertEquals(scores[Arrays.asList(classes).indexOf(clss)], scores[Arrays.asList(classes).indexOf(labels.get(0))], 1e-12);
+                assertEquals(classes.length, m.classifyDocumentMultiLabel(d, 0).size());
+            }
+        }
+    }
+
+    @Test
+    void labelsPassingThreshold()
+    {
+        String[] classes = {"a", "b", "c", "d"};
+        assertEquals(Arrays.asList("c", "a"), IClassifier.labels(classes, new double[] {0.3, 0.1, 0.5, 0.1}, 0.3));
+        assertEquals(Arrays.asList("b"), IClassifier.labels(classes, new double[] {0.2, 0.4, 0.2, 0.2}, 0.9));
+        assertEquals(Arrays.asList("a", "b", "c", "d"), IClassifier.labels(classes, new double[] {0.25, 0.25, 0.25, 0.25}, 0.25));
+    }
+
+    @Test
+    void metricSurvivesSaving() throws IOException
+    {
+        Settings.trainingSetPath = "data/uir/Train";
+        Settings.classesPath = "data/uir/classes.txt";
+        Document[] documents = LibraryMethods.loadDocuments(Settings.trainingSetPath);
+
+        for (Metric metric : new Metric[] {Metric.EUCLIDEAN, Metric.MANHATTAN})
+        {
+            Model m = new Model(new NGrams(true, 1), new KNearestNeighbours(5, new ExactIndex(metric)));
+            m.train();
+
+            for (boolean textModel : new boolean[] {false, true})
+            {
+                Path file = Files.createTempFile("model", ".mod");
+                Settings.modelPath = file.toString();
+                Settings.textModel = textModel;
+                m.saveModel();
+
+                Model loaded = Model.loadModel();
+                for (Document d : documents)
+                    assertEquals(m.classifyDocument(d), loaded.classifyDocument(d), metric.identifier);
+
+                Files.delete(file);
+            }
+        }
+        Settings.textModel = false;
+    }
+
+    @Test
+    void kMeansSurvivesSaving() throws IOException
+    {
+        Settings.trainingSetPath = "data/uir/Train";
+        Settings.classesPath = "data/uir/classes.txt";
+        Document[] documents = LibraryMethods.loadDocuments(Settings.trainingSetPath);
+
+        for (KMeans kMeans : new KMeans[] {new KMeans(0, Metric.COSINE, 0), new KMeans(30, Metric.EUCLIDEAN, 50)})
+        {
+            Model m = new Model(new NGrams(true, 1), kMeans);
+            m.train();
+
+            for (boolean textModel : new boolean[] {false, true})
+            {
+                Path file = Files.createTempFile("model", ".mod");
+                Settings.modelPath = file.toString();
+                Settings.textModel = textModel;
+                m.saveModel();
+
+                Model loaded = Model.loadModel();
+                for (Document d : documents)
+                    assertEquals(m.classifyDocument(d), loaded.classifyDocument(d));
+
+                Files.delete(file);
+            }
+        }
+        Settings.textModel = false;
+    }
+
+    @Test
+    void quantizedIndexSurvivesSaving() throws IOException
+    {
+        Settings.trainingSetPath = "data/uir/Train";
+        Settings.classesPath = "data/uir/classes.txt";
+        Document[] documents = LibraryMethods.loadDocuments(Settings.trainingSetPath);
+
+        for (QuantizedIndex index : new QuantizedIndex[] {new QuantizedIndex(8, 0), new QuantizedIndex(16, 4)})
+        {
+            Model m = new Model(new NGrams(true, 1), new KNearestNeighbours(5, index));
+            m.train();
+
+            for (boolean textModel : new boolean[] {false, true})
+            {
+                Path file = Files.createTempFile("model", ".mod");
+                Settings.modelPath = file.toString();
+                Settings.textModel = textModel;
+                m.saveModel();
+
+                Model loaded = Model.loadModel();
+                for (Document d : documents)
+                    assertEquals(m.classifyDocument(d), loaded.classifyDocument(d));
+
+                Files.delete(file);
+            }
+        }
+        Settings.textModel = false;
+    }
+
+    @Test
+    void ivfPqIndexSurvivesSaving() throws IOException
+    {
+        Settings.trainingSetPath = "data/uir/Train";
+        Settings.classesPath = "data/uir/classes.txt";
+        Document[] documents = LibraryMethods.loadDocuments(Settings.trainingSetPath);
+
+        for (IvfPqIndex index : new IvfPqIndex[] {new IvfPqIndex(128, 16, 0, 4, 0), new IvfPqIndex(128, 16, 0, 4, 4)})
+        {
+            Model m = new Model(new NGrams(true, 1), new KNearestNeighbours(5, index));
+            m.train();
+
+            for (boolean textModel : new boolean[] {false, true})
+            {
+                Path file = Files.createTempFile("model", ".mod");
+                Settings.modelPath = file.toString();
+                Settings.textModel = textModel;
+                m.saveModel();
+
+                Model loaded = Model.loadModel();
+                for (Document d : documents)
+                    assertEquals(m.classifyDocument(d), loaded.classifyDocument(d));
+
+                IvfPqIndex loadedIndex = (IvfPqIndex) ((KNearestNeighbours) loaded.classifier).getIndex();
+                assertEquals(4, loadedIndex.getNprobe());
+                loaded.setNprobe(9);
+                assertEquals(9, loadedIndex.getNprobe());
+
+                Files.delete(file);
+            }
+        }
+        Settings.textModel = false;
+    }
+
+    @Test
+    void invertedIndexSurvivesSaving() throws IOException
+    {
+        Settings.trainingSetPath = "data/uir/Train";
+        Settings.classesPath = "data/uir/classes.txt";
+        Document[] documents = LibraryMethods.loadDocuments(Settings.trainingSetPath);
+
+        Model exact = new Model(new NGrams(true, 1), new KNearestNeighbours(5, new ExactIndex()));
+        exact.train();
+
+        for (InvertedIndex index : new InvertedIndex[] {new InvertedIndex(false), new InvertedIndex(true)})
+        {
+            Model m = new Model(new NGrams(true, 1), new KNearestNeighbours(5, index));
+            m.train();
+
+            for (boolean textModel : new boolean[] {false, true})
+            {
+                Path file = Files.createTempFile("model", ".mod");
+                Settings.modelPath = file.toString();
+                Settings.textModel = textModel;
+                m.saveModel();
+
+                Model loaded = Model.loadModel();
+                for (Document d : documents)
+                {
+                    assertEquals(m.classifyDocument(d), loaded.classifyDocument(d));
+                    assertEquals(exact.classifyDocument(d), loaded.classifyDocument(d));
+                }
+
+                Files.delete(file);
+            }
+        }
+        Settings.textModel = false;
+    }
+
+    @Test
+    void ldaSurvivesSaving() throws IOException
+    {
+        Settings.trainingSetPath = "data/uir/Train";
+        Settings.classesPath = "data/uir/classes.txt";
+        Settings.parametrizerArgument = "tfidf+lda:10";
+        Settings.classifierArgument = "knn";
+        Document[] documents = LibraryMethods.loadDocuments(Settings.trainingSetPath);
+
+        Model m = Model.getModelForSettings();
+        m.train();
+        assertEquals(10, m.parametrizer.getVectorLength());
+
+        for (boolean textModel : new boolean[] {false, true})
+        {
+            Path file = Files.createTempFile("model", ".mod");
+            Settings.modelPath = file.toString();
+            Settings.textModel = textModel;
+            m.saveModel();
+
+            Model loaded = Model.loadModel();
+            for (Document d : documents)
+            {
+                assertEquals(m.parametrizer.parametrize(d).indexes.length, loaded.parametrizer.parametrize(d).indexes.length);
+                assertEquals(m.classifyDocument(d), loaded.classifyDocument(d));
+            }
+
+            Files.delete(file);
+        }
+        Settings.textModel = false;
+    }
+
+    @Test
+    void lsaSurvivesSaving() throws IOException
+    {
+        Settings.trainingSetPath = "data/uir/Train";
+        Settings.classesPath = "data/uir/classes.txt";
+        Settings.parametrizerArgument = "tfidf+lsa:20";
+        Settings.classifierArgument = "knn";
+        Document[] documents = LibraryMethods.loadDocuments(Settings.trainingSetPath);
+
+        Model m = Model.getModelForSettings();
+        m.train();
+        assertEquals(20, m.parametrizer.getVectorLength());
+
+        for (boolean textModel : new boolean[] {false, true})
+        {
+            Path file = Files.createTempFile("model", ".mod");
+            Settings.modelPath = file.toString();
+            Settings.textModel = textModel;
+            m.saveModel();
+
+            Model loaded = Model.loadModel();
+            for (Document d : documents)
+            {
+                assertEquals(m.parametrizer.parametrize(d).indexes.length, loaded.parametrizer.parametrize(d).indexes.length);
+                assertEquals(m.classifyDocument(d), loaded.classifyDocument(d));
+            }
+
+            Files.delete(file);
+        }
+        Settings.textModel = false;
+    }
+
+    @Test
+    void hnswParametersFromArgument() throws IOException
+    {
+        Settings.trainingSetPath = "data/uir/Train";
+        Settings.classesPath = "data/uir/classes.txt";
+        Settings.parametrizerArgument = "tfidf";
+        Settings.classifierArgument = "knn-hnsw:200:8:50";
+        Document[] documents = LibraryMethods.loadDocuments(Settings.trainingSetPath);
+
+        Model m = Model.getModelForSettings();
+        m.train();
+        TrainingSet trainingSet = TrainingSet.load();
+        trainingSet.parametrize(m.parametrizer);
+        Model exact = new Model(m.parametrizer, new KNearestNeighbours(5));
+        exact.classifier.train(trainingSet);
+
+        // A large candidate list over a small corpus finds the exact neighbours
+        int agreeing = 0;
+        for (Document d : documents)
+            if (m.classifyDocument(d).equals(exact.classifyDocument(d)))
+                agreeing++;
+        assertTrue(agreeing >= documents.length * 0.98, "agreeing " + agreeing + " of " + documents.length);
+
+        Path file = Files.createTempFile("model", ".mod");
+        Settings.modelPath = file.toString();
+        m.saveModel();
+
+        Model loaded = Model.loadModel();
+        HnswIndex index = (HnswIndex) ((KNearestNeighbours) loaded.classifier).getIndex();
+        assertEquals(200, index.getEfSearch());
+        loaded.setEfSearch(20);
+        assertEquals(20, index.getEfSearch());
+
+        Files.delete(file);
+    }
+}
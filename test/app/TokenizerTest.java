@@ -0,0 +1,95 @@
+package app;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class TokenizerTest {
+
+    /** Characters random texts are made of - separators, letters of several scripts, digits and special cases */
+    private static final String ALPHABET = "aZ09 ,.-\t\nčŘéÖßσΣςİIıiЖж٣²́𐐀𝐀𐀷\uDC00";
+
+    /**
+     * Splits text the way splitText used to
+     * @param text text
+     * @return lowercase words
+     */
+    private static String[] regexSplit(String text)
+    {
+        String[] words = text.split("[^\\p{L}0-9]+");
+        for (int i = 0; i < words.length; i++)
+            words[i] = words[i].toLowerCase();
+
+        return words;
+    }
+
+    private static void assertSplitsLikeRegex(String text)
+    {
+        assertArrayEquals(regexSplit(text), Tokenizer.split(text), () -> "Text: " + text);
+    }
+
+    @Test
+    void edgeCases()
+    {
+        String[] texts = {"", " ", ",,", "a", "A", ",a", "a,", ",a,", "a  b", "ΣΑΣ ΟΔΟΣ", "İstanbul", "x𐐀y", "\uD800", "a\uDC00b", "٣4"};
+        for (String text : texts)
+            assertSplitsLikeRegex(text);
+    }
+
+    @Test
+    void randomTexts()
+    {
+        Random random = new Random(1);
+        for (int i = 0; i < 20000; i++)
+        {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(30);
+            for (int j = 0; j < length; j++)
+                sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+
+            assertSplitsLikeRegex(sb.toString());
+        }
+    }
+
+    @Test
+    void turkishLocale()
+    {
+        Locale locale = Locale.getDefault();
+        try
+        {
+            Locale.setDefault(new Locale("tr", "TR"));
+            assertSplitsLikeRegex("İSTANBUL Isparta ılık iİIı");
+        }
+        finally
+        {
+            Locale.setDefault(locale);
+        }
+    }
+
+    @Test
+    void corpusTexts() throws IOException
+    {
+        List<Path> files;
+        try (Stream<Path> paths = Files.list(Paths.get("data/uir/Train")))
+        {
+            files = paths.collect(Collectors.toList());
+        }
+
+        for (Path file : files)
+        {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8))
+                assertSplitsLikeRegex(line);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package app.classify;
+
+import app.SparseVector;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ExactIndexTest {
+
+    @Test
+    void scoresMatchDirectComputation()
+    {
+        Random random = new Random(7);
+        int dimension = 300;
+        SparseVector[] vectors = new SparseVector[200];
+        for (int i = 0; i < vectors.length; i++)
+            vectors[i] = randomVector(random, dimension);
+
+        for (Metric metric : Metric.values())
+        {
+            ExactIndex index = new ExactIndex(metric);
+            index.build(vectors, dimension);
+
+            for (int q = 0; q < 20; q++)
+            {
+                SparseVector query = randomVector(random, dimension);
+                TopK nearest = index.search(query, vectors.length);
+                int count = nearest.sortDescending();
+                assertEquals(vectors.length, count);
+
+                for (int i = 0; i < count; i++)
+                {
+                    double expected = score(metric, query.toDense(), vectors[nearest.id(i)].toDense());
+                    assertEquals(expected, nearest.score(i), 1e-4, metric.identifier);
+                }
+            }
+        }
+    }
+
+    private static SparseVector randomVector(Random random, int dimension)
+    {
+        double[] dense = new double[dimension];
+        for (int i = 0; i < dimension; i++)
+            if (random.nextInt(10) == 0)
+                dense[i] = random.nextDouble() * 4 - 1;
+
+        return SparseVector.fromDense(dense);
+    }
+
+    private static double score(Metric metric, double[] a, double[] b)
+    {
+        double dot = 0, aa = 0, bb = 0, squares = 0, absolutes = 0;
+        for (int i = 0; i < a.length; i++)
+        {
+            dot += a[i] * b[i];
+            aa += a[i] * a[i];
+            bb += b[i] * b[i];
+            squares += (a[i] - b[i]) * (a[i] - b[i]);
+            absolutes += Math.abs(a[i] - b[i]);
+        }
+
+        switch (metric)
+        {
+            case COSINE:
+                return dot / Math.sqrt(aa * bb);
+            case EUCLIDEAN:
+                return -Math.sqrt(squares);
+            default:
+                return -absolutes;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package app.classify;
+
+import app.SparseVector;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class InvertedIndexTest {
+
+    @Test
+    void matchesExactSearch()
+    {
+        Random random = new Random(19);
+        int dimension = 3000;
+        SparseVector[] vectors = new SparseVector[1500];
+        for (int i = 0; i < vectors.length; i++)
+            vectors[i] = i % 100 == 0 ? new SparseVector(new int[0], new double[0], dimension) : randomVector(random, dimension, i % 2 == 0);
+
+        ExactIndex exact = new ExactIndex();
+        exact.build(vectors, dimension);
+
+        for (boolean maxScore : new boolean[] {false, true})
+        {
+            InvertedIndex index = new InvertedIndex(maxScore);
+            index.build(vectors, dimension);
+
+            for (int q = 0; q < 100; q++)
+            {
+                // Signed values as well, as produced by signed feature hashing
+                SparseVector query = randomVector(random, dimension, q % 2 == 0);
+                assertSameNeighbours(exact.search(query, 10), index.search(query, 10), "maxScore=" + maxScore + " query " + q);
+            }
+        }
+    }
+
+    @Test
+    void fillsWithUnrelatedVectors()
+    {
+        int dimension = 10;
+        SparseVector[] vectors = {
+                SparseVector.fromDense(new double[] {1, 0, 0, 0, 0, 0, 0, 0, 0, 0}),
+                SparseVector.fromDense(new double[10]),
+                SparseVector.fromDense(new double[] {0, 1, 0, 0, 0, 0, 0, 0, 0, 0}),
+                SparseVector.fromDense(new double[] {0, 0, 1, 0, 0, 0, 0, 0, 0, 0})
+        };
+        SparseVector query = SparseVector.fromDense(new double[] {0, 0, 2, 0, 0, 0, 0, 0, 0, 0});
+
+        ExactIndex exact = new ExactIndex();
+        exact.build(vectors, dimension);
+        InvertedIndex index = new InvertedIndex();
+        index.build(vectors, dimension);
+
+        assertSameNeighbours(exact.search(query, 3), index.search(query, 3), "fill");
+    }
+
+    private static void assertSameNeighbours(TopK expected, TopK actual, String message)
+    {
+        int count = expected.sortDescending();
+        assertEquals(count, actual.sortDescending(), message);
+
+        double[] expectedScores = new double[count], actualScores = new double[count];
+        for (int i = 0; i < count; i++)
+        {
+            expectedScores[i] = expected.score(i);
+            actualScores[i] = actual.score(i);
+        }
+        // Summation order differs, ids of nearly equal scores may swap
+        assertArrayEquals(expectedScores, actualScores, 1e-5, message);
+    }
+
+    private static SparseVector randomVector(Random random, int dimension, boolean signed)
+    {
+        // Frequent dimensions shared by many vectors, then rare ones
+        double[] dense = new double[dimension];
+        for (int i = 0; i < 30; i++)
+        {
+            int index = i < 10 ? random.nextInt(50) : random.nextInt(dimension);
+            dense[index] += (1 + random.nextInt(5)) * (signed && random.nextBoolean() ? -1 : 1);
+        }
+
+        return SparseVector.fromDense(dense);
+    }
+}
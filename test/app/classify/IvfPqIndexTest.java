@@ -0,0 +1,96 @@
+package app.classify;
+
+import app.SparseVector;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IvfPqIndexTest {
+
+    @Test
+    void findsExactNeighbours()
+    {
+        Random random = new Random(13);
+        int dimension = 5000;
+        SparseVector[] vectors = new SparseVector[2000];
+        for (int i = 0; i < vectors.length; i++)
+            vectors[i] = randomVector(random, dimension);
+
+        ExactIndex exact = new ExactIndex();
+        exact.build(vectors, dimension);
+        SparseVector[] queries = new SparseVector[50];
+        for (int q = 0; q < queries.length; q++)
+            queries[q] = randomVector(random, dimension);
+
+        IvfPqIndex index = new IvfPqIndex(256, 32, 0, 4, 0);
+        index.build(vectors, dimension);
+        double few = recall(exact, index, queries);
+
+        // Visiting every list leaves only the projection and quantization errors
+        index.setNprobe(Integer.MAX_VALUE);
+        double all = recall(exact, index, queries);
+        assertTrue(all >= few, "few lists " + few + ", all lists " + all);
+        assertTrue(all > 0.5, "recall " + all);
+
+        IvfPqIndex reranked = new IvfPqIndex(256, 32, 0, Integer.MAX_VALUE, 10);
+        reranked.build(vectors, dimension);
+        double rerankedRecall = recall(exact, reranked, queries);
+        assertTrue(rerankedRecall > 0.95, "re-ranked recall " + rerankedRecall);
+    }
+
+    @Test
+    void rejectsNoListsToProbe()
+    {
+        IvfPqIndex index = new IvfPqIndex(64, 8, 0, 4, 0);
+        assertThrows(IllegalArgumentException.class, () -> index.setNprobe(0));
+        assertEquals(4, index.getNprobe());
+    }
+
+    @Test
+    void handlesFewAndZeroVectors()
+    {
+        Random random = new Random(17);
+        SparseVector[] vectors = {randomVector(random, 2000), new SparseVector(new int[0], new double[0], 2000), randomVector(random, 2000)};
+
+        IvfPqIndex index = new IvfPqIndex();
+        index.build(vectors, 2000);
+
+        Set<Integer> found = TestNeighbours.ids(index.search(vectors[2], 5));
+        assertEquals(2, found.size());
+        assertTrue(found.contains(2));
+        assertEquals(0, index.search(vectors[1], 5).size());
+    }
+
+    private static double recall(ExactIndex exact, IvfPqIndex index, SparseVector[] queries)
+    {
+        double recall = 0;
+        for (SparseVector query : queries)
+        {
+            Set<Integer> truth = TestNeighbours.ids(exact.search(query, 10));
+            Set<Integer> found = TestNeighbours.ids(index.search(query, 10));
+            found.retainAll(truth);
+            recall += (double) found.size() / truth.size();
+        }
+
+        return recall / queries.length;
+    }
+
+    private static SparseVector randomVector(Random random, int dimension)
+    {
+        // Vectors gather around a few topics, each with its own frequent dimensions
+        int topic = random.nextInt(20);
+        double[] dense = new double[dimension];
+        for (int i = 0; i < 40; i++)
+        {
+            int index = i < 25 ? topic * 50 + random.nextInt(50) : random.nextInt(dimension);
+            dense[index] += 1 + random.nextInt(5);
+        }
+
+        return SparseVector.fromDense(dense);
+    }
+}
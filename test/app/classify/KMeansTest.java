@@ -0,0 +1,113 @@
+package app.classify;
+
+import app.Document;
+import app.SparseVector;
+import app.TrainingSet;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KMeansTest {
+
+    private static final String[] CLASSES = {"a", "b", "c", "d"};
+
+    private static final int DIMENSION = 400;
+
+    @Test
+    void clustersSeparateClasses()
+    {
+        Random random = new Random(11);
+        TrainingSet trainingSet = trainingSet(random, 6000);
+
+        // Lloyd over all vectors is parallel above 4096 vectors, mini-batches cover a fraction of them
+        KMeans[] classifiers = {new KMeans(0, Metric.COSINE, 0), new KMeans(0, Metric.EUCLIDEAN, 0),
+                new KMeans(8, Metric.COSINE, 0), new KMeans(0, Metric.COSINE, 500)};
+        for (KMeans kMeans : classifiers)
+        {
+            kMeans.train(trainingSet);
+
+            int right = 0;
+            for (int i = 0; i < 400; i++)
+            {
+                int clss = random.nextInt(CLASSES.length);
+                if (kMeans.classify(vector(random, clss)).equals(CLASSES[clss]))
+                    right++;
+            }
+            assertTrue(right > 390, "right " + right);
+        }
+    }
+
+    @Test
+    void handlesFewVectors()
+    {
+        Random random = new Random(3);
+        TrainingSet trainingSet = trainingSet(random, 2);
+
+        // More clusters than vectors, each vector is a cluster
+        KMeans kMeans = new KMeans(10, Metric.EUCLIDEAN, 0);
+        kMeans.train(trainingSet);
+        for (int i = 0; i < 2; i++)
+            assertEquals(CLASSES[i], kMeans.classify(trainingSet.vectors[i]));
+
+        // Without vectors there are no clusters, the first class is returned
+        KMeans empty = new KMeans(0, Metric.COSINE, 0);
+        empty.train(trainingSet(random, 0));
+        KMeans loaded = new KMeans();
+        loaded.load(empty.export());
+        assertEquals(CLASSES[0], loaded.classify(vector(random, 1)));
+    }
+
+    @Test
+    void centroidsSurviveExport()
+    {
+        Random random = new Random(5);
+        KMeans kMeans = new KMeans(6, Metric.EUCLIDEAN, 0);
+        kMeans.train(trainingSet(random, 300));
+
+        KMeans loaded = new KMeans();
+        loaded.load(kMeans.export());
+        assertEquals(kMeans.export(), loaded.export());
+        for (int i = 0; i < 100; i++)
+        {
+            SparseVector vector = vector(random, random.nextInt(CLASSES.length));
+            assertEquals(kMeans.classify(vector), loaded.classify(vector));
+        }
+    }
+
+    /**
+     * Vectors of class i are non-zero mostly in the first quarter of the i-th quarter of the dimensions
+     */
+    private static TrainingSet trainingSet(Random random, int count)
+    {
+        Document[] documents = new Document[count];
+        SparseVector[] vectors = new SparseVector[count];
+        for (int i = 0; i < count; i++)
+        {
+            documents[i] = new Document();
+            documents[i].classes = Collections.singletonList(CLASSES[i % CLASSES.length]);
+            vectors[i] = vector(random, i % CLASSES.length);
+        }
+
+        TrainingSet trainingSet = new TrainingSet(CLASSES, documents);
+        trainingSet.vectors = vectors;
+        trainingSet.vectorLength = DIMENSION;
+
+        return trainingSet;
+    }
+
+    private static SparseVector vector(Random random, int clss)
+    {
+        double[] dense = new double[DIMENSION];
+        int quarter = DIMENSION / CLASSES.length;
+        for (int i = 0; i < 30; i++)
+            dense[clss * quarter + random.nextInt(quarter / 4)] += 1 + random.nextDouble();
+        for (int i = 0; i < 5; i++)
+            dense[random.nextInt(DIMENSION)] += random.nextDouble();
+
+        return SparseVector.fromDense(dense);
+    }
+}
@@ -0,0 +1,82 @@
+package app.classify;
+
+import app.SparseVector;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QuantizedIndexTest {
+
+    @Test
+    void halfPrecisionRoundTrips()
+    {
+        for (int i = 0; i < 1 << 16; i++)
+        {
+            float value = QuantizedIndex.fromHalf((short) i);
+            if (!Float.isNaN(value))
+                assertEquals((short) i, QuantizedIndex.toHalf(value), "half " + i);
+        }
+
+        // Rounds to the nearest half precision value
+        assertEquals(1f, QuantizedIndex.fromHalf(QuantizedIndex.toHalf(1.0004f)));
+        assertEquals(1.0009765625f, QuantizedIndex.fromHalf(QuantizedIndex.toHalf(1.0006f)));
+        assertEquals(Float.POSITIVE_INFINITY, QuantizedIndex.fromHalf(QuantizedIndex.toHalf(70000f)));
+    }
+
+    @Test
+    void findsExactNeighbours()
+    {
+        Random random = new Random(11);
+        // Wide enough for indexes above 16 bits
+        int dimension = 200000;
+        SparseVector[] vectors = new SparseVector[500];
+        for (int i = 0; i < vectors.length; i++)
+            vectors[i] = randomVector(random, dimension);
+
+        ExactIndex exact = new ExactIndex();
+        exact.build(vectors, dimension);
+
+        for (int bits : new int[] {8, 16})
+        {
+            for (int rerank : new int[] {0, 4})
+            {
+                QuantizedIndex index = new QuantizedIndex(bits, rerank);
+                index.build(vectors, dimension);
+
+                double recall = 0;
+                for (int q = 0; q < 50; q++)
+                {
+                    SparseVector query = randomVector(random, dimension);
+                    Set<Integer> truth = TestNeighbours.ids(exact.search(query, 10));
+                    Set<Integer> found = TestNeighbours.ids(index.search(query, 10));
+                    found.retainAll(truth);
+                    recall += (double) found.size() / truth.size();
+                }
+
+                assertTrue(recall / 50 > (rerank > 0 ? 0.99 : 0.9), "bits=" + bits + " rerank=" + rerank + " recall=" + recall / 50);
+            }
+        }
+    }
+
+    private static SparseVector randomVector(Random random, int dimension)
+    {
+        // Few frequent dimensions shared by all vectors, many rare ones
+        int[] indexes = new int[60];
+        double[] values = new double[indexes.length];
+        for (int i = 0; i < indexes.length; i++)
+        {
+            indexes[i] = i < 30 ? random.nextInt(100) : random.nextInt(dimension);
+            values[i] = 1 + random.nextInt(5);
+        }
+
+        double[] dense = new double[dimension];
+        for (int i = 0; i < indexes.length; i++)
+            dense[indexes[i]] += values[i];
+
+        return SparseVector.fromDense(dense);
+    }
+}
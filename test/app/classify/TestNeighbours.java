@@ -0,0 +1,27 @@
+package app.classify;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Results of the neighbour index tests
+ */
+class TestNeighbours
+{
+    private TestNeighbours() {}
+
+    /**
+     * Returns ids of the found neighbours
+     * @param nearest search result
+     * @return ids
+     */
+    static Set<Integer> ids(TopK nearest)
+    {
+        Set<Integer> ids = new HashSet<>();
+        int count = nearest.sortDescending();
+        for (int i = 0; i < count; i++)
+            ids.add(nearest.id(i));
+
+        return ids;
+    }
+}
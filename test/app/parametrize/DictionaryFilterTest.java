@@ -0,0 +1,45 @@
+package app.parametrize;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DictionaryFilterTest {
+
+    /** Characters random grams are made of - digits, whitespace, line terminators and letters */
+    private static final String ALPHABET = "a9 \t\n\u000B\f\r\u0085  žx0";
+
+    @Test
+    void checksMatchRegexes()
+    {
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++)
+        {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(6);
+            for (int j = 0; j < length; j++)
+                sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            String gram = sb.toString();
+
+            assertEquals(gram.matches(".*\\d+.*"), DictionaryCleaners.containsNumber(gram), gram);
+            assertEquals(gram.matches("\\s+"), DictionaryCleaners.isWhitespace(gram), gram);
+        }
+    }
+
+    @Test
+    void keepCombinesChecks()
+    {
+        DictionaryFilter filter = new DictionaryFilter().minOccurrences(2).removeNumbers().removeStopWords().removeWhitespaces();
+
+        assertTrue(filter.keep("noviny", 2));
+        assertFalse(filter.keep("noviny", 1));
+        assertFalse(filter.keep("rok2020", 3));
+        assertFalse(filter.keep("protože", 3));
+        assertFalse(filter.keep(" ", 3));
+        assertTrue(new DictionaryFilter().keep("protože", 0));
+    }
+}
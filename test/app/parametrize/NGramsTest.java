@@ -0,0 +1,130 @@
+package app.parametrize;
+
+import app.Document;
+import app.LibraryMethods;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NGramsTest {
+
+    @Test
+    void parallelInitializeMatchesSequential()
+    {
+        Document[] documents = LibraryMethods.loadDocuments("data/uir/Train");
+
+        for (int n = 1; n <= 3; n++)
+        {
+            for (boolean tfidf : new boolean[] {false, true})
+            {
+                NGrams sequential = new NGrams(tfidf, n);
+                sequential.setParallelism(1);
+                sequential.initialize(documents);
+
+                for (int parallelism : new int[] {2, 7, 32})
+                {
+                    NGrams parallel = new NGrams(tfidf, n);
+                    parallel.setParallelism(parallelism);
+                    parallel.initialize(documents);
+
+                    assertEquals(sequential.export(), parallel.export(), "n=" + n + " tfidf=" + tfidf + " parallelism=" + parallelism);
+                }
+            }
+        }
+    }
+
+    @Test
+    void memoryCapKeepsVocabulary()
+    {
+        Document[] documents = LibraryMethods.loadDocuments("data/uir/Train");
+
+        for (int n = 1; n <= 3; n++)
+        {
+            NGrams exact = new NGrams(true, n);
+            exact.initialize(documents);
+
+            // Small sketches let many rare grams through, large ones few - neither may change the result
+            for (long memoryCap : new long[] {1024, 1 << 20})
+            {
+                NGrams capped = new NGrams(true, n);
+                capped.setMemoryCap(memoryCap);
+                capped.setParallelism(3);
+                capped.initialize(documents);
+
+                assertEquals(exact.export(), capped.export(), "n=" + n + " memoryCap=" + memoryCap);
+            }
+        }
+    }
+
+    @Test
+    void memoryCapKeepsGramsAboveSaturation()
+    {
+        Document[] documents = LibraryMethods.loadDocuments("data/uir/Train");
+
+        // Sketch counters stop at 255, grams estimated there must still reach a higher minimum count
+        NGrams exact = new NGrams(false, 1);
+        exact.setMinOccurrences(300);
+        exact.initialize(documents);
+        assertTrue(exact.getVectorLength() > 0);
+
+        NGrams capped = new NGrams(false, 1);
+        capped.setMinOccurrences(300);
+        capped.setMemoryCap(1 << 20);
+        capped.setParallelism(3);
+        capped.initialize(documents);
+
+        assertEquals(exact.export(), capped.export());
+    }
+
+    @Test
+    void memoryCapKeepsFewerTokens()
+    {
+        Document[] documents = LibraryMethods.loadDocuments("data/uir/Train");
+
+        for (int n : new int[] {1, 3})
+        {
+            GramCounter exact = new GramCounter(n, 3, 2, 0);
+            exact.count(documents);
+            GramCounter capped = new GramCounter(n, 3, 2, 1 << 16);
+            capped.count(documents);
+            assertTrue(capped.tokens.size() < exact.tokens.size(), "n=" + n);
+
+            NGrams exactGrams = new NGrams(true, n);
+            exactGrams.initialize(documents);
+            NGrams cappedGrams = new NGrams(true, n);
+            cappedGrams.setMemoryCap(1 << 16);
+            cappedGrams.initialize(documents);
+            assertEquals(exactGrams.export(), cappedGrams.export(), "n=" + n);
+        }
+    }
+
+    @Test
+    void sharedCountsMatchSeparateInitialize()
+    {
+        Document[] documents = LibraryMethods.loadDocuments("data/uir/Train");
+
+        // Counts for the lowest minimum count serve the higher ones, also when the sketch dropped rare grams
+        for (long memoryCap : new long[] {0, 1 << 16})
+        {
+            NGrams counting = new NGrams(true, 2);
+            counting.setMemoryCap(memoryCap);
+            GramCounter counter = counting.count(documents, 2);
+
+            for (int min : new int[] {2, 3, 10})
+            {
+                NGrams separate = new NGrams(true, 2);
+                separate.setMemoryCap(memoryCap);
+                separate.setMinOccurrences(min);
+                separate.initialize(documents);
+
+                NGrams shared = new NGrams(true, 2);
+                shared.setMemoryCap(memoryCap);
+                shared.setMinOccurrences(min);
+                shared.initialize(documents, counter);
+
+                assertEquals(separate.export(), shared.export(), "min=" + min + " memoryCap=" + memoryCap);
+            }
+        }
+    }
+}
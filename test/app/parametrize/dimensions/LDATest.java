@@ -0,0 +1,116 @@
+package app.parametrize.dimensions;
+
+import app.Document;
+import app.parametrize.NGrams;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LDATest {
+
+    @Test
+    void separatesClasses()
+    {
+        Random random = new Random(5);
+        String[] classes = {"a", "b", "c", "d"};
+        Document[] documents = new Document[400];
+        for (int i = 0; i < documents.length; i++)
+            documents[i] = document(random, classes[i % classes.length]);
+
+        LDA lda = new LDA(new NGrams(true, 1), 0, LDA.DEFAULT_FEATURES);
+        lda.initialize(documents);
+        assertEquals(classes.length - 1, lda.getVectorLength());
+
+        // Training documents lie nearest to the centroid of their own class
+        double[][] vectors = new double[documents.length][];
+        double[][] centroids = new double[classes.length][lda.getVectorLength()];
+        for (int i = 0; i < documents.length; i++)
+        {
+            vectors[i] = lda.parametrize(documents[i]).toDense();
+            for (int k = 0; k < vectors[i].length; k++)
+                centroids[i % classes.length][k] += vectors[i][k] / (documents.length / classes.length);
+        }
+
+        int right = 0;
+        for (int i = 0; i < documents.length; i++)
+        {
+            int nearest = 0;
+            for (int c = 1; c < classes.length; c++)
+                if (distance(vectors[i], centroids[c]) < distance(vectors[i], centroids[nearest]))
+                    nearest = c;
+            if (nearest == i % classes.length)
+                right++;
+        }
+        assertTrue(right > 0.95 * documents.length, "right " + right);
+
+        // Fewer dimensions when asked for
+        LDA one = new LDA(new NGrams(true, 1), 1, LDA.DEFAULT_FEATURES);
+        one.initialize(documents);
+        assertEquals(1, one.getVectorLength());
+    }
+
+    @Test
+    void projectionSurvivesExport()
+    {
+        Random random = new Random(7);
+        Document[] documents = new Document[60];
+        for (int i = 0; i < documents.length; i++)
+            documents[i] = document(random, i % 3 == 0 ? "x" : "y");
+
+        // Fewer features than words, the rest is ignored
+        LDA lda = new LDA(new NGrams(true, 1), 0, 20);
+        lda.initialize(documents);
+
+        LDA loaded = new LDA();
+        loaded.load(lda.export());
+        assertEquals(lda.export(), loaded.export());
+        for (Document d : documents)
+            assertArrayEquals(lda.parametrize(d).toDense(), loaded.parametrize(d).toDense());
+    }
+
+    @Test
+    void solvesMatrices()
+    {
+        // A = L L^T with L = [[2, 0], [1, 3]]
+        double[] a = {4, 2, 2, 10};
+        Matrices.cholesky(a, 2);
+        assertArrayEquals(new double[] {2, 3}, new double[] {a[0], a[3]}, 1e-12);
+        assertEquals(1, a[2], 1e-12);
+        assertArrayEquals(new double[] {1, 2}, Matrices.solveLower(a, 2, new double[] {2, 7}), 1e-12);
+        assertArrayEquals(new double[] {1.5, 1}, Matrices.solveLowerTransposed(a, 2, new double[] {4, 3}), 1e-12);
+
+        double[] symmetric = {2, 1, 0, 1, 2, 0, 0, 0, 5};
+        double[] eigenvectors = new double[9];
+        assertArrayEquals(new double[] {5, 3, 1}, Matrices.symmetricEigen(symmetric, 3, eigenvectors), 1e-12);
+        assertEquals(1, Math.abs(eigenvectors[2 * 3]), 1e-12);
+        assertEquals(Math.sqrt(0.5), Math.abs(eigenvectors[1]), 1e-12);
+    }
+
+    private static Document document(Random random, String clss)
+    {
+        // Half the words shared by all classes, half preferred by the class - without digits, NGrams drops numbers
+        String[] words = new String[40];
+        for (int i = 0; i < words.length; i++)
+            words[i] = i % 2 == 0 ? "common" + TestWords.letters(random.nextInt(100)) : clss + "word" + TestWords.letters(random.nextInt(30));
+
+        Document document = new Document();
+        document.documentWords = words;
+        document.classes = Collections.singletonList(clss);
+
+        return document;
+    }
+
+    private static double distance(double[] a, double[] b)
+    {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++)
+            sum += (a[i] - b[i]) * (a[i] - b[i]);
+
+        return sum;
+    }
+}
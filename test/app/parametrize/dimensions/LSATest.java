@@ -0,0 +1,144 @@
+package app.parametrize.dimensions;
+
+import app.Document;
+import app.SparseVector;
+import app.TrainingSet;
+import app.parametrize.NGrams;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LSATest {
+
+    @Test
+    void capturesTopSingularValues()
+    {
+        Random random = new Random(3);
+        Document[] documents = new Document[300];
+        for (int i = 0; i < documents.length; i++)
+            documents[i] = document(random, "t" + TestWords.letters(i % 6));
+
+        int k = 4;
+        LSA lsa = new LSA(new NGrams(true, 1), k);
+        lsa.initialize(documents);
+        assertEquals(k, lsa.getVectorLength());
+
+        // Energy of the projected vectors is the sum of the top k eigenvalues of X^T X
+        int length = lsa.getInner().getVectorLength();
+        double[][] x = new double[documents.length][];
+        double[] gram = new double[length * length];
+        double projected = 0;
+        for (int i = 0; i < documents.length; i++)
+        {
+            x[i] = lsa.getInner().parametrize(documents[i]).toDense();
+            for (int a = 0; a < length; a++)
+                for (int b = 0; b < length; b++)
+                    gram[a * length + b] += x[i][a] * x[i][b];
+
+            double[] vector = lsa.parametrize(documents[i]).toDense();
+            projected += Matrices.dot(vector, 0, vector, 0, k);
+        }
+
+        double[] eigenvalues = Matrices.symmetricEigen(gram, length, new double[length * length]);
+        double optimal = 0;
+        for (int j = 0; j < k; j++)
+            optimal += eigenvalues[j];
+
+        assertTrue(projected > 0.99 * optimal && projected < 1.0001 * optimal, projected + " of " + optimal);
+    }
+
+    @Test
+    void limitsDimensionsToRank()
+    {
+        // Two documents span at most two dimensions
+        Document[] documents = {repeated("common", "apple", "apricot"), repeated("common", "banana", "berry")};
+        LSA lsa = new LSA(new NGrams(true, 1), 50);
+        lsa.initialize(documents);
+        assertEquals(2, lsa.getVectorLength());
+
+        // Training vectors keep their norm
+        for (Document d : documents)
+        {
+            double[] original = lsa.getInner().parametrize(d).toDense();
+            double[] vector = lsa.parametrize(d).toDense();
+            assertEquals(Matrices.dot(original, 0, original, 0, original.length), Matrices.dot(vector, 0, vector, 0, vector.length), 1e-3);
+        }
+    }
+
+    @Test
+    void projectionSurvivesExport()
+    {
+        Random random = new Random(7);
+        Document[] documents = new Document[60];
+        for (int i = 0; i < documents.length; i++)
+            documents[i] = document(random, i % 3 == 0 ? "x" : "y");
+
+        LSA lsa = new LSA(new NGrams(true, 1), 5);
+        lsa.initialize(documents);
+
+        LSA loaded = new LSA();
+        loaded.load(lsa.export());
+        assertEquals(lsa.export(), loaded.export());
+        for (Document d : documents)
+            assertArrayEquals(lsa.parametrize(d).toDense(), loaded.parametrize(d).toDense());
+    }
+
+    @Test
+    void trainingSetParametrizesInnerOnce()
+    {
+        Random random = new Random(5);
+        Document[] documents = new Document[60];
+        for (int i = 0; i < documents.length; i++)
+            documents[i] = document(random, "t" + TestWords.letters(i % 3));
+
+        AtomicInteger calls = new AtomicInteger();
+        NGrams inner = new NGrams(true, 1)
+        {
+            @Override
+            public SparseVector parametrize(Document d)
+            {
+                calls.incrementAndGet();
+                return super.parametrize(d);
+            }
+        };
+        LSA lsa = new LSA(inner, 3);
+        lsa.initialize(documents);
+        TrainingSet trainingSet = new TrainingSet(new String[] {"ta", "tb", "tc"}, documents);
+        trainingSet.parametrize(lsa);
+        assertEquals(documents.length, calls.get());
+
+        for (int i = 0; i < documents.length; i++)
+            assertArrayEquals(lsa.parametrize(documents[i]).toDense(), trainingSet.vectors[i].toDense());
+    }
+
+    private static Document document(Random random, String topic)
+    {
+        // Half the words shared by all topics, half preferred by the topic - without digits, NGrams drops numbers
+        String[] words = new String[40];
+        for (int i = 0; i < words.length; i++)
+            words[i] = i % 2 == 0 ? "common" + TestWords.letters(random.nextInt(100)) : topic + "word" + TestWords.letters(random.nextInt(30));
+
+        Document document = new Document();
+        document.documentWords = words;
+        document.classes = Collections.singletonList(topic);
+
+        return document;
+    }
+
+    private static Document repeated(String... words)
+    {
+        Document document = new Document();
+        document.documentWords = new String[words.length * 10];
+        for (int i = 0; i < document.documentWords.length; i++)
+            document.documentWords[i] = words[i % words.length];
+        document.classes = Collections.emptyList();
+
+        return document;
+    }
+}
@@ -0,0 +1,19 @@
+package app.parametrize.dimensions;
+
+/**
+ * Words of the synthetic corpora of the dimension tests
+ */
+class TestWords
+{
+    private TestWords() {}
+
+    /**
+     * Returns two-letter suffix distinct for each number below 676
+     * @param number number
+     * @return suffix
+     */
+    static String letters(int number)
+    {
+        return "" + (char) ('a' + number / 26) + (char) ('a' + number % 26);
+    }
+}